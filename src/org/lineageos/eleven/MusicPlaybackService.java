@@ -54,7 +54,6 @@ import android.os.PowerManager;
 import android.os.RemoteException;
 import android.os.SystemClock;
 import android.provider.MediaStore;
-import android.provider.MediaStore.Audio.AlbumColumns;
 import android.provider.MediaStore.Audio.AudioColumns;
 import androidx.annotation.NonNull;
 import androidx.core.os.BuildCompat;
@@ -69,10 +68,14 @@ import org.lineageos.eleven.appwidgets.AppWidgetLargeAlternate;
 import org.lineageos.eleven.appwidgets.AppWidgetSmall;
 import org.lineageos.eleven.cache.ImageCache;
 import org.lineageos.eleven.cache.ImageFetcher;
+import org.lineageos.eleven.cache.TrackMetadataCache;
 import org.lineageos.eleven.provider.MusicPlaybackState;
-import org.lineageos.eleven.provider.RecentStore;
-import org.lineageos.eleven.provider.SongPlayCount;
+import org.lineageos.eleven.provider.QueueSnapshot;
+import org.lineageos.eleven.provider.PlayStatsRecorder;
+import org.lineageos.eleven.service.ChangeDispatcher;
 import org.lineageos.eleven.service.MusicPlaybackTrack;
+import org.lineageos.eleven.service.PlaybackQueue;
+import org.lineageos.eleven.service.ShuffleScheduler;
 import org.lineageos.eleven.utils.BitmapWithColors;
 import org.lineageos.eleven.utils.Lists;
 import org.lineageos.eleven.utils.PreferenceUtils;
@@ -84,6 +87,7 @@ import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
@@ -321,6 +325,28 @@ public class MusicPlaybackService extends Service {
      */
     private static final int HEADSET_HOOK_MULTI_CLICK_TIMEOUT = 9;
 
+    /**
+     * Indicates the queue should be written to the database
+     */
+    private static final int SAVE_QUEUE = 10;
+
+    /**
+     * Delay used to batch bursts of queue edits into a single save
+     */
+    private static final int SAVE_QUEUE_DELAY = 1000;
+
+    /**
+     * Indicates the reloaded queue should retry opening its current track
+     */
+    private static final int OPEN_RELOADED_TRACK = 11;
+
+    /**
+     * Delay and number of retries to open the track of the reloaded queue while the media
+     * store doesn't know it yet, e.g. right after boot
+     */
+    private static final int OPEN_RELOADED_TRACK_DELAY = 3000;
+    private static final int OPEN_RELOADED_TRACK_RETRIES = 3;
+
     /**
      * Idle time before stopping the foreground notfication (5 minutes)
      */
@@ -360,14 +386,6 @@ public class MusicPlaybackService extends Service {
             MediaStore.Audio.Media.ARTIST_ID
     };
 
-    /**
-     * The columns used to retrieve any info from the current album
-     */
-    private static final String[] ALBUM_PROJECTION = new String[] {
-            MediaStore.Audio.Albums.ALBUM, MediaStore.Audio.Albums.ARTIST,
-            MediaStore.Audio.Albums.LAST_YEAR
-    };
-
     /**
      * Keeps a mapping of the track history
      */
@@ -378,6 +396,11 @@ public class MusicPlaybackService extends Service {
      */
     private static final Shuffler mShuffler = new Shuffler();
 
+    /**
+     * Picks the least played tracks in normal shuffle mode
+     */
+    private static final ShuffleScheduler mShuffleScheduler = new ShuffleScheduler();
+
     /**
      * Service stub
      */
@@ -426,10 +449,14 @@ public class MusicPlaybackService extends Service {
     private Cursor mCursor;
 
     /**
-     * The cursor used to retrieve info on the album the current track is
-     * part of, if any.
+     * The artist of the album the current track is part of, if any.
      */
-    private Cursor mAlbumCursor;
+    private String mAlbumArtistName;
+
+    /**
+     * Shared cache of the track metadata, used instead of querying the current track
+     */
+    private TrackMetadataCache mTrackMetadataCache;
 
     /**
      * Monitors the audio state
@@ -488,6 +515,10 @@ public class MusicPlaybackService extends Service {
 
     private int mOpenFailedCounter = 0;
 
+    // the saved state and retries left while the reloaded queue waits for its track
+    private QueueSnapshot mReloadedSnapshot;
+    private int mReloadRetries;
+
     private int mMediaMountedCount = 0;
 
     private int mShuffleMode = SHUFFLE_NONE;
@@ -498,13 +529,15 @@ public class MusicPlaybackService extends Service {
 
     private String mLyrics;
 
-    private ArrayList<MusicPlaybackTrack> mPlaylist = new ArrayList<>(100);
+    private PlaybackQueue mPlaylist = new PlaybackQueue(100);
 
     private long[] mAutoShuffleList = null;
 
     private MusicPlayerHandler mPlayerHandler;
     private HandlerThread mHandlerThread;
 
+    private ChangeDispatcher mChangeDispatcher;
+
     private BroadcastReceiver mUnmountReceiver = null;
 
     // to improve perf, instead of hitting the disk cache or file cache, store the bitmaps in memory
@@ -519,14 +552,9 @@ public class MusicPlaybackService extends Service {
     private ImageFetcher mImageFetcher;
 
     /**
-     * Recently listened database
-     */
-    private RecentStore mRecentsCache;
-
-    /**
-     * The song play count database
+     * Writes the recently played and play count databases in the background
      */
-    private SongPlayCount mSongPlayCountCache;
+    private PlayStatsRecorder mPlayStatsRecorder;
 
     /**
      * Stores the playback state
@@ -629,11 +657,11 @@ public class MusicPlaybackService extends Service {
 
         mNotificationManager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
 
-        // Initialize the favorites and recents databases
-        mRecentsCache = RecentStore.getInstance(this);
+        // Initialize the recents and song play count recorder
+        mPlayStatsRecorder = PlayStatsRecorder.getInstance(this);
 
-        // gets the song play count cache
-        mSongPlayCountCache = SongPlayCount.getInstance(this);
+        // Initialize the track metadata cache
+        mTrackMetadataCache = TrackMetadataCache.getInstance(this);
 
         // gets a pointer to the playback state store
         mPlaybackStateStore = MusicPlaybackState.getInstance(this);
@@ -654,6 +682,14 @@ public class MusicPlaybackService extends Service {
         // Initialize the handler
         mPlayerHandler = new MusicPlayerHandler(this, mHandlerThread.getLooper());
 
+        // Broadcasts and widget updates are sent from their own thread
+        mChangeDispatcher = new ChangeDispatcher(new ChangeDispatcher.Callback() {
+            @Override
+            public void onDispatchChange(String what) {
+                dispatchChange(what);
+            }
+        });
+
         // Initialize the audio manager and register any headset controls for
         // playback
         mAudioManager = (AudioManager)getSystemService(Context.AUDIO_SERVICE);
@@ -794,10 +830,14 @@ public class MusicPlaybackService extends Service {
         // remove any pending alarms
         mAlarmManager.cancel(mShutdownIntent);
 
+        // write out any queue change still waiting to be saved, and the journal in full
+        saveQueue(true, true);
+
         // Remove any callbacks from the handler
         mPlayerHandler.removeCallbacksAndMessages(null);
         // quit the thread so that anything that gets posted won't run
         mHandlerThread.quitSafely();
+        mChangeDispatcher.quit();
 
         // Release the player
         mPlayer.release();
@@ -813,6 +853,9 @@ public class MusicPlaybackService extends Service {
         // Close the cursor
         closeCursor();
 
+        // Write out the plays still waiting to be saved
+        mPlayStatsRecorder.flush();
+
         // Unregister the mount listener
         unregisterReceiver(mIntentReceiver);
         if (mUnmountReceiver != null) {
@@ -868,7 +911,7 @@ public class MusicPlaybackService extends Service {
         mSession.setActive(false);
 
         if (!mServiceInUse) {
-            saveQueue(true);
+            saveQueue(true, true);
             stopSelf(mServiceStartId);
         }
     }
@@ -1003,7 +1046,7 @@ public class MusicPlaybackService extends Service {
                 public void onReceive(final Context context, final Intent intent) {
                     final String action = intent.getAction();
                     if (action.equals(Intent.ACTION_MEDIA_EJECT)) {
-                        saveQueue(true);
+                        saveQueue(true, true);
                         mQueueIsSaveable = false;
                         closeExternalStorageFiles(intent.getData().getPath());
                     } else if (action.equals(Intent.ACTION_MEDIA_MOUNTED)) {
@@ -1094,10 +1137,9 @@ public class MusicPlaybackService extends Service {
                 mNextPlayPos = -1;
                 mPlaylist.clear();
                 mHistory.clear();
+                mShuffleScheduler.invalidate();
             } else {
-                for (int i = 0; i < numToRemove; i++) {
-                    mPlaylist.remove(first);
-                }
+                mPlaylist.remove(first, last);
 
                 // remove the items from the history
                 // this is not ideal as the history shouldn't be impacted by this
@@ -1112,6 +1154,7 @@ public class MusicPlaybackService extends Service {
                         positionIterator.set(pos - numToRemove);
                     }
                 }
+                mShuffleScheduler.invalidate();
             }
             if (gotonext) {
                 if (mPlaylist.size() == 0) {
@@ -1144,23 +1187,12 @@ public class MusicPlaybackService extends Service {
      * @param position The position to place the tracks
      */
     private void addToPlayList(final long[] list, int position, long sourceId, IdType sourceType) {
-        final int addlen = list.length;
         if (position < 0) {
             mPlaylist.clear();
             position = 0;
         }
 
-        mPlaylist.ensureCapacity(mPlaylist.size() + addlen);
-        if (position > mPlaylist.size()) {
-            position = mPlaylist.size();
-        }
-
-        final ArrayList<MusicPlaybackTrack> arrayList = new ArrayList<>(addlen);
-        for (int i = 0; i < list.length; i++) {
-            arrayList.add(new MusicPlaybackTrack(list[i], sourceId, sourceType, i));
-        }
-
-        mPlaylist.addAll(position, arrayList);
+        mPlaylist.addAll(position, list, sourceId, sourceType);
 
         if (mPlaylist.size() == 0) {
             closeCursor();
@@ -1172,7 +1204,26 @@ public class MusicPlaybackService extends Service {
      * @param trackId The track ID
      */
     private void updateCursor(final long trackId) {
-        updateCursor("_id=" + trackId, null);
+        final TrackMetadataCache.TrackMetadata track = mTrackMetadataCache.get(trackId);
+        synchronized (this) {
+            closeCursor();
+            if (track != null) {
+                final MatrixCursor cursor = new MatrixCursor(PROJECTION_MATRIX, 1);
+                cursor.addRow(new Object[] {
+                        track.mId,
+                        track.mArtistName,
+                        track.mAlbumName,
+                        track.mTitle,
+                        track.mData,
+                        track.mMimeType,
+                        track.mAlbumId,
+                        track.mArtistId
+                });
+                cursor.moveToFirst();
+                mCursor = cursor;
+            }
+        }
+        updateAlbumCursor();
     }
 
     private void updateCursor(final String selection, final String[] selectionArgs) {
@@ -1195,10 +1246,9 @@ public class MusicPlaybackService extends Service {
     private void updateAlbumCursor() {
         long albumId = getAlbumId();
         if (albumId >= 0) {
-            mAlbumCursor = openCursorAndGoToFirst(MediaStore.Audio.Albums.EXTERNAL_CONTENT_URI,
-                    ALBUM_PROJECTION, "_id=" + albumId, null);
+            mAlbumArtistName = mTrackMetadataCache.getAlbumArtist(albumId);
         } else {
-            mAlbumCursor = null;
+            mAlbumArtistName = null;
         }
     }
 
@@ -1221,10 +1271,7 @@ public class MusicPlaybackService extends Service {
             mCursor.close();
             mCursor = null;
         }
-        if (mAlbumCursor != null) {
-            mAlbumCursor.close();
-            mAlbumCursor = null;
-        }
+        mAlbumArtistName = null;
     }
 
     /**
@@ -1253,7 +1300,7 @@ public class MusicPlaybackService extends Service {
 
             boolean shutdown = false;
 
-            updateCursor(mPlaylist.get(mPlayPos).mId);
+            updateCursor(mPlaylist.getId(mPlayPos));
             while (true) {
                 if (mCursor != null
                         && openFile(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI + "/"
@@ -1274,7 +1321,7 @@ public class MusicPlaybackService extends Service {
                     mPlayPos = pos;
                     stop(false);
                     mPlayPos = pos;
-                    updateCursor(mPlaylist.get(mPlayPos).mId);
+                    updateCursor(mPlaylist.getId(mPlayPos));
                 } else {
                     mOpenFailedCounter = 0;
                     Log.w(TAG, "Failed to open file for playback");
@@ -1319,68 +1366,11 @@ public class MusicPlaybackService extends Service {
             }
             return mPlayPos;
         } else if (mShuffleMode == SHUFFLE_NORMAL) {
-            final int numTracks = mPlaylist.size();
-
-            // count the number of times a track has been played
-            final int[] trackNumPlays = new int[numTracks];
-            for (int i = 0; i < numTracks; i++) {
-                // set it all to 0
-                trackNumPlays[i] = 0;
-            }
-
-            // walk through the history and add up the number of times the track
-            // has been played
-            final int numHistory = mHistory.size();
-            for (int i = 0; i < numHistory; i++) {
-                final int idx = mHistory.get(i);
-                if (idx >= 0 && idx < numTracks) {
-                    trackNumPlays[idx]++;
-                }
-            }
-
-            // also add the currently playing track to the count
-            if (mPlayPos >= 0 && mPlayPos < numTracks) {
-                trackNumPlays[mPlayPos]++;
-            }
-
-            // figure out the least # of times a track has a played as well as
-            // how many tracks share that count
-            int minNumPlays = Integer.MAX_VALUE;
-            int numTracksWithMinNumPlays = 0;
-            for (final int trackNumPlay : trackNumPlays) {
-                // if we found a new track that has less number of plays, reset the counters
-                if (trackNumPlay < minNumPlays) {
-                    minNumPlays = trackNumPlay;
-                    numTracksWithMinNumPlays = 1;
-                } else if (trackNumPlay == minNumPlays) {
-                    // increment this track shares the # of tracks
-                    numTracksWithMinNumPlays++;
-                }
-            }
-
-            // if we've played each track at least once and all tracks have been played an equal
-            // # of times and we aren't repeating all and we're not forcing a track, then
-            // return no more tracks
-            if (minNumPlays > 0 && numTracksWithMinNumPlays == numTracks
-                    && mRepeatMode != REPEAT_ALL && !force) {
-                    return -1;
-            }
-
-            // else pick a track from the least number of played tracks
-            int skip = mShuffler.nextInt(numTracksWithMinNumPlays);
-            for (int i = 0; i < trackNumPlays.length; i++) {
-                if (trackNumPlays[i] == minNumPlays) {
-                    if (skip == 0) {
-                        return i;
-                    } else {
-                        skip--;
-                    }
-                }
-            }
-
-            // Unexpected to land here
-            if (D) Log.e(TAG, "Getting the next position resulted did not get a result when it should have");
-            return -1;
+            // pick a track from the least number of played tracks. If we've played each track
+            // an equal number of times and we aren't repeating all and we're not forcing a
+            // track, then there are no more tracks
+            mShuffleScheduler.sync(mHistory, mPlayPos, mPlaylist.size());
+            return mShuffleScheduler.next(mRepeatMode == REPEAT_ALL || force);
         } else if (mShuffleMode == SHUFFLE_AUTO) {
             doAutoShuffleUpdate();
             return mPlayPos + 1;
@@ -1413,7 +1403,7 @@ public class MusicPlaybackService extends Service {
         mNextPlayPos = position;
         if (D) Log.d(TAG, "setNextTrack: next play position = " + mNextPlayPos);
         if (mNextPlayPos >= 0 && mPlaylist != null && mNextPlayPos < mPlaylist.size()) {
-            final long id = mPlaylist.get(mNextPlayPos).mId;
+            final long id = mPlaylist.getId(mNextPlayPos);
             mPlayer.setNextDataSource(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI + "/" + id);
         } else {
             mPlayer.setNextDataSource(null);
@@ -1473,9 +1463,10 @@ public class MusicPlaybackService extends Service {
             }
             mHistory.add(idx);
             if (mHistory.size() > MAX_HISTORY_SIZE) {
-                mHistory.remove(0);
+                mHistory.removeFirst();
             }
-            mPlaylist.add(new MusicPlaybackTrack(mAutoShuffleList[idx], -1, IdType.NA, -1));
+            mShuffleScheduler.invalidate();
+            mPlaylist.add(mAutoShuffleList[idx], -1, IdType.NA, -1);
             notify = true;
         }
         if (notify) {
@@ -1488,14 +1479,9 @@ public class MusicPlaybackService extends Service {
         if (lookbacksize == 0) {
             return false;
         }
-        final int histsize = mHistory.size();
-        if (histsize < lookbacksize) {
-            lookbacksize = histsize;
-        }
-        final int maxidx = histsize - 1;
-        for (int i = 0; i < lookbacksize; i++) {
-            final long entry = mHistory.get(maxidx - i);
-            if (entry == idx) {
+        final Iterator<Integer> iterator = mHistory.descendingIterator();
+        for (int i = 0; i < lookbacksize && iterator.hasNext(); i++) {
+            if (iterator.next() == idx) {
                 return true;
             }
         }
@@ -1508,6 +1494,42 @@ public class MusicPlaybackService extends Service {
     private void notifyChange(final String what) {
         if (D) Log.d(TAG, "notifyChange: what = " + what);
 
+        switch (what) {
+            case META_CHANGED:
+                // Add the track to the recently played list and bump its play count.
+                mPlayStatsRecorder.recordPlay(getAudioId());
+                break;
+            case QUEUE_CHANGED:
+                scheduleSaveQueue();
+                if (isPlaying()) {
+                    // if we are in shuffle mode and our next track is still valid,
+                    // try to re-use the track
+                    // We need to reimplement the queue to prevent hacky solutions like this
+                    if (mNextPlayPos >= 0 && mNextPlayPos < mPlaylist.size()
+                            && getShuffleMode() != SHUFFLE_NONE) {
+                        setNextTrack(mNextPlayPos);
+                    } else {
+                        setNextTrack();
+                    }
+                }
+                break;
+            case POSITION_CHANGED:
+                break;
+            default:
+                saveQueue(false);
+                break;
+        }
+
+        // The broadcasts, lockscreen controls and widgets are updated from the dispatcher thread
+        mChangeDispatcher.post(what, what.equals(META_CHANGED) || what.equals(QUEUE_CHANGED)
+                || what.equals(PLAYSTATE_CHANGED));
+    }
+
+    /**
+     * Tells the world about a change, called on the dispatcher thread. Everything sent is read
+     * from the current state, so coalesced events report the latest state.
+     */
+    private void dispatchChange(final String what) {
         // Update the lockscreen controls
         updateMediaSession(what);
 
@@ -1515,6 +1537,12 @@ public class MusicPlaybackService extends Service {
             return;
         }
 
+        if (what.equals(META_CHANGED)) {
+            // write the play of the new track first, so the lists reloaded on this broadcast
+            // include it
+            mPlayStatsRecorder.flush();
+        }
+
         final Intent intent = new Intent(what);
         intent.putExtra("id", getAudioId());
         intent.putExtra("artist", getArtistName());
@@ -1532,32 +1560,6 @@ public class MusicPlaybackService extends Service {
         musicIntent.setAction(what.replace(ELEVEN_PACKAGE_NAME, MUSIC_PACKAGE_NAME));
         sendStickyBroadcast(musicIntent);
 
-        switch (what) {
-            case META_CHANGED:
-                // Add the track to the recently played list.
-                mRecentsCache.addSongId(getAudioId());
-
-                mSongPlayCountCache.bumpSongCount(getAudioId());
-                break;
-            case QUEUE_CHANGED:
-                saveQueue(true);
-                if (isPlaying()) {
-                    // if we are in shuffle mode and our next track is still valid,
-                    // try to re-use the track
-                    // We need to reimplement the queue to prevent hacky solutions like this
-                    if (mNextPlayPos >= 0 && mNextPlayPos < mPlaylist.size()
-                            && getShuffleMode() != SHUFFLE_NONE) {
-                        setNextTrack(mNextPlayPos);
-                    } else {
-                        setNextTrack();
-                    }
-                }
-                break;
-            default:
-                saveQueue(false);
-                break;
-        }
-
         if (what.equals(PLAYSTATE_CHANGED)) {
             updateNotification();
         }
@@ -1605,7 +1607,7 @@ public class MusicPlaybackService extends Service {
                     .putString(MediaMetadata.METADATA_KEY_TITLE, getTrackName())
                     .putLong(MediaMetadata.METADATA_KEY_DURATION, duration())
                     .putLong(MediaMetadata.METADATA_KEY_TRACK_NUMBER, getQueuePosition() + 1)
-                    .putLong(MediaMetadata.METADATA_KEY_NUM_TRACKS, getQueue().length)
+                    .putLong(MediaMetadata.METADATA_KEY_NUM_TRACKS, getQueueSize())
                     .putString(MediaMetadata.METADATA_KEY_GENRE, getGenreName())
                     .putBitmap(MediaMetadata.METADATA_KEY_ALBUM_ART,
                             mShowAlbumArtOnLockscreen ? albumArt : null)
@@ -1705,20 +1707,43 @@ public class MusicPlaybackService extends Service {
         return PendingIntent.getService(this, 0, intent, 0);
     }
 
+    /**
+     * Saves the queue once no further queue change happened for {@link #SAVE_QUEUE_DELAY}
+     */
+    private void scheduleSaveQueue() {
+        mPlayerHandler.removeMessages(SAVE_QUEUE);
+        mPlayerHandler.sendEmptyMessageDelayed(SAVE_QUEUE, SAVE_QUEUE_DELAY);
+    }
+
     /**
      * Saves the queue
      *
      * @param full True if the queue is full
      */
     private void saveQueue(final boolean full) {
+        saveQueue(full, false);
+    }
+
+    /**
+     * Saves the queue
+     *
+     * @param full True if the queue is full
+     * @param compact True to write the queue in full rather than journal the edits, which is
+     *                done when the service goes away
+     */
+    private void saveQueue(final boolean full, final boolean compact) {
         if (!mQueueIsSaveable || mPreferences == null) {
             return;
         }
+        if (full) {
+            mPlayerHandler.removeMessages(SAVE_QUEUE);
+        }
 
         final SharedPreferences.Editor editor = mPreferences.edit();
         if (full) {
             mPlaybackStateStore.saveState(mPlaylist,
-                    mShuffleMode != SHUFFLE_NONE ? mHistory : null);
+                    mShuffleMode != SHUFFLE_NONE ? mHistory : null,
+                    mPlayPos, mShuffleMode, mRepeatMode, compact);
             editor.putInt("cardid", mCardId);
         }
         editor.putInt("curpos", mPlayPos);
@@ -1739,60 +1764,85 @@ public class MusicPlaybackService extends Service {
         if (mPreferences.contains("cardid")) {
             id = mPreferences.getInt("cardid", ~mCardId);
         }
+        QueueSnapshot snapshot = null;
         if (id == mCardId) {
             mPlaylist = mPlaybackStateStore.getQueue();
+            snapshot = mPlaybackStateStore.getSnapshot();
         }
+        mPlaybackStateStore.trackQueue(mPlaylist);
         if (mPlaylist.size() > 0) {
-            final int pos = mPreferences.getInt("curpos", 0);
+            // the preferences are updated on every change, the snapshot only along with the
+            // queue, so only use the latter if the preferences were lost
+            final int pos = mPreferences.getInt("curpos",
+                    snapshot != null ? snapshot.mPosition : 0);
             if (pos < 0 || pos >= mPlaylist.size()) {
                 mPlaylist.clear();
                 return;
             }
             mPlayPos = pos;
-            updateCursor(mPlaylist.get(mPlayPos).mId);
-            if (mCursor == null) {
-                SystemClock.sleep(3000);
-                updateCursor(mPlaylist.get(mPlayPos).mId);
-            }
-            synchronized (this) {
-                closeCursor();
-                mOpenFailedCounter = 20;
-                openCurrentAndNext();
-            }
-            if (!mPlayer.isInitialized()) {
-                mPlaylist.clear();
-                return;
-            }
+            mPlayerHandler.removeMessages(OPEN_RELOADED_TRACK);
+            mReloadedSnapshot = snapshot;
+            mReloadRetries = OPEN_RELOADED_TRACK_RETRIES;
+            openReloadedTrack();
+        }
+    }
 
-            final long seekpos = mPreferences.getLong("seekpos", 0);
-            seek(seekpos >= 0 && seekpos < duration() ? seekpos : 0);
+    /**
+     * Opens the current track of the reloaded queue and restores the playback position and
+     * modes. If the media store doesn't know the track yet, retries later instead of blocking
+     * the caller
+     */
+    private void openReloadedTrack() {
+        updateCursor(mPlaylist.getId(mPlayPos));
+        if (mCursor == null && mReloadRetries > 0) {
+            mReloadRetries--;
+            mPlayerHandler.sendEmptyMessageDelayed(OPEN_RELOADED_TRACK,
+                    OPEN_RELOADED_TRACK_DELAY);
+            return;
+        }
+        final QueueSnapshot snapshot = mReloadedSnapshot;
+        mReloadedSnapshot = null;
+        synchronized (this) {
+            closeCursor();
+            mOpenFailedCounter = 20;
+            openCurrentAndNext();
+        }
+        if (!mPlayer.isInitialized()) {
+            mPlaylist.clear();
+            return;
+        }
 
-            if (D) {
-                Log.d(TAG, "restored queue, currently at position "
-                        + position() + "/" + duration()
-                        + " (requested " + seekpos + ")");
-            }
+        final long seekpos = mPreferences.getLong("seekpos", 0);
+        seek(seekpos >= 0 && seekpos < duration() ? seekpos : 0);
 
-            int repmode = mPreferences.getInt("repeatmode", REPEAT_NONE);
-            if (repmode != REPEAT_ALL && repmode != REPEAT_CURRENT) {
-                repmode = REPEAT_NONE;
-            }
-            mRepeatMode = repmode;
+        if (D) {
+            Log.d(TAG, "restored queue, currently at position "
+                    + position() + "/" + duration()
+                    + " (requested " + seekpos + ")");
+        }
+
+        int repmode = mPreferences.getInt("repeatmode",
+                snapshot != null ? snapshot.mRepeatMode : REPEAT_NONE);
+        if (repmode != REPEAT_ALL && repmode != REPEAT_CURRENT) {
+            repmode = REPEAT_NONE;
+        }
+        mRepeatMode = repmode;
 
-            int shufmode = mPreferences.getInt("shufflemode", SHUFFLE_NONE);
-            if (shufmode != SHUFFLE_AUTO && shufmode != SHUFFLE_NORMAL) {
+        int shufmode = mPreferences.getInt("shufflemode",
+                snapshot != null ? snapshot.mShuffleMode : SHUFFLE_NONE);
+        if (shufmode != SHUFFLE_AUTO && shufmode != SHUFFLE_NORMAL) {
+            shufmode = SHUFFLE_NONE;
+        }
+        if (shufmode != SHUFFLE_NONE) {
+            mHistory = mPlaybackStateStore.getHistory(mPlaylist.size());
+            mShuffleScheduler.invalidate();
+        }
+        if (shufmode == SHUFFLE_AUTO) {
+            if (!makeAutoShuffleList()) {
                 shufmode = SHUFFLE_NONE;
             }
-            if (shufmode != SHUFFLE_NONE) {
-                mHistory = mPlaybackStateStore.getHistory(mPlaylist.size());
-            }
-            if (shufmode == SHUFFLE_AUTO) {
-                if (!makeAutoShuffleList()) {
-                    shufmode = SHUFFLE_NONE;
-                }
-            }
-            mShuffleMode = shufmode;
         }
+        mShuffleMode = shufmode;
     }
 
     /**
@@ -1857,12 +1907,12 @@ public class MusicPlaybackService extends Service {
                 try {
                     if (mCursor != null && shouldAddToPlaylist) {
                         mPlaylist.clear();
-                        mPlaylist.add(new MusicPlaybackTrack(
-                                                mCursor.getLong(IDCOLIDX), -1, IdType.NA, -1));
+                        mPlaylist.add(mCursor.getLong(IDCOLIDX), -1, IdType.NA, -1);
                         // propagate the change in playlist state
                         notifyChange(QUEUE_CHANGED);
                         mPlayPos = 0;
                         mHistory.clear();
+                        mShuffleScheduler.invalidate();
                     }
                 } catch (final UnsupportedOperationException ex) {
                     // Ignore
@@ -1888,7 +1938,7 @@ public class MusicPlaybackService extends Service {
     }
 
     /*
-        Columns for a pseudo cursor we are creating for downloaded songs
+        Columns for a pseudo cursor we are creating for downloaded songs and cached tracks
         Modeled after mCursor to be able to respond to respond to the same queries as it
      */
     private static final String[] PROJECTION_MATRIX = new String[] {
@@ -1993,7 +2043,7 @@ public class MusicPlaybackService extends Service {
         int numremoved = 0;
         synchronized (this) {
             for (int i = 0; i < mPlaylist.size(); i++) {
-                if (mPlaylist.get(i).mId == id) {
+                if (mPlaylist.getId(i) == id) {
                     numremoved += removeTracksInternal(i, i);
                     i--;
                 }
@@ -2016,7 +2066,7 @@ public class MusicPlaybackService extends Service {
         synchronized (this) {
             if (    position >=0 &&
                     position < mPlaylist.size() &&
-                    mPlaylist.get(position).mId == id  ) {
+                    mPlaylist.getId(position) == id  ) {
 
                 return removeTracks(position, position) > 0;
             }
@@ -2080,8 +2130,9 @@ public class MusicPlaybackService extends Service {
     public int[] getQueueHistoryList() {
         synchronized (this) {
             int[] history = new int[mHistory.size()];
-            for (int i = 0; i < mHistory.size(); i++) {
-                history[i] = mHistory.get(i);
+            int i = 0;
+            for (final int position : mHistory) {
+                history[i++] = position;
             }
 
             return history;
@@ -2142,7 +2193,7 @@ public class MusicPlaybackService extends Service {
             }
             String[] genreProjection = { MediaStore.Audio.Genres.NAME };
             Uri genreUri = MediaStore.Audio.Genres.getContentUriForAudioId("external",
-                    (int) mPlaylist.get(mPlayPos).mId);
+                    (int) mPlaylist.getId(mPlayPos));
             Cursor genreCursor = getContentResolver().query(genreUri, genreProjection,
                     null, null, null);
             if (genreCursor != null) {
@@ -2180,10 +2231,7 @@ public class MusicPlaybackService extends Service {
      */
     public String getAlbumArtistName() {
         synchronized (this) {
-            if (mAlbumCursor == null) {
-                return null;
-            }
-            return mAlbumCursor.getString(mAlbumCursor.getColumnIndexOrThrow(AlbumColumns.ARTIST));
+            return mAlbumArtistName;
         }
     }
 
@@ -2241,7 +2289,7 @@ public class MusicPlaybackService extends Service {
      */
     public synchronized MusicPlaybackTrack getTrack(int index) {
         if (index >= 0 && index < mPlaylist.size() && mPlayer.isInitialized()) {
-            return mPlaylist.get(index);
+            return mPlaylist.getTrack(index);
         }
 
         return null;
@@ -2255,7 +2303,7 @@ public class MusicPlaybackService extends Service {
     public long getNextAudioId() {
         synchronized (this) {
             if (mNextPlayPos >= 0 && mNextPlayPos < mPlaylist.size() && mPlayer.isInitialized()) {
-                return mPlaylist.get(mNextPlayPos).mId;
+                return mPlaylist.getId(mNextPlayPos);
             }
         }
         return -1;
@@ -2271,7 +2319,7 @@ public class MusicPlaybackService extends Service {
             if (mPlayer.isInitialized()) {
                 int pos = getPreviousPlayPosition(false);
                 if (pos >= 0 && pos < mPlaylist.size()) {
-                    return mPlaylist.get(pos).mId;
+                    return mPlaylist.getId(pos);
                 }
             }
         }
@@ -2356,12 +2404,7 @@ public class MusicPlaybackService extends Service {
      */
     public long[] getQueue() {
         synchronized (this) {
-            final int len = mPlaylist.size();
-            final long[] list = new long[len];
-            for (int i = 0; i < len; i++) {
-                list[i] = mPlaylist.get(i).mId;
-            }
-            return list;
+            return mPlaylist.getIds();
         }
     }
 
@@ -2373,7 +2416,7 @@ public class MusicPlaybackService extends Service {
     public long getQueueItemAtPosition(int position) {
         synchronized (this) {
             if (position >= 0 && position < mPlaylist.size()) {
-                return mPlaylist.get(position).mId;
+                return mPlaylist.getId(position);
             }
         }
 
@@ -2438,18 +2481,7 @@ public class MusicPlaybackService extends Service {
                 mShuffleMode = SHUFFLE_NORMAL;
             }
             final long oldId = getAudioId();
-            final int listlength = list.length;
-            boolean newlist = true;
-            if (mPlaylist.size() == listlength) {
-                newlist = false;
-                for (int i = 0; i < listlength; i++) {
-                    if (list[i] != mPlaylist.get(i).mId) {
-                        newlist = true;
-                        break;
-                    }
-                }
-            }
-            if (newlist) {
+            if (!mPlaylist.hasSameIds(list)) {
                 addToPlayList(list, -1, sourceId, sourceType);
                 notifyChange(QUEUE_CHANGED);
             }
@@ -2459,6 +2491,7 @@ public class MusicPlaybackService extends Service {
                 mPlayPos = mShuffler.nextInt(mPlaylist.size());
             }
             mHistory.clear();
+            mShuffleScheduler.invalidate();
             openCurrentAndNext();
             if (oldId != getAudioId()) {
                 notifyChange(META_CHANGED);
@@ -2599,8 +2632,9 @@ public class MusicPlaybackService extends Service {
             // save to the history
             if (mShuffleMode != SHUFFLE_NONE) {
                 mHistory.add(mPlayPos);
+                mShuffleScheduler.onHistoryAdded(mPlayPos);
                 if (mHistory.size() > MAX_HISTORY_SIZE) {
-                    mHistory.remove(0);
+                    mShuffleScheduler.onHistoryRemoved(mHistory.removeFirst());
                 }
             }
 
@@ -2647,9 +2681,10 @@ public class MusicPlaybackService extends Service {
                 if (histsize == 0) {
                     return -1;
                 }
-                final Integer pos = mHistory.get(histsize - 1);
+                final int pos = mHistory.getLast();
                 if (removeFromHistory) {
-                    mHistory.remove(histsize - 1);
+                    mHistory.removeLast();
+                    mShuffleScheduler.onHistoryRemoved(pos);
                 }
                 return pos;
             } else {
@@ -2690,16 +2725,14 @@ public class MusicPlaybackService extends Service {
                 return;
             }
 
-            final MusicPlaybackTrack track = mPlaylist.remove(index1);
+            mPlaylist.move(index1, index2);
             if (index1 < index2) {
-                mPlaylist.add(index2, track);
                 if (mPlayPos == index1) {
                     mPlayPos = index2;
                 } else if (mPlayPos >= index1 && mPlayPos <= index2) {
                     mPlayPos--;
                 }
             } else if (index2 < index1) {
-                mPlaylist.add(index2, track);
                 if (mPlayPos == index1) {
                     mPlayPos = index2;
                 } else if (mPlayPos >= index2 && mPlayPos <= index1) {
@@ -2980,6 +3013,12 @@ public class MusicPlaybackService extends Service {
             // actually call refresh when the delayed callback fires
             Log.e("ELEVEN", "calling refresh!");
             refresh();
+
+            // the track of the reloaded queue may just have been scanned, so retry right away
+            if (mHandler.hasMessages(OPEN_RELOADED_TRACK)) {
+                mHandler.removeMessages(OPEN_RELOADED_TRACK);
+                mHandler.sendEmptyMessage(OPEN_RELOADED_TRACK);
+            }
         }
     };
 
@@ -3060,7 +3099,7 @@ public class MusicPlaybackService extends Service {
                             service.mCursor.close();
                             service.mCursor = null;
                         }
-                        service.updateCursor(service.mPlaylist.get(service.mPlayPos).mId);
+                        service.updateCursor(service.mPlaylist.getId(service.mPlayPos));
                         service.notifyChange(META_CHANGED);
                         service.updateNotification();
                         break;
@@ -3072,6 +3111,19 @@ public class MusicPlaybackService extends Service {
                             service.gotoNext(false);
                         }
                         break;
+                    case SAVE_QUEUE:
+                        service.saveQueue(true);
+                        break;
+                    case OPEN_RELOADED_TRACK:
+                        // skip if something else got opened in the meantime
+                        if (!service.mPlayer.isInitialized() && service.mPlaylist.size() > 0) {
+                            service.openReloadedTrack();
+                            if (service.mPlayer.isInitialized()) {
+                                service.notifyChange(QUEUE_CHANGED);
+                                service.notifyChange(META_CHANGED);
+                            }
+                        }
+                        break;
                     case LYRICS:
                         service.mLyrics = (String) msg.obj;
                         service.notifyChange(NEW_LYRICS);
@@ -3896,53 +3948,31 @@ public class MusicPlaybackService extends Service {
                 return null;
             }
 
-            final StringBuilder selection = new StringBuilder();
-            selection.append(MediaStore.Audio.Media._ID).append(" IN (");
-            for (int i = 0; i < mQueue.length; i++) {
-                if (i != 0) {
-                    selection.append(",");
-                }
-                selection.append(mQueue[i]);
-            }
-            selection.append(")");
-
-            Cursor c = getContentResolver().query(
-                    MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
-                    new String[] { AudioColumns._ID, AudioColumns.TITLE, AudioColumns.ARTIST },
-                    selection.toString(), null, null);
-            if (c == null) {
+            // the queue can be far larger than the cache, so don't let it evict the tracks
+            // that are looked up one at a time, such as the current one
+            final LongSparseArray<TrackMetadataCache.TrackMetadata> tracks =
+                    mTrackMetadataCache.getAllUncached(mQueue);
+            if (isCancelled()) {
                 return null;
             }
 
-            try {
-                LongSparseArray<MediaDescription> descsById = new LongSparseArray<>();
-                final int idColumnIndex = c.getColumnIndexOrThrow(AudioColumns._ID);
-                final int titleColumnIndex = c.getColumnIndexOrThrow(AudioColumns.TITLE);
-                final int artistColumnIndex = c.getColumnIndexOrThrow(AudioColumns.ARTIST);
-
-                while (c.moveToNext() && !isCancelled()) {
-                    final MediaDescription desc = new MediaDescription.Builder()
-                            .setTitle(c.getString(titleColumnIndex))
-                            .setSubtitle(c.getString(artistColumnIndex))
+            List<MediaSession.QueueItem> items = new ArrayList<>();
+            for (int i = 0; i < mQueue.length; i++) {
+                final TrackMetadataCache.TrackMetadata track = tracks.get(mQueue[i]);
+                final MediaDescription desc;
+                if (track != null) {
+                    desc = new MediaDescription.Builder()
+                            .setTitle(track.mTitle)
+                            .setSubtitle(track.mArtistName)
                             .build();
-                    final long id = c.getLong(idColumnIndex);
-                    descsById.put(id, desc);
-                }
-
-                List<MediaSession.QueueItem> items = new ArrayList<>();
-                for (int i = 0; i < mQueue.length; i++) {
-                    MediaDescription desc = descsById.get(mQueue[i]);
-                    if (desc == null) {
-                        // shouldn't happen except in corner cases like
-                        // music being deleted while we were processing
-                        desc = new MediaDescription.Builder().build();
-                    }
-                    items.add(new MediaSession.QueueItem(desc, i));
+                } else {
+                    // shouldn't happen except in corner cases like
+                    // music being deleted while we were processing
+                    desc = new MediaDescription.Builder().build();
                 }
-                return items;
-            } finally {
-                c.close();
+                items.add(new MediaSession.QueueItem(desc, i));
             }
+            return items;
         }
 
         @Override
@@ -191,11 +191,11 @@ public class AlbumAdapter extends BaseAdapter implements IPopupMenuCallback {
     }
 
     /**
-     * @param pause True to temporarily pause the disk cache, false otherwise.
+     * @param flinging True while the list is flinging, false otherwise.
      */
-    public void setPauseDiskCache(final boolean pause) {
+    public void setFlinging(final boolean flinging) {
         if (mImageFetcher != null) {
-            mImageFetcher.setPauseDiskCache(pause);
+            mImageFetcher.setFlinging(flinging);
         }
     }
 
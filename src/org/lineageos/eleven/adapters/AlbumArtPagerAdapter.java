@@ -30,8 +30,6 @@ import android.view.ViewGroup;
 import org.lineageos.eleven.BuildConstants;
 import org.lineageos.eleven.MusicPlaybackService;
 import org.lineageos.eleven.R;
-import org.lineageos.eleven.cache.ICacheListener;
-import org.lineageos.eleven.cache.ImageCache;
 import org.lineageos.eleven.model.AlbumArtistDetails;
 import org.lineageos.eleven.utils.ElevenUtils;
 import org.lineageos.eleven.utils.MusicUtils;
@@ -152,7 +150,7 @@ public class AlbumArtPagerAdapter extends FragmentStatePagerAdapter {
      * The fragments to be displayed inside this adapter.  This wraps the album art
      * and handles loading the album art for a given audio id
      */
-    public static class AlbumArtFragment extends Fragment implements ICacheListener {
+    public static class AlbumArtFragment extends Fragment {
         private static final String ID = BuildConstants.PACKAGE_NAME +
                 ".adapters.AlbumArtPagerAdapter.AlbumArtFragment.ID";
 
@@ -174,7 +172,6 @@ public class AlbumArtPagerAdapter extends FragmentStatePagerAdapter {
             super.onCreate(savedInstanceState);
 
             mAudioId = getArguments().getLong(ID, NO_TRACK_ID);
-            ImageCache.getInstance(getActivity()).addCacheListener(this);
         }
 
         @Override
@@ -183,13 +180,6 @@ public class AlbumArtPagerAdapter extends FragmentStatePagerAdapter {
             return mRootView;
         }
 
-        @Override
-        public void onDestroy() {
-            super.onDestroy();
-
-            ImageCache.getInstance(getActivity()).removeCacheListener(this);
-        }
-
         @Override
         public void onDestroyView() {
             super.onDestroyView();
@@ -247,11 +237,6 @@ public class AlbumArtPagerAdapter extends FragmentStatePagerAdapter {
                     mImageView
             );
         }
-
-        @Override
-        public void onCacheUnpaused() {
-            loadImageAsync();
-        }
     }
 
     /**
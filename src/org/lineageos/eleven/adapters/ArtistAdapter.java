@@ -172,11 +172,11 @@ public class ArtistAdapter extends ArrayAdapter<Artist> implements BasicAdapter,
     }
 
     /**
-     * @param pause True to temporarily pause the disk cache, false otherwise.
+     * @param flinging True while the list is flinging, false otherwise.
      */
-    public void setPauseDiskCache(final boolean pause) {
+    public void setFlinging(final boolean flinging) {
         if (mImageFetcher != null) {
-            mImageFetcher.setPauseDiskCache(pause);
+            mImageFetcher.setFlinging(flinging);
         }
     }
 
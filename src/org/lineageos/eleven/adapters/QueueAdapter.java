@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2019 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.adapters;
+
+import android.app.Activity;
+import android.database.DataSetObserver;
+
+import org.lineageos.eleven.Config;
+import org.lineageos.eleven.loaders.NowPlayingCursor;
+import org.lineageos.eleven.model.Song;
+import org.lineageos.eleven.ui.MusicHolder.DataHolder;
+import org.lineageos.eleven.ui.fragments.QueueFragment;
+
+/**
+ * A {@link SongAdapter} for {@link QueueFragment} that reads the songs straight from a
+ * {@link NowPlayingCursor} instead of copying every song of the queue into the adapter, so only
+ * the rows that are shown have their metadata loaded.
+ */
+public class QueueAdapter extends SongAdapter {
+
+    /**
+     * The queue being shown
+     */
+    private NowPlayingCursor mQueue;
+
+    /**
+     * Rebinds the rows once the queue loaded the metadata shown as placeholders
+     */
+    private final DataSetObserver mQueueObserver = new DataSetObserver() {
+        @Override
+        public void onChanged() {
+            notifyDataSetChanged();
+        }
+    };
+
+    /**
+     * Constructor of <code>QueueAdapter</code>
+     *
+     * @param context The {@link Activity} to use.
+     * @param layoutId The resource Id of the view to inflate.
+     */
+    public QueueAdapter(final Activity context, final int layoutId) {
+        super(context, layoutId, -1, Config.IdType.NA);
+    }
+
+    /**
+     * Replaces the queue being shown, closing the previous one
+     *
+     * @param queue the new queue, or null
+     */
+    public void setQueue(final NowPlayingCursor queue) {
+        if (mQueue == queue) {
+            return;
+        }
+        if (mQueue != null) {
+            mQueue.unregisterDataSetObserver(mQueueObserver);
+            mQueue.close();
+        }
+        mQueue = queue;
+        if (mQueue != null) {
+            // the rows are read on the UI thread, so never query the metadata there
+            mQueue.setLoadWindowsAsync(true);
+            mQueue.registerDataSetObserver(mQueueObserver);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getCount() {
+        return mQueue != null ? mQueue.getCount() : 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Song getItem(final int position) {
+        if (mQueue == null || !mQueue.moveToPosition(position)) {
+            return null;
+        }
+
+        return new Song(mQueue.getLong(0), mQueue.getString(1), mQueue.getString(2),
+                mQueue.getString(4), mQueue.getLong(3), (int) mQueue.getLong(5) / 1000,
+                mQueue.getInt(6));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected DataHolder getDataHolder(final int position) {
+        // rows are only formatted once they are shown
+        return buildDataHolder(getItem(position));
+    }
+
+    /**
+     * Nothing to cache, the rows are built when they are shown
+     */
+    @Override
+    public void buildCache() {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void unload() {
+        setQueue(null);
+    }
+
+    /**
+     * Removes a song from the list until the queue is reloaded
+     *
+     * @param position the position of the song
+     */
+    public void removeItem(final int position) {
+        if (mQueue != null) {
+            mQueue.onItemRemoved(position);
+            notifyDataSetChanged();
+        }
+    }
+
+    /**
+     * Moves a song in the list until the queue is reloaded
+     *
+     * @param from the position the song is moved from
+     * @param to the position the song is moved to
+     */
+    public void moveItem(final int from, final int to) {
+        if (mQueue != null) {
+            mQueue.onItemMoved(from, to);
+            notifyDataSetChanged();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getItemPosition(final long id) {
+        for (int i = 0; i < getCount(); i++) {
+            if (mQueue.getTrackId(i) == id) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long[] getSongIds() {
+        final long[] ret = new long[getCount()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = mQueue.getTrackId(i);
+        }
+
+        return ret;
+    }
+}
@@ -24,6 +24,7 @@ import org.lineageos.eleven.Config;
 import org.lineageos.eleven.cache.ImageFetcher;
 import org.lineageos.eleven.model.Artist;
 import org.lineageos.eleven.model.Song;
+import org.lineageos.eleven.model.SongList;
 import org.lineageos.eleven.sectionadapter.SectionAdapter;
 import org.lineageos.eleven.service.MusicPlaybackTrack;
 import org.lineageos.eleven.ui.MusicHolder;
@@ -35,6 +36,9 @@ import org.lineageos.eleven.utils.MusicUtils;
 import org.lineageos.eleven.widgets.IPopupMenuCallback;
 import org.lineageos.eleven.widgets.PlayPauseProgressButton;
 
+import java.util.Collection;
+import java.util.Comparator;
+
 /**
  * This {@link ArrayAdapter} is used to display all of the songs on a user's
  * device for {@link SongFragment}. It is also used to show the queue in
@@ -72,6 +76,16 @@ public class SongAdapter extends ArrayAdapter<Song>
      */
     private DataHolder[] mData;
 
+    /**
+     * The songs, while they are held by column instead of by the {@link ArrayAdapter}
+     */
+    private SongList mSongs;
+
+    /**
+     * Mirrors the notify on change flag of the {@link ArrayAdapter}, which it doesn't expose
+     */
+    private boolean mNotifyOnChange = true;
+
     /**
      * Used to listen to the pop up menu callbacks
      */
@@ -126,7 +140,7 @@ public class SongAdapter extends ArrayAdapter<Song>
         }
 
         // Retrieve the data holder
-        final DataHolder dataHolder = mData[position];
+        final DataHolder dataHolder = getDataHolder(position);
 
         // Sets the position each time because of recycling
         holder.mPopupMenuButton.get().setPosition(position);
@@ -188,6 +202,150 @@ public class SongAdapter extends ArrayAdapter<Song>
         return false;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getCount() {
+        return mSongs != null ? mSongs.size() : super.getCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Song getItem(final int position) {
+        return mSongs != null ? mSongs.get(position) : super.getItem(position);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getPosition(final Song item) {
+        return mSongs != null ? mSongs.indexOf(item) : super.getPosition(item);
+    }
+
+    /**
+     * Adds the songs. A {@link SongList} is kept as it is instead of being copied into the
+     * adapter one {@link Song} at a time, so its songs are only created when they are shown.
+     */
+    @Override
+    public void addAll(final Collection<? extends Song> collection) {
+        if (collection instanceof SongList && mSongs == null) {
+            final SongList songs = (SongList) collection;
+            if (super.getCount() == 0) {
+                mSongs = songs;
+            } else {
+                // keep the songs already added, like the header placeholder of the subclasses
+                mSongs = new SongList(super.getCount() + songs.size());
+                for (int i = 0; i < super.getCount(); i++) {
+                    mSongs.add(super.getItem(i));
+                }
+                for (int i = 0; i < songs.size(); i++) {
+                    mSongs.add(songs.getSongId(i), songs.getSongName(i), songs.getArtistName(i),
+                            songs.getAlbumName(i), songs.getAlbumId(i), songs.getDuration(i),
+                            songs.getYear(i), songs.getBucketLabel(i));
+                }
+                mSongs.trimToSize();
+                super.setNotifyOnChange(false);
+                super.clear();
+                super.setNotifyOnChange(mNotifyOnChange);
+            }
+            if (mNotifyOnChange) {
+                notifyDataSetChanged();
+            }
+            return;
+        }
+
+        materialize();
+        super.addAll(collection);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addAll(final Song... items) {
+        materialize();
+        super.addAll(items);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void add(final Song object) {
+        materialize();
+        super.add(object);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void insert(final Song object, final int index) {
+        materialize();
+        super.insert(object, index);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove(final Song object) {
+        materialize();
+        super.remove(object);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sort(final Comparator<? super Song> comparator) {
+        materialize();
+        super.sort(comparator);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        mSongs = null;
+        super.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setNotifyOnChange(final boolean notifyOnChange) {
+        mNotifyOnChange = notifyOnChange;
+        super.setNotifyOnChange(notifyOnChange);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void notifyDataSetChanged() {
+        super.notifyDataSetChanged();
+        // the ArrayAdapter turns notifying on again here as well
+        mNotifyOnChange = true;
+    }
+
+    /**
+     * Moves the songs held by column into the {@link ArrayAdapter} before it is edited
+     */
+    private void materialize() {
+        if (mSongs != null) {
+            final SongList songs = mSongs;
+            mSongs = null;
+            super.addAll(songs);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -205,42 +363,61 @@ public class SongAdapter extends ArrayAdapter<Song>
     }
 
     /**
-     * Method used to cache the data used to populate the list or grid. The idea
-     * is to cache everything before {@code #getView(int, View, ViewGroup)} is
-     * called.
+     * Method used to cache the data used to populate the list or grid. The rows
+     * are only built the first time {@code #getView(int, View, ViewGroup)} asks
+     * for them, so large lists don't format every row up front.
      */
     public void buildCache() {
         mData = new DataHolder[getCount()];
-        for (int i = 0; i < getCount(); i++) {
-            // Build the song
-            final Song song = getItem(i);
+    }
+
+    /**
+     * @param song the song to display
+     * @return the data used to populate the row of the song
+     */
+    protected DataHolder buildDataHolder(final Song song) {
+        final DataHolder holder = new DataHolder();
+        // Song Id
+        holder.mItemId = song.mSongId;
+        // Song names (line one)
+        holder.mLineOne = song.mSongName;
+        // Song duration (line one, right)
+        holder.mLineOneRight = MusicUtils.makeShortTimeString(getContext(), song.mDuration);
+
+        // Artist Name | Album Name (line two)
+        holder.mLineTwo = MusicUtils.makeCombinedString(getContext(), song.mArtistName,
+                song.mAlbumName);
+        return holder;
+    }
+
+    /**
+     * @param position the position of the row
+     * @return the data used to populate the row, from the cache built by {@link #buildCache()}
+     */
+    protected DataHolder getDataHolder(final int position) {
+        if (mData == null || position >= mData.length) {
+            return buildDataHolder(getItem(position));
+        }
+
+        if (mData[position] == null) {
+            final Song song = getItem(position);
 
             // skip special placeholders
             if (song.mSongId == -1) {
-                continue;
+                return null;
             }
 
-            // Build the data holder
-            mData[i] = new DataHolder();
-            // Song Id
-            mData[i].mItemId = song.mSongId;
-            // Song names (line one)
-            mData[i].mLineOne = song.mSongName;
-            // Song duration (line one, right)
-            mData[i].mLineOneRight = MusicUtils.makeShortTimeString(getContext(), song.mDuration);
-
-            // Artist Name | Album Name (line two)
-            mData[i].mLineTwo = MusicUtils.makeCombinedString(getContext(), song.mArtistName,
-                    song.mAlbumName);
+            mData[position] = buildDataHolder(song);
         }
+        return mData[position];
     }
 
     /**
-     * @param pause True to temporarily pause the disk cache, false otherwise.
+     * @param flinging True while the list is flinging, false otherwise.
      */
-    public void setPauseDiskCache(final boolean pause) {
+    public void setFlinging(final boolean flinging) {
         if (mImageFetcher != null) {
-            mImageFetcher.setPauseDiskCache(pause);
+            mImageFetcher.setFlinging(flinging);
         }
     }
 
@@ -274,6 +451,15 @@ public class SongAdapter extends ArrayAdapter<Song>
      */
     @Override
     public int getItemPosition(long id) {
+        if (mSongs != null) {
+            for (int i = 0; i < mSongs.size(); i++) {
+                if (mSongs.getSongId(i) == id) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
         for (int i = 0; i < getCount(); i++) {
             if (getItem(i).mSongId == id) {
                 return i;
@@ -316,6 +502,14 @@ public class SongAdapter extends ArrayAdapter<Song>
      * @return Gets the list of song ids from the adapter
      */
     public long[] getSongIds() {
+        if (mSongs != null) {
+            final long[] ret = new long[mSongs.size()];
+            for (int i = 0; i < ret.length; i++) {
+                ret[i] = mSongs.getSongId(i);
+            }
+            return ret;
+        }
+
         long[] ret = new long[getCount()];
         for (int i = 0; i < getCount(); i++) {
             ret[i] = getItem(i).mSongId;
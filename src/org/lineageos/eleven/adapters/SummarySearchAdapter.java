@@ -163,12 +163,11 @@ public final class SummarySearchAdapter extends ArrayAdapter<SearchResult>
     }
 
     /**
-     * @param pause True to temporarily pause the disk cache, false
-     *            otherwise.
+     * @param flinging True while the list is flinging, false otherwise.
      */
-    public void setPauseDiskCache(final boolean pause) {
+    public void setFlinging(final boolean flinging) {
         if (mImageFetcher != null) {
-            mImageFetcher.setPauseDiskCache(pause);
+            mImageFetcher.setFlinging(flinging);
         }
     }
 
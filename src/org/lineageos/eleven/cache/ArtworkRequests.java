@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2019 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.cache;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Tracks the artwork loads that are running, so the same image requested at once by the lists,
+ * the player, the notification and the widget is only loaded once: the first request runs the
+ * load and the others wait for its result.
+ *
+ * Also remembers the images that couldn't be downloaded, so they aren't downloaded again until
+ * {@link #FAILURE_TTL} has passed or the caches are cleared.
+ */
+public final class ArtworkRequests {
+    private static final String TAG = ArtworkRequests.class.getSimpleName();
+
+    private static ArtworkRequests sInstance = null;
+
+    /**
+     * How long in ms a failed download isn't tried again
+     */
+    public static final long FAILURE_TTL = 30 * 60 * 1000;
+
+    /* the state below is guarded by this */
+    private final HashMap<String, FutureTask<Bitmap>> mInFlight = new HashMap<>();
+
+    /*
+     * the time each failed download may be tried again. They all share the same TTL, so the
+     * insertion order is also the order they expire in. They are only dropped once expired, so
+     * a library with many albums without artwork doesn't look them up again before that.
+     */
+    private final LinkedHashMap<String, Long> mFailures = new LinkedHashMap<>();
+
+    private int mLoadCount;
+    private int mCoalescedCount;
+    private int mSkippedDownloadCount;
+
+    /**
+     * @return The shared instance of this class
+     */
+    public static final synchronized ArtworkRequests getInstance() {
+        if (sInstance == null) {
+            sInstance = new ArtworkRequests();
+        }
+        return sInstance;
+    }
+
+    private ArtworkRequests() {
+    }
+
+    /**
+     * Runs a load, or waits for the one already running for the same key
+     *
+     * @param key the key of the image, including its size
+     * @param loader loads the image
+     * @return the image, or null if it couldn't be loaded
+     */
+    public Bitmap load(final String key, final Callable<Bitmap> loader) {
+        FutureTask<Bitmap> task;
+        boolean owner = false;
+        synchronized (this) {
+            task = mInFlight.get(key);
+            if (task == null) {
+                task = new FutureTask<>(loader);
+                mInFlight.put(key, task);
+                mLoadCount++;
+                owner = true;
+            } else {
+                mCoalescedCount++;
+            }
+        }
+
+        if (owner) {
+            try {
+                task.run();
+            } finally {
+                synchronized (this) {
+                    mInFlight.remove(key);
+                }
+            }
+        }
+
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            // the waiting task was cancelled, the load goes on for the others
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            Log.e(TAG, "load(" + key + ")", e.getCause());
+            return null;
+        }
+    }
+
+    /**
+     * @param key the key of the image
+     * @return true if the image failed to download recently and shouldn't be downloaded again
+     */
+    public synchronized boolean isDownloadFailed(final String key) {
+        final Long retryTime = mFailures.get(key);
+        if (retryTime == null) {
+            return false;
+        }
+        if (SystemClock.elapsedRealtime() >= retryTime) {
+            mFailures.remove(key);
+            return false;
+        }
+        mSkippedDownloadCount++;
+        return true;
+    }
+
+    /**
+     * Remembers that an image couldn't be downloaded
+     *
+     * @param key the key of the image
+     */
+    public synchronized void setDownloadFailed(final String key) {
+        final long now = SystemClock.elapsedRealtime();
+        pruneFailures(now);
+
+        // re-insert so the entry moves to the end of the expiry order
+        mFailures.remove(key);
+        mFailures.put(key, now + FAILURE_TTL);
+    }
+
+    /**
+     * Drops the failed downloads that expired, which are all at the start of the map
+     */
+    private void pruneFailures(final long now) {
+        final Iterator<Long> retryTimes = mFailures.values().iterator();
+        while (retryTimes.hasNext() && now >= retryTimes.next()) {
+            retryTimes.remove();
+        }
+    }
+
+    /**
+     * Forgets the failed downloads, so every image may be downloaded again
+     */
+    public synchronized void clearFailures() {
+        mFailures.clear();
+    }
+
+    /**
+     * @return the number of loads run
+     */
+    public synchronized int getLoadCount() {
+        return mLoadCount;
+    }
+
+    /**
+     * @return the number of requests that waited for a running load instead of running their own
+     */
+    public synchronized int getCoalescedCount() {
+        return mCoalescedCount;
+    }
+
+    /**
+     * @return the number of downloads skipped because they failed recently
+     */
+    public synchronized int getSkippedDownloadCount() {
+        return mSkippedDownloadCount;
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2019 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.cache;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Runs the {@link BitmapWorkerTask}s on a small set of background threads sized to the number
+ * of cores. Tasks are picked by priority first and newest first within a priority, so while
+ * flinging through a list the rows that just became visible are loaded before the ones that
+ * already scrolled away, and the now playing artwork is loaded before anything else.
+ *
+ * Cancelled tasks are dropped from the queue right away instead of waiting for a worker. Only
+ * one task per cache key runs at a time: a task whose key is already being loaded waits for
+ * that load to finish and then runs, finding the image in the memory cache.
+ *
+ * While a list is flinging, only the now playing artwork is loaded. The other tasks stay queued
+ * rather than holding a worker: the ones for rows that are flung past get cancelled when their
+ * views are recycled, so once the fling ends only the rows left on screen are loaded.
+ */
+public final class ArtworkScheduler {
+    private static final String TAG = ArtworkScheduler.class.getSimpleName();
+
+    private static ArtworkScheduler sInstance = null;
+
+    /**
+     * Loads for images that are not shown yet
+     */
+    public static final int PRIORITY_PREFETCH = 0;
+
+    /**
+     * Loads for images that are on screen
+     */
+    public static final int PRIORITY_VISIBLE = 1;
+
+    /**
+     * Loads for the artwork of the current track
+     */
+    public static final int PRIORITY_NOW_PLAYING = 2;
+
+    /* the longest a fling may hold back loads, in case its end is never reported */
+    private static final long MAX_FLING_DURATION = 3000;
+
+    /* the number of worker threads */
+    private static final int WORKER_COUNT = Math.max(1,
+            Math.min(Runtime.getRuntime().availableProcessors() - 1, 4));
+
+    private static final Comparator<BitmapWorkerTask<?, ?>> ORDER =
+            new Comparator<BitmapWorkerTask<?, ?>>() {
+        @Override
+        public int compare(BitmapWorkerTask<?, ?> lhs, BitmapWorkerTask<?, ?> rhs) {
+            if (lhs.mPriority != rhs.mPriority) {
+                return lhs.mPriority > rhs.mPriority ? -1 : 1;
+            }
+            return Long.compare(rhs.mSequence, lhs.mSequence);
+        }
+    };
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /* the state below is guarded by this */
+    private final PriorityQueue<BitmapWorkerTask<?, ?>> mQueue = new PriorityQueue<>(64, ORDER);
+
+    /* the tasks waiting for a running task with the same key, by key */
+    private final HashMap<String, List<BitmapWorkerTask<?, ?>>> mRunningKeys = new HashMap<>();
+
+    private long mSequence;
+
+    private boolean mFlinging;
+    private long mFlingEndTime;
+
+    private int mCompletedCount;
+    private int mDeferredCount;
+    private long mTotalWaitTime;
+    private long mTotalRunTime;
+
+    /**
+     * @return The shared instance of this class
+     */
+    public static final synchronized ArtworkScheduler getInstance() {
+        if (sInstance == null) {
+            sInstance = new ArtworkScheduler();
+        }
+        return sInstance;
+    }
+
+    private ArtworkScheduler() {
+        for (int i = 0; i < WORKER_COUNT; i++) {
+            final Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    android.os.Process.setThreadPriority(
+                            android.os.Process.THREAD_PRIORITY_BACKGROUND);
+                    runTasks();
+                }
+            }, "ArtworkScheduler #" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    /**
+     * Queues a task
+     *
+     * @param task the task to run
+     * @param priority one of the PRIORITY_ constants
+     */
+    synchronized void submit(final BitmapWorkerTask<?, ?> task, final int priority) {
+        task.mPriority = priority;
+        task.mSequence = mSequence++;
+        task.mSubmitTime = SystemClock.uptimeMillis();
+        mQueue.add(task);
+        if (getDeferralLocked(task) > 0) {
+            mDeferredCount++;
+        }
+        notify();
+    }
+
+    /**
+     * Holds back the loads that aren't for the now playing artwork while a list is flinging.
+     * Memory cache hits are still shown right away since they don't go through the scheduler.
+     *
+     * @param flinging True while a list is flinging, false otherwise
+     */
+    public synchronized void setFlinging(final boolean flinging) {
+        mFlinging = flinging;
+        if (flinging) {
+            mFlingEndTime = SystemClock.uptimeMillis() + MAX_FLING_DURATION;
+        } else {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Removes a task from the queue if it didn't start yet
+     */
+    synchronized void remove(final BitmapWorkerTask<?, ?> task) {
+        if (!mQueue.remove(task)) {
+            final List<BitmapWorkerTask<?, ?>> waiting = mRunningKeys.get(task.mKey);
+            if (waiting != null) {
+                waiting.remove(task);
+            }
+        }
+    }
+
+    /**
+     * Posts the result of a task to the main thread
+     */
+    void postResult(final Runnable result) {
+        mMainHandler.post(result);
+    }
+
+    /**
+     * @return the number of tasks waiting for a worker
+     */
+    public synchronized int getQueueDepth() {
+        int depth = mQueue.size();
+        for (List<BitmapWorkerTask<?, ?>> waiting : mRunningKeys.values()) {
+            depth += waiting.size();
+        }
+        return depth;
+    }
+
+    /**
+     * @return the number of tasks that were held back by a fling
+     */
+    public synchronized int getDeferredCount() {
+        return mDeferredCount;
+    }
+
+    /**
+     * @return the average time in ms tasks spent in the queue before running
+     */
+    public synchronized long getAverageWaitTime() {
+        return mCompletedCount == 0 ? 0 : mTotalWaitTime / mCompletedCount;
+    }
+
+    /**
+     * @return the average time in ms tasks took to load and decode their image
+     */
+    public synchronized long getAverageRunTime() {
+        return mCompletedCount == 0 ? 0 : mTotalRunTime / mCompletedCount;
+    }
+
+    private void runTasks() {
+        while (true) {
+            final BitmapWorkerTask<?, ?> task;
+            synchronized (this) {
+                task = takeLocked();
+            }
+
+            final long start = SystemClock.uptimeMillis();
+            try {
+                task.runInBackground();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to load " + task.mKey, e);
+            }
+            final long end = SystemClock.uptimeMillis();
+
+            synchronized (this) {
+                mCompletedCount++;
+                mTotalWaitTime += start - task.mSubmitTime;
+                mTotalRunTime += end - start;
+                if (task.mKey != null) {
+                    // the tasks that waited on this key can now use the cached image
+                    final List<BitmapWorkerTask<?, ?>> waiting = mRunningKeys.remove(task.mKey);
+                    if (waiting != null && !waiting.isEmpty()) {
+                        mQueue.addAll(waiting);
+                        notifyAll();
+                    }
+                }
+            }
+        }
+    }
+
+    private BitmapWorkerTask<?, ?> takeLocked() {
+        while (true) {
+            // the queue is ordered by priority, so if the head is held back all tasks are
+            final BitmapWorkerTask<?, ?> head = mQueue.peek();
+            final long deferral = head != null ? getDeferralLocked(head) : 0;
+            if (head == null || deferral > 0) {
+                try {
+                    wait(deferral);
+                } catch (InterruptedException e) {
+                    // keep waiting, the workers live as long as the process
+                }
+                continue;
+            }
+
+            final BitmapWorkerTask<?, ?> task = mQueue.poll();
+            if (task.isCancelled()) {
+                // cancelled while waiting on its key
+            } else if (task.mKey == null) {
+                return task;
+            } else {
+                final List<BitmapWorkerTask<?, ?>> waiting = mRunningKeys.get(task.mKey);
+                if (waiting == null) {
+                    mRunningKeys.put(task.mKey, new ArrayList<BitmapWorkerTask<?, ?>>());
+                    return task;
+                }
+                waiting.add(task);
+            }
+        }
+    }
+
+    /**
+     * @return how long in ms the task is held back by a fling, or 0 if it may run now
+     */
+    private long getDeferralLocked(final BitmapWorkerTask<?, ?> task) {
+        if (!mFlinging || task.mPriority >= PRIORITY_NOW_PLAYING) {
+            return 0;
+        }
+        final long remaining = mFlingEndTime - SystemClock.uptimeMillis();
+        if (remaining <= 0) {
+            mFlinging = false;
+            return 0;
+        }
+        return remaining;
+    }
+}
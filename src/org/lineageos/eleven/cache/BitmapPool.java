@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2019 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.cache;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps bitmaps that were only needed for a moment, such as a full size download that was
+ * scaled down or the intermediate copy of a blur, so their memory can be reused by the next
+ * decode through {@link BitmapFactory.Options#inBitmap} or the next scale instead of being left
+ * to the garbage collector. Bitmaps are bucketed by their allocation size and a request takes the
+ * smallest bitmap that is large enough, as long as it is no more than twice as large as needed.
+ *
+ * Only bitmaps with a single owner that is done with them may be put here, since the next
+ * decode overwrites them. Bitmaps that were handed to the memory cache or to a view never are,
+ * as they may still be drawn.
+ */
+public final class BitmapPool {
+    private static BitmapPool sInstance = null;
+
+    /* a pooled bitmap may be at most this many times larger than the decode needs */
+    private static final int MAX_WASTE_FACTOR = 2;
+
+    /**
+     * Runs a decode with the given options
+     */
+    public interface Decoder {
+        /**
+         * @param options the options to decode with
+         * @return the decoded bitmap, or null
+         */
+        Bitmap decode(BitmapFactory.Options options) throws IOException;
+    }
+
+    /* the state below is guarded by this */
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> mBuckets = new TreeMap<>();
+    /* the order the bitmaps were pooled in, so the oldest are dropped first */
+    private final ArrayDeque<Bitmap> mOrder = new ArrayDeque<>();
+
+    private int mMaxSize;
+    private int mSize;
+
+    private int mReuseCount;
+    private int mMissCount;
+    private long mBytesSaved;
+
+    /**
+     * @return The shared instance of this class
+     */
+    public static final synchronized BitmapPool getInstance() {
+        if (sInstance == null) {
+            sInstance = new BitmapPool();
+        }
+        return sInstance;
+    }
+
+    private BitmapPool() {
+    }
+
+    /**
+     * @param maxSize the number of bytes the pool may hold
+     */
+    public synchronized void setMaxSize(final int maxSize) {
+        mMaxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    /**
+     * Offers a bitmap nothing else references. Bitmaps that can't be reused are ignored.
+     */
+    public synchronized void put(final Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+        final int size = bitmap.getAllocationByteCount();
+        if (size > mMaxSize / 2) {
+            return;
+        }
+
+        ArrayDeque<Bitmap> bucket = mBuckets.get(size);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            mBuckets.put(size, bucket);
+        }
+        bucket.addLast(bitmap);
+        mOrder.addLast(bitmap);
+        mSize += size;
+        trimToSize(mMaxSize);
+    }
+
+    /**
+     * Drops every pooled bitmap
+     */
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    /**
+     * Decodes with a pooled bitmap if one fits. The options must hold the dimensions from a
+     * bounds only decode as well as the sample size and config to decode with.
+     *
+     * @param options the options to decode with
+     * @param decoder runs the decode, it may be called twice if the pooled bitmap is rejected
+     * @return the decoded bitmap, or null
+     */
+    public Bitmap decode(final BitmapFactory.Options options, final Decoder decoder)
+            throws IOException {
+        options.inMutable = true;
+        final Bitmap reused = get(getDecodedSize(options));
+        options.inBitmap = reused;
+        if (reused == null) {
+            return decoder.decode(options);
+        }
+
+        try {
+            final Bitmap bitmap = decoder.decode(options);
+            if (bitmap != null) {
+                synchronized (this) {
+                    mBytesSaved += reused.getAllocationByteCount();
+                }
+            }
+            return bitmap;
+        } catch (IllegalArgumentException e) {
+            // the decoder couldn't reuse the bitmap, decode into a new one
+            options.inBitmap = null;
+            return decoder.decode(options);
+        }
+    }
+
+    /**
+     * Returns a mutable bitmap to draw into, reusing a pooled bitmap if one fits
+     *
+     * @param width the width of the bitmap
+     * @param height the height of the bitmap
+     * @param config the config of the bitmap
+     * @return the bitmap, its content is undefined
+     */
+    public Bitmap get(final int width, final int height, final Bitmap.Config config) {
+        final Bitmap reused = get(width * height * getBytesPerPixel(config));
+        if (reused == null) {
+            return Bitmap.createBitmap(width, height, config);
+        }
+
+        synchronized (this) {
+            mBytesSaved += reused.getAllocationByteCount();
+        }
+        reused.reconfigure(width, height, config);
+        return reused;
+    }
+
+    /**
+     * @return the share of the requests that reused a pooled bitmap, from 0 to 1
+     */
+    public synchronized float getReuseRate() {
+        final int total = mReuseCount + mMissCount;
+        return total == 0 ? 0 : mReuseCount / (float) total;
+    }
+
+    /**
+     * @return the number of bytes that didn't have to be allocated thanks to the pool
+     */
+    public synchronized long getBytesSaved() {
+        return mBytesSaved;
+    }
+
+    /**
+     * @return the number of bytes held by the pool
+     */
+    public synchronized int getSize() {
+        return mSize;
+    }
+
+    private synchronized Bitmap get(final int size) {
+        final Map.Entry<Integer, ArrayDeque<Bitmap>> entry = mBuckets.ceilingEntry(size);
+        if (entry == null || entry.getKey() > size * MAX_WASTE_FACTOR) {
+            mMissCount++;
+            return null;
+        }
+
+        final ArrayDeque<Bitmap> bucket = entry.getValue();
+        final Bitmap bitmap = bucket.pollLast();
+        if (bucket.isEmpty()) {
+            mBuckets.remove(entry.getKey());
+        }
+        mOrder.remove(bitmap);
+        mSize -= entry.getKey();
+        mReuseCount++;
+        return bitmap;
+    }
+
+    private void trimToSize(final int maxSize) {
+        while (mSize > maxSize && !mOrder.isEmpty()) {
+            final Bitmap bitmap = mOrder.pollFirst();
+            final int size = bitmap.getAllocationByteCount();
+            final ArrayDeque<Bitmap> bucket = mBuckets.get(size);
+            bucket.remove(bitmap);
+            if (bucket.isEmpty()) {
+                mBuckets.remove(size);
+            }
+            mSize -= size;
+        }
+    }
+
+    /**
+     * @return the number of bytes the decode described by the options will need
+     */
+    private static int getDecodedSize(final BitmapFactory.Options options) {
+        // the decoders round the sample size down to a power of two
+        final int sampleSize = Integer.highestOneBit(Math.max(1, options.inSampleSize));
+        final int width = (options.outWidth + sampleSize - 1) / sampleSize;
+        final int height = (options.outHeight + sampleSize - 1) / sampleSize;
+        return width * height * getBytesPerPixel(options.inPreferredConfig);
+    }
+
+    private static int getBytesPerPixel(final Bitmap.Config config) {
+        return config == Bitmap.Config.RGB_565 ? 2 : 4;
+    }
+}
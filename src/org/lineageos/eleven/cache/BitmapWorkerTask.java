@@ -20,18 +20,19 @@ import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.TransitionDrawable;
-import android.os.AsyncTask;
 import android.widget.ImageView;
 
+import org.lineageos.eleven.cache.ImageCache.ArtworkSize;
 import org.lineageos.eleven.cache.ImageWorker.ImageType;
 
 import java.lang.ref.WeakReference;
 
 /**
- * The actual {@link android.os.AsyncTask} that will process the image.
+ * The task that will process the image. It is run by the {@link ArtworkScheduler}: the image is
+ * loaded in {@link #doInBackground} and handed to {@link #onPostExecute} on the main thread,
+ * unless the task was cancelled in between.
  */
-public abstract class BitmapWorkerTask<Params, Progress, Result>
-        extends AsyncTask<Params, Progress, Result> {
+public abstract class BitmapWorkerTask<Params, Result> {
     /**
      * The {@link android.widget.ImageView} used to set the result
      */
@@ -55,11 +56,25 @@ public abstract class BitmapWorkerTask<Params, Progress, Result>
 
     protected boolean mScaleImgToView;
 
+    /**
+     * The size the image is decoded at
+     */
+    protected ArtworkSize mArtworkSize = ArtworkSize.FULL;
+
     /**
      * The key used to store cached entries
      */
     public String mKey;
 
+    /* scheduling state, owned by the ArtworkScheduler */
+    int mPriority;
+    long mSequence;
+    long mSubmitTime;
+
+    private Params[] mParams;
+
+    private volatile boolean mCancelled;
+
     /**
      * Constructor of <code>BitmapWorkerTask</code>
      * @param key used for caching the image
@@ -97,6 +112,63 @@ public abstract class BitmapWorkerTask<Params, Progress, Result>
         mScaleImgToView = scaleImgToView;
     }
 
+    /**
+     * Queues the task on the {@link ArtworkScheduler}
+     *
+     * @param priority one of the ArtworkScheduler PRIORITY_ constants
+     * @param params the parameters passed to {@link #doInBackground}
+     */
+    @SafeVarargs
+    public final void execute(final int priority, final Params... params) {
+        mParams = params;
+        ArtworkScheduler.getInstance().submit(this, priority);
+    }
+
+    /**
+     * Cancels the task. If it didn't start yet it is dropped from the queue, otherwise its
+     * result is discarded.
+     */
+    public final void cancel() {
+        mCancelled = true;
+        ArtworkScheduler.getInstance().remove(this);
+    }
+
+    /**
+     * @return true if the task was cancelled
+     */
+    public final boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * Loads the image, called on a worker thread of the {@link ArtworkScheduler}
+     */
+    protected abstract Result doInBackground(Params... params);
+
+    /**
+     * Shows the result, called on the main thread if the task wasn't cancelled
+     */
+    protected abstract void onPostExecute(Result result);
+
+    /**
+     * Runs the task on the calling worker thread and posts the result to the main thread
+     */
+    final void runInBackground() {
+        if (mCancelled) {
+            return;
+        }
+
+        final Result result = doInBackground(mParams);
+        ArtworkScheduler.getInstance().postResult(new Runnable() {
+            @Override
+            public void run() {
+                if (!mCancelled) {
+                    onPostExecute(result);
+                }
+            }
+        });
+    }
+
     /**
      * @return The {@link ImageView} associated with this task as long as
      * the ImageView's task still points to this task as well.
@@ -121,7 +193,7 @@ public abstract class BitmapWorkerTask<Params, Progress, Result>
      */
     protected Bitmap getBitmapInBackground(final String... params) {
         return ImageWorker.getBitmapInBackground(mContext, mImageCache, mKey,
-                params[1], params[0], Long.valueOf(params[2]), mImageType);
+                params[1], params[0], Long.valueOf(params[2]), mImageType, mArtworkSize);
     }
 
     /**
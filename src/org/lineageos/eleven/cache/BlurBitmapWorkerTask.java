@@ -19,13 +19,9 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.TransitionDrawable;
-import androidx.renderscript.Allocation;
-import androidx.renderscript.Element;
-import androidx.renderscript.RenderScript;
-import androidx.renderscript.ScriptIntrinsicBlur;
-import android.util.Log;
 import android.widget.ImageView;
 
+import org.lineageos.eleven.cache.ImageCache.ArtworkSize;
 import org.lineageos.eleven.cache.ImageWorker.ImageType;
 import org.lineageos.eleven.widgets.BlurScrimImage;
 
@@ -33,19 +29,9 @@ import java.lang.ref.WeakReference;
 
 /**
  * This will download the image (if needed) and create a blur and set the scrim as well on the
- * BlurScrimImage
+ * BlurScrimImage. The blurred image is cached, so it is only made once per artwork.
  */
-public class BlurBitmapWorkerTask extends BitmapWorkerTask<String, Void, BlurBitmapWorkerTask.ResultContainer> {
-
-    private static final String TAG = BlurBitmapWorkerTask.class.getSimpleName();
-
-    // if the image is too small, the blur will look bad post scale up so we use the min size
-    // to scale up before bluring
-    private static final int MIN_BITMAP_SIZE = 500;
-    // number of times to run the blur
-    private static final int NUM_BLUR_RUNS = 8;
-    // 25f is the max blur radius possible
-    private static final float BLUR_RADIUS = 25f;
+public class BlurBitmapWorkerTask extends BitmapWorkerTask<String, BlurBitmapWorkerTask.ResultContainer> {
 
     // container for the result
     public static class ResultContainer {
@@ -58,11 +44,6 @@ public class BlurBitmapWorkerTask extends BitmapWorkerTask<String, Void, BlurBit
      */
     private final WeakReference<BlurScrimImage> mBlurScrimImage;
 
-    /**
-     * RenderScript used to blur the image
-     */
-    protected final RenderScript mRenderScript;
-
     /**
      * Constructor of <code>BlurBitmapWorkerTask</code>
      * @param key used for caching the image
@@ -72,10 +53,10 @@ public class BlurBitmapWorkerTask extends BitmapWorkerTask<String, Void, BlurBit
      */
     public BlurBitmapWorkerTask(final String key, final BlurScrimImage blurScrimImage,
                                 final ImageType imageType, final Drawable fromDrawable,
-                                final Context context, final RenderScript renderScript) {
+                                final Context context) {
         super(key, blurScrimImage.getImageView(), imageType, fromDrawable, context);
         mBlurScrimImage = new WeakReference<>(blurScrimImage);
-        mRenderScript = renderScript;
+        mArtworkSize = ArtworkSize.BLUR;
 
         // use the existing image as the drawable and if it doesn't exist fallback to transparent
         mFromDrawable = blurScrimImage.getImageView().getDrawable();
@@ -93,50 +74,17 @@ public class BlurBitmapWorkerTask extends BitmapWorkerTask<String, Void, BlurBit
             return null;
         }
 
-        Bitmap bitmap = getBitmapInBackground(params);
-
-        ResultContainer result = new ResultContainer();
-
-        Bitmap output = null;
-
-        if (bitmap != null) {
-            // now create the blur bitmap
-            Bitmap input = bitmap;
-
-            // if the image is too small, scale it up before running through the blur
-            if (input.getWidth() < MIN_BITMAP_SIZE || input.getHeight() < MIN_BITMAP_SIZE) {
-                float multiplier = Math.max(MIN_BITMAP_SIZE / (float)input.getWidth(),
-                        MIN_BITMAP_SIZE / (float)input.getHeight());
-                input = input.createScaledBitmap(bitmap, (int)(input.getWidth() * multiplier),
-                        (int)(input.getHeight() * multiplier), true);
-                // since we created a new bitmap, we can re-use the bitmap for our output
-                output = input;
-            } else {
-                // if we aren't creating a new bitmap, create a new output bitmap
-                output = Bitmap.createBitmap(input.getWidth(), input.getHeight(), input.getConfig());
+        Bitmap output = mImageCache.getCachedBitmap(mKey, ArtworkSize.BLURRED);
+        if (output == null) {
+            final Bitmap bitmap = getBitmapInBackground(params);
+            if (bitmap != null) {
+                output = BlurEngine.getInstance(mContext).blur(bitmap);
+                mImageCache.addBitmapToCache(mKey, ArtworkSize.BLURRED, output);
             }
+        }
 
-            // run the blur multiple times
-            for (int i = 0; i < NUM_BLUR_RUNS; i++) {
-                try {
-                    final Allocation inputAlloc = Allocation.createFromBitmap(mRenderScript, input);
-                    final Allocation outputAlloc = Allocation.createTyped(mRenderScript,
-                            inputAlloc.getType());
-                    final ScriptIntrinsicBlur script = ScriptIntrinsicBlur.create(mRenderScript,
-                            Element.U8_4(mRenderScript));
-
-                    script.setRadius(BLUR_RADIUS);
-                    script.setInput(inputAlloc);
-                    script.forEach(outputAlloc);
-                    outputAlloc.copyTo(output);
-
-                    // if we run more than 1 blur, the new input should be the old output
-                    input = output;
-                } catch (RuntimeException e) {
-                    Log.w(TAG, "Cannot blur image. " + e.getMessage());
-                    break;
-                }
-            }
+        if (output != null) {
+            ResultContainer result = new ResultContainer();
 
             // Set the scrim color to be 50% gray
             result.mPaletteColor = 0x7f000000;
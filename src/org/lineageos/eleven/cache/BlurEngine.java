@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2019 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.cache;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.renderscript.Allocation;
+import androidx.renderscript.Element;
+import androidx.renderscript.RenderScript;
+import androidx.renderscript.ScriptIntrinsicBlur;
+
+import org.lineageos.eleven.utils.StackBlur;
+
+/**
+ * Creates the blurred backgrounds of the player. The artwork is scaled down to a small working
+ * size first and blurred there, which is far cheaper than blurring the full image and looks the
+ * same once scaled back up, since a blur removes the detail the small size loses anyway.
+ *
+ * The blur runs through RenderScript, reusing its allocations and script while the working size
+ * doesn't change, and falls back to a {@link StackBlur} on the CPU if RenderScript is missing or
+ * fails.
+ */
+public final class BlurEngine {
+    private static final String TAG = BlurEngine.class.getSimpleName();
+
+    private static BlurEngine sInstance = null;
+
+    /**
+     * The longest side of the blurred image
+     */
+    public static final int WORKING_SIZE = 128;
+
+    /* the radius and passes at the working size, about the spread of a 500px image blurred
+     * eight times at the maximum radius */
+    private static final int BLUR_RADIUS = 12;
+    private static final int BLUR_PASSES = 2;
+
+    private final RenderScript mRenderScript;
+
+    /* the state below is guarded by this */
+    private ScriptIntrinsicBlur mScript;
+    private Allocation mInput;
+    private Allocation mOutput;
+
+    private final StackBlur mStackBlur = new StackBlur();
+    private int[] mPixels = new int[0];
+
+    private int mBlurCount;
+    private long mTotalBlurTime;
+
+    /**
+     * @param context The {@link Context} to use
+     * @return The shared instance of this class
+     */
+    public static final synchronized BlurEngine getInstance(final Context context) {
+        if (sInstance == null) {
+            RenderScript renderScript = null;
+            try {
+                renderScript = RenderScript.create(context.getApplicationContext());
+            } catch (RuntimeException e) {
+                Log.w(TAG, "RenderScript is unavailable, blurring on the CPU", e);
+            }
+            sInstance = new BlurEngine(renderScript);
+        }
+        return sInstance;
+    }
+
+    private BlurEngine(final RenderScript renderScript) {
+        mRenderScript = renderScript;
+    }
+
+    /**
+     * Blurs an image
+     *
+     * @param source the image to blur, it isn't modified
+     * @return a new blurred image no larger than {@link #WORKING_SIZE}, or null
+     */
+    public synchronized Bitmap blur(final Bitmap source) {
+        if (source == null) {
+            return null;
+        }
+
+        final long start = SystemClock.uptimeMillis();
+        final Bitmap bitmap = scaleToWorkingSize(source);
+        boolean blurred = false;
+        if (mRenderScript != null) {
+            try {
+                blurWithRenderScript(bitmap);
+                blurred = true;
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Cannot blur image with RenderScript. " + e.getMessage());
+                releaseAllocations();
+            }
+        }
+        if (!blurred) {
+            blurOnCpu(bitmap);
+        }
+
+        mBlurCount++;
+        mTotalBlurTime += SystemClock.uptimeMillis() - start;
+        return bitmap;
+    }
+
+    /**
+     * @return the number of images blurred
+     */
+    public synchronized int getBlurCount() {
+        return mBlurCount;
+    }
+
+    /**
+     * @return the average time in ms a blur took, including the scaling
+     */
+    public synchronized long getAverageBlurTime() {
+        return mBlurCount == 0 ? 0 : mTotalBlurTime / mBlurCount;
+    }
+
+    /**
+     * @return a mutable ARGB_8888 copy of the image scaled to the working size, drawn straight
+     * into a pooled bitmap when one fits rather than through an intermediate copy
+     */
+    private static Bitmap scaleToWorkingSize(final Bitmap source) {
+        final int width = source.getWidth();
+        final int height = source.getHeight();
+        final float scale = Math.min(1f, WORKING_SIZE / (float) Math.max(width, height));
+        final int scaledWidth = Math.max(1, Math.round(width * scale));
+        final int scaledHeight = Math.max(1, Math.round(height * scale));
+        final Bitmap bitmap = BitmapPool.getInstance().get(scaledWidth, scaledHeight,
+                Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.TRANSPARENT);
+        new Canvas(bitmap).drawBitmap(source, null, new Rect(0, 0, scaledWidth, scaledHeight),
+                new Paint(Paint.FILTER_BITMAP_FLAG));
+        return bitmap;
+    }
+
+    private void blurWithRenderScript(final Bitmap bitmap) {
+        if (mInput == null || mInput.getType().getX() != bitmap.getWidth()
+                || mInput.getType().getY() != bitmap.getHeight()) {
+            releaseAllocations();
+            mInput = Allocation.createFromBitmap(mRenderScript, bitmap);
+            mOutput = Allocation.createTyped(mRenderScript, mInput.getType());
+        } else {
+            mInput.copyFrom(bitmap);
+        }
+        if (mScript == null) {
+            mScript = ScriptIntrinsicBlur.create(mRenderScript, Element.U8_4(mRenderScript));
+            mScript.setRadius(BLUR_RADIUS);
+        }
+
+        // each pass blurs the output of the previous one
+        Allocation in = mInput;
+        Allocation out = mOutput;
+        for (int i = 0; i < BLUR_PASSES; i++) {
+            mScript.setInput(in);
+            mScript.forEach(out);
+            final Allocation blurred = out;
+            out = in;
+            in = blurred;
+        }
+        in.copyTo(bitmap);
+    }
+
+    private void blurOnCpu(final Bitmap bitmap) {
+        final int width = bitmap.getWidth();
+        final int height = bitmap.getHeight();
+        if (mPixels.length < width * height) {
+            mPixels = new int[width * height];
+        }
+        bitmap.getPixels(mPixels, 0, width, 0, 0, width, height);
+        for (int i = 0; i < BLUR_PASSES; i++) {
+            mStackBlur.blur(mPixels, width, height, BLUR_RADIUS);
+        }
+        bitmap.setPixels(mPixels, 0, width, 0, 0, width, height);
+    }
+
+    private void releaseAllocations() {
+        if (mInput != null) {
+            mInput.destroy();
+            mInput = null;
+        }
+        if (mOutput != null) {
+            mOutput.destroy();
+            mOutput = null;
+        }
+    }
+}
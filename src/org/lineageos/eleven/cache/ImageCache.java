@@ -24,15 +24,26 @@ import android.content.res.Configuration;
 import android.graphics.Bitmap;
 import android.graphics.Bitmap.CompressFormat;
 import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Environment;
-import android.os.Looper;
 import android.os.ParcelFileDescriptor;
 import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.widget.GridView;
 
+import org.lineageos.eleven.R;
 import org.lineageos.eleven.cache.disklrucache.DiskLruCache;
+import org.lineageos.eleven.provider.ArtworkColorStore;
+import org.lineageos.eleven.utils.BitmapWithColors;
+import org.lineageos.eleven.utils.BitmapWithColors.BitmapColors;
 import org.lineageos.eleven.utils.ElevenUtils;
 import org.lineageos.eleven.utils.IoUtils;
 
@@ -44,7 +55,6 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.HashSet;
 
 /**
  * This class holds the memory and disk bitmap caches.
@@ -63,24 +73,29 @@ public final class ImageCache {
     private static final float MEM_CACHE_DIVIDER = 0.25f;
 
     /**
-     * Default disk cache size 10MB
+     * Share of the memory cache budget given to the bitmap pool
      */
-    private static final int DISK_CACHE_SIZE = 1024 * 1024 * 10;
+    private static final float POOL_DIVIDER = 0.125f;
 
     /**
-     * Compression settings when writing images to disk cache
+     * Smallest disk cache worth opening, 10MB
      */
-    private static final CompressFormat COMPRESS_FORMAT = CompressFormat.JPEG;
+    private static final long MIN_DISK_CACHE_SIZE = 1024 * 1024 * 10;
 
     /**
-     * Disk cache index to read from
+     * The disk cache takes at most this share of the free space
      */
-    private static final int DISK_CACHE_INDEX = 0;
+    private static final int DISK_CACHE_SPACE_DIVIDER = 10;
 
     /**
-     * Image compression quality
+     * Compression settings when writing images to disk cache, the quality depends on the size
      */
-    private static final int COMPRESS_QUALITY = 98;
+    private static final CompressFormat COMPRESS_FORMAT = CompressFormat.WEBP;
+
+    /**
+     * Disk cache index to read from
+     */
+    private static final int DISK_CACHE_INDEX = 0;
 
     /**
      * LRU cache
@@ -93,20 +108,111 @@ public final class ImageCache {
     private DiskLruCache mDiskCache;
 
     /**
-     * listeners to the cache state
+     * The palette colors of the artwork, by the key of the full size image
      */
-    private HashSet<ICacheListener> mListeners = new HashSet<>();
+    private ArtworkColorStore mColorStore;
 
     private static ImageCache sInstance;
 
+    static {
+        mArtworkUri = Uri.parse("content://media/external/audio/albumart");
+    }
+
     /**
-     * Used to temporarily pause the disk cache while scrolling
+     * The sizes artwork is decoded at. Images are subsampled while decoding so they are no more
+     * than twice as large as the size they are shown at. The largest size is cached under the
+     * plain key, the other ones under a key of their own, in memory and on disk, so a thumbnail
+     * never has to be decoded from the full image twice.
      */
-    public boolean mPauseDiskAccess = false;
-    private final Object mPauseLock = new Object();
+    public enum ArtworkSize {
+        /* the rows of the lists */
+        LIST(256, true, 75),
+        /* the tiles of the grids */
+        GRID(512, true, 80),
+        /* the source of the blurred background, it is scaled down before the blur anyway */
+        BLUR(BlurEngine.WORKING_SIZE * 2, false, 70),
+        /* the blurred background itself, made by the BlurEngine and never from the full image */
+        BLURRED(BlurEngine.WORKING_SIZE, false, 70),
+        /* the player and the lock screen */
+        FULL(1024, false, 85);
+
+        /* the smallest the width or height of the image may get */
+        public final int mMinSize;
+
+        /* whether opaque images may be decoded as RGB_565 */
+        public final boolean mAllowRgb565;
+
+        /* the quality the image is compressed with in the disk cache */
+        public final int mQuality;
+
+        ArtworkSize(final int minSize, final boolean allowRgb565, final int quality) {
+            mMinSize = minSize;
+            mAllowRgb565 = allowRgb565;
+            mQuality = quality;
+        }
 
-    static {
-        mArtworkUri = Uri.parse("content://media/external/audio/albumart");
+        /**
+         * @param data the key of the full size image
+         * @return the key of this size variant
+         */
+        public String getKey(final String data) {
+            return this == FULL || data == null ? data : data + "_" + name();
+        }
+
+        /**
+         * @param view the view the image is shown in
+         * @return the smallest size whose decodes, which come out at up to twice its minimum
+         * size, cover the view. {@link #FULL} if the size of the view can't be told
+         */
+        public static ArtworkSize forView(final View view) {
+            final int size = getDisplaySize(view);
+            if (size <= 0) {
+                return FULL;
+            } else if (size <= LIST.mMinSize * 2) {
+                return LIST;
+            } else if (size <= GRID.mMinSize * 2) {
+                return GRID;
+            }
+            return FULL;
+        }
+
+        /**
+         * @return the larger side of the view, or while it isn't measured yet an estimate from
+         * its layout params, its grid column or its parents, 0 if unknown
+         */
+        private static int getDisplaySize(final View view) {
+            if (view == null) {
+                return 0;
+            }
+            final int size = Math.max(view.getWidth(), view.getHeight());
+            if (size > 0) {
+                return size;
+            }
+            final ViewGroup.LayoutParams params = view.getLayoutParams();
+            if (params != null && Math.max(params.width, params.height) > 0) {
+                return Math.max(params.width, params.height);
+            }
+
+            // the grid tiles match their parent, so they are at most as wide as a grid column
+            ViewParent parent = view.getParent();
+            while (parent instanceof View) {
+                if (parent instanceof GridView) {
+                    final GridView grid = (GridView) parent;
+                    if (grid.getColumnWidth() > 0) {
+                        return grid.getColumnWidth();
+                    }
+                    final int width = grid.getWidth() > 0 ? grid.getWidth()
+                            : view.getResources().getDisplayMetrics().widthPixels;
+                    return width / Math.max(1, grid.getNumColumns());
+                }
+                final View parentView = (View) parent;
+                if (parentView.getWidth() > 0) {
+                    return parentView.getWidth();
+                }
+                parent = parentView.getParent();
+            }
+            return 0;
+        }
     }
 
     /**
@@ -149,6 +255,7 @@ public final class ImageCache {
         }, (Void[])null);
         // Set up the memory cache
         initLruCache(context);
+        mColorStore = ArtworkColorStore.getInstance(context);
     }
 
     /**
@@ -167,9 +274,12 @@ public final class ImageCache {
                 if (!diskCacheDir.exists()) {
                     diskCacheDir.mkdirs();
                 }
-                if (getUsableSpace(diskCacheDir) > DISK_CACHE_SIZE) {
+                final long diskCacheSize = Math.min(context.getResources().getInteger(
+                        R.integer.config_artworkDiskCacheSize) * 1024L * 1024L,
+                        getUsableSpace(diskCacheDir) / DISK_CACHE_SPACE_DIVIDER);
+                if (diskCacheSize >= MIN_DISK_CACHE_SIZE) {
                     try {
-                        mDiskCache = DiskLruCache.open(diskCacheDir, 1, 1, DISK_CACHE_SIZE);
+                        mDiskCache = DiskLruCache.open(diskCacheDir, 1, 1, diskCacheSize);
                     } catch (final IOException e) {
                         diskCacheDir = null;
                     }
@@ -188,7 +298,10 @@ public final class ImageCache {
                 .getSystemService(Context.ACTIVITY_SERVICE);
         final int lruCacheSize = Math.round(MEM_CACHE_DIVIDER * activityManager.getMemoryClass()
                 * 1024 * 1024);
-        mLruCache = new MemoryCache(lruCacheSize);
+        // the pool and the memory cache share the budget
+        final int poolSize = Math.round(POOL_DIVIDER * lruCacheSize);
+        BitmapPool.getInstance().setMaxSize(poolSize);
+        mLruCache = new MemoryCache(lruCacheSize - poolSize);
 
         // Release some memory as needed
         context.registerComponentCallbacks(new ComponentCallbacks2() {
@@ -283,9 +396,91 @@ public final class ImageCache {
         }
 
         // Add to memory cache
+        if (replace) {
+            removeSizeVariants(data);
+            mColorStore.removeColors(data);
+        }
         addBitmapToMemCache(data, bitmap, replace);
 
         // Add to disk cache
+        addBitmapToDiskCache(data, bitmap, replace, ArtworkSize.FULL.mQuality);
+
+        fillColors(data, bitmap, false);
+    }
+
+    /**
+     * Adds a new image to the disk cache only, for a full size image that isn't shown and is
+     * dropped or reused right after
+     *
+     * @param data The key used to store the image
+     * @param bitmap The {@link Bitmap} to cache
+     */
+    public void addBitmapToDiskCache(final String data, final Bitmap bitmap) {
+        if (data == null || bitmap == null) {
+            return;
+        }
+
+        addBitmapToDiskCache(data, bitmap, false, ArtworkSize.FULL.mQuality);
+        fillColors(data, bitmap, false);
+    }
+
+    /**
+     * Adds a size variant of an image to the memory and disk caches
+     *
+     * @param data The key of the full size image
+     * @param size The size of the variant
+     * @param bitmap The {@link Bitmap} to cache
+     */
+    public void addBitmapToCache(final String data, final ArtworkSize size, final Bitmap bitmap) {
+        if (size == ArtworkSize.FULL) {
+            addBitmapToCache(data, bitmap);
+            return;
+        }
+        if (data == null || bitmap == null) {
+            return;
+        }
+
+        final String key = size.getKey(data);
+        addBitmapToMemCache(key, bitmap);
+        addBitmapToDiskCache(key, bitmap, false, size.mQuality);
+
+        // the blurred variants have lost the colors of the image
+        if (size == ArtworkSize.LIST || size == ArtworkSize.GRID) {
+            fillColors(data, bitmap, true);
+        }
+    }
+
+    /**
+     * Gets the palette colors of an image, extracting and storing them if they weren't yet or
+     * only come from the fast extraction of a thumbnail
+     *
+     * @param data The key of the full size image
+     * @param bitmap The full size image, used if the colors weren't stored
+     * @return The colors of the image, or null if they aren't stored and there is no image
+     */
+    public BitmapColors getColors(final String data, final Bitmap bitmap) {
+        BitmapColors colors = mColorStore.getColors(data);
+        if ((colors == null || colors.mFast) && bitmap != null) {
+            colors = BitmapWithColors.extractColors(bitmap, false);
+            mColorStore.putColors(data, colors);
+        }
+        return colors;
+    }
+
+    /**
+     * Stores the palette colors of a freshly cached image, so they never have to be extracted
+     * when the image is shown. Thumbnails use the fast extraction, which the full size image
+     * replaces once it is cached.
+     */
+    private void fillColors(final String data, final Bitmap bitmap, final boolean fast) {
+        final BitmapColors colors = mColorStore.getColors(data);
+        if (colors == null || (colors.mFast && !fast)) {
+            mColorStore.putColors(data, BitmapWithColors.extractColors(bitmap, fast));
+        }
+    }
+
+    private void addBitmapToDiskCache(final String data, final Bitmap bitmap,
+            final boolean replace, final int quality) {
         if (mDiskCache != null && !mDiskCache.isClosed()) {
             final String key = hashKeyForDisk(data);
             OutputStream out = null;
@@ -299,7 +494,7 @@ public final class ImageCache {
                     final DiskLruCache.Editor editor = mDiskCache.edit(key);
                     if (editor != null) {
                         out = editor.newOutputStream(DISK_CACHE_INDEX);
-                        bitmap.compress(COMPRESS_FORMAT, COMPRESS_QUALITY, out);
+                        bitmap.compress(COMPRESS_FORMAT, quality, out);
                         editor.commit();
                         out.close();
                         flush();
@@ -381,7 +576,6 @@ public final class ImageCache {
             return getBitmapFromMemCache(data);
         }
 
-        waitUntilUnpaused();
         final String key = hashKeyForDisk(data);
         if (mDiskCache != null) {
             InputStream inputStream = null;
@@ -405,6 +599,55 @@ public final class ImageCache {
         return null;
     }
 
+    /**
+     * Decodes an image in the disk cache subsampled to a size
+     *
+     * @param data Unique identifier of the image
+     * @param size The size to decode at
+     * @return The {@link Bitmap} if found in cache, null otherwise
+     */
+    private Bitmap getBitmapFromDiskCache(final String data, final ArtworkSize size) {
+        if (mDiskCache == null) {
+            return null;
+        }
+
+        final String key = hashKeyForDisk(data);
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try {
+            // read the dimensions first, then decode from a fresh stream
+            decodeFromDiskCache(key, options);
+            if (setDecodeSize(options, size)) {
+                return BitmapPool.getInstance().decode(options, new BitmapPool.Decoder() {
+                    @Override
+                    public Bitmap decode(BitmapFactory.Options options) throws IOException {
+                        return decodeFromDiskCache(key, options);
+                    }
+                });
+            }
+        } catch (final IOException e) {
+            Log.e(TAG, "getBitmapFromDiskCache", e);
+        } catch (final IllegalStateException e) {
+            // the cache was closed while we were reading
+            Log.e(TAG, "getBitmapFromDiskCache", e);
+        }
+        return null;
+    }
+
+    private Bitmap decodeFromDiskCache(final String key, final BitmapFactory.Options options)
+            throws IOException {
+        final DiskLruCache.Snapshot snapshot = mDiskCache.get(key);
+        if (snapshot == null) {
+            return null;
+        }
+        final InputStream inputStream = snapshot.getInputStream(DISK_CACHE_INDEX);
+        try {
+            return BitmapFactory.decodeStream(inputStream, null, options);
+        } finally {
+            IoUtils.closeQuietly(inputStream);
+        }
+    }
+
     /**
      * Tries to return a cached image from memory cache before fetching from the
      * disk cache
@@ -427,6 +670,36 @@ public final class ImageCache {
         return null;
     }
 
+    /**
+     * Tries to return a size variant of a cached image from memory cache before subsampling it
+     * from the full size image in the disk cache. Blurred images are only looked up.
+     *
+     * @param data Unique identifier of the full size image
+     * @param size The size to return
+     * @return The {@link Bitmap} if found in cache, null otherwise
+     */
+    public final Bitmap getCachedBitmap(final String data, final ArtworkSize size) {
+        if (size == ArtworkSize.FULL) {
+            return getCachedBitmap(data);
+        }
+        if (data == null) {
+            return null;
+        }
+        final String key = size.getKey(data);
+        Bitmap cachedImage = getBitmapFromMemCache(key);
+        if (cachedImage == null) {
+            cachedImage = getBitmapFromDiskCache(key, size);
+            if (cachedImage != null) {
+                addBitmapToMemCache(key, cachedImage);
+            } else if (size != ArtworkSize.BLURRED) {
+                // subsample the full image once and keep the result
+                cachedImage = getBitmapFromDiskCache(data, size);
+                addBitmapToCache(data, size, cachedImage);
+            }
+        }
+        return cachedImage;
+    }
+
     /**
      * Tries to return the album art from memory cache and disk cache, before
      * calling {@code #getArtworkFromFile(Context, String)} again
@@ -437,18 +710,30 @@ public final class ImageCache {
      * @return The artwork for an album
      */
     public final Bitmap getCachedArtwork(final Context context, final String data, final long id) {
+        return getCachedArtwork(context, data, id, ArtworkSize.FULL);
+    }
+
+    /**
+     * Tries to return a size variant of the album art from memory cache and disk cache, before
+     * decoding it from the device
+     *
+     * @param context The {@link Context} to use
+     * @param data The name of the album art
+     * @param id The ID of the album to find artwork for
+     * @param size The size to return
+     * @return The artwork for an album
+     */
+    public final Bitmap getCachedArtwork(final Context context, final String data, final long id,
+            final ArtworkSize size) {
         if (context == null || data == null) {
             return null;
         }
-        Bitmap cachedImage = getCachedBitmap(data);
+        Bitmap cachedImage = getCachedBitmap(data, size);
         if (cachedImage == null && id >= 0) {
-            cachedImage = getArtworkFromFile(context, id);
-        }
-        if (cachedImage != null) {
-            addBitmapToMemCache(data, cachedImage);
-            return cachedImage;
+            cachedImage = getArtworkFromFile(context, id, size);
+            addBitmapToCache(data, size, cachedImage);
         }
-        return null;
+        return cachedImage;
     }
 
     /**
@@ -459,11 +744,24 @@ public final class ImageCache {
      * @return The artwork for an album
      */
     public final Bitmap getArtworkFromFile(final Context context, final long albumId) {
+        return getArtworkFromFile(context, albumId, ArtworkSize.FULL);
+    }
+
+    /**
+     * Used to fetch the artwork for an album locally from the user's device, subsampled to
+     * the given size
+     *
+     * @param context The {@link Context} to use
+     * @param albumID The ID of the album to find artwork for
+     * @param size The size to decode the artwork at
+     * @return The artwork for an album
+     */
+    public final Bitmap getArtworkFromFile(final Context context, final long albumId,
+            final ArtworkSize size) {
         if (albumId < 0) {
             return null;
         }
         Bitmap artwork = null;
-        waitUntilUnpaused();
 
         ParcelFileDescriptor parcelFileDescriptor = null;
         try {
@@ -471,12 +769,26 @@ public final class ImageCache {
             parcelFileDescriptor = context.getContentResolver().openFileDescriptor(uri, "r");
             if (parcelFileDescriptor != null) {
                 final FileDescriptor fileDescriptor = parcelFileDescriptor.getFileDescriptor();
-                artwork = BitmapFactory.decodeFileDescriptor(fileDescriptor);
+                // read the dimensions first, the position of the descriptor isn't changed
+                final BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inJustDecodeBounds = true;
+                BitmapFactory.decodeFileDescriptor(fileDescriptor, null, options);
+                if (setDecodeSize(options, size)) {
+                    artwork = BitmapPool.getInstance().decode(options, new BitmapPool.Decoder() {
+                        @Override
+                        public Bitmap decode(BitmapFactory.Options options) {
+                            return BitmapFactory.decodeFileDescriptor(fileDescriptor, null,
+                                    options);
+                        }
+                    });
+                }
             }
         } catch (final IllegalStateException e) {
             // Log.e(TAG, "IllegalStateExcetpion - getArtworkFromFile - ", e);
         } catch (final FileNotFoundException e) {
             // Log.e(TAG, "FileNotFoundException - getArtworkFromFile - ", e);
+        } catch (final IOException e) {
+            // Log.e(TAG, "IOException - getArtworkFromFile - ", e);
         } catch (final OutOfMemoryError evict) {
             // Log.e(TAG, "OutOfMemoryError - getArtworkFromFile - ", evict);
             evictAll();
@@ -486,6 +798,64 @@ public final class ImageCache {
         return artwork;
     }
 
+    /**
+     * Sets up the options of a decode for the given size once the bounds are known
+     *
+     * @param options the options the bounds were decoded with
+     * @param size the size to decode at
+     * @return false if the bounds couldn't be read
+     */
+    private static boolean setDecodeSize(final BitmapFactory.Options options,
+            final ArtworkSize size) {
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return false;
+        }
+
+        // the largest power of two that keeps both sides at or above the size
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= size.mMinSize
+                && options.outHeight / (sampleSize * 2) >= size.mMinSize) {
+            sampleSize *= 2;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        // opaque images only need half the memory when the size allows it, jpegs never have
+        // alpha and the decoder falls back to ARGB_8888 for the webps that do
+        options.inPreferredConfig = size.mAllowRgb565 && ("image/jpeg".equals(options.outMimeType)
+                || "image/webp".equals(options.outMimeType))
+                ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        return true;
+    }
+
+    /**
+     * Scales an image down to a size variant, keeping its aspect ratio
+     *
+     * @param bitmap the image to scale
+     * @param size the size to scale to
+     * @return the scaled image, or the image itself if it isn't larger than twice the size. The
+     * scaled image is drawn into a pooled bitmap when one fits, so the caller owns it.
+     */
+    public static Bitmap scaleToSize(final Bitmap bitmap, final ArtworkSize size) {
+        if (bitmap == null) {
+            return null;
+        }
+        final int minSide = Math.min(bitmap.getWidth(), bitmap.getHeight());
+        if (minSide < size.mMinSize * 2) {
+            return bitmap;
+        }
+        final float scale = size.mMinSize / (float) minSide;
+        final int width = Math.round(bitmap.getWidth() * scale);
+        final int height = Math.round(bitmap.getHeight() * scale);
+        final Bitmap scaled = BitmapPool.getInstance().get(width, height,
+                bitmap.getConfig() == Bitmap.Config.RGB_565
+                        ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888);
+        scaled.eraseColor(Color.TRANSPARENT);
+        new Canvas(scaled).drawBitmap(bitmap, null, new Rect(0, 0, width, height),
+                new Paint(Paint.FILTER_BITMAP_FLAG));
+        return scaled;
+    }
+
     /**
      * flush() is called to synchronize up other methods that are accessing the
      * cache first
@@ -528,6 +898,7 @@ public final class ImageCache {
                 }
                 // Clear the memory cache
                 evictAll();
+                mColorStore.deleteAll();
                 return null;
             }
         });
@@ -566,6 +937,7 @@ public final class ImageCache {
         if (mLruCache != null) {
             mLruCache.evictAll();
         }
+        BitmapPool.getInstance().clear();
         System.gc();
     }
 
@@ -576,7 +948,8 @@ public final class ImageCache {
         if (key == null) {
             return;
         }
-        // Remove the Lru entry
+        // Remove the Lru and disk entries of the smaller sizes
+        removeSizeVariants(key);
         if (mLruCache != null) {
             mLruCache.remove(key);
         }
@@ -589,59 +962,34 @@ public final class ImageCache {
         } catch (final IOException e) {
             Log.e(TAG, "removeFromCache(" + key + ")", e);
         }
+        mColorStore.removeColors(key);
         flush();
     }
 
     /**
-     * Used to temporarily pause the disk cache while the user is scrolling to
-     * improve scrolling.
+     * Drops the smaller variants of an image from the memory and disk caches
      *
-     * @param pause True to temporarily pause the disk cache, false otherwise.
+     * @param data The key of the full size image
      */
-    public void setPauseDiskCache(final boolean pause) {
-        synchronized (mPauseLock) {
-            if (mPauseDiskAccess != pause) {
-                mPauseDiskAccess = pause;
-                if (!pause) {
-                    mPauseLock.notify();
-
-                    for (ICacheListener listener : mListeners) {
-                        listener.onCacheUnpaused();
-                    }
-                }
+    private void removeSizeVariants(final String data) {
+        for (ArtworkSize size : ArtworkSize.values()) {
+            if (size == ArtworkSize.FULL) {
+                continue;
             }
-        }
-    }
-
-    private void waitUntilUnpaused() {
-        synchronized (mPauseLock) {
-            if (Looper.myLooper() != Looper.getMainLooper()) {
-                while (mPauseDiskAccess) {
-                    try {
-                        mPauseLock.wait();
-                    } catch (InterruptedException e) {
-                        // ignored, we'll start waiting again
-                    }
+            final String key = size.getKey(data);
+            if (mLruCache != null) {
+                mLruCache.remove(key);
+            }
+            try {
+                if (mDiskCache != null && !mDiskCache.isClosed()) {
+                    mDiskCache.remove(hashKeyForDisk(key));
                 }
+            } catch (final IOException e) {
+                Log.e(TAG, "removeSizeVariants(" + key + ")", e);
             }
         }
     }
 
-    /**
-     * @return True if the user is scrolling, false otherwise.
-     */
-    public boolean isDiskCachePaused() {
-        return mPauseDiskAccess;
-    }
-
-    public void addCacheListener(ICacheListener listener) {
-        mListeners.add(listener);
-    }
-
-    public void removeCacheListener(ICacheListener listener) {
-        mListeners.remove(listener);
-    }
-
     /**
      * Get a usable cache directory (external if available, internal otherwise)
      *
@@ -23,6 +23,7 @@ import org.lineageos.eleven.Config;
 import org.lineageos.eleven.MusicPlaybackService;
 import org.lineageos.eleven.cache.PlaylistWorkerTask.PlaylistWorkerType;
 import org.lineageos.eleven.utils.BitmapWithColors;
+import org.lineageos.eleven.utils.IoUtils;
 import org.lineageos.eleven.utils.MusicUtils;
 import org.lineageos.eleven.widgets.BlurScrimImage;
 import org.lineageos.eleven.widgets.LetterTileDrawable;
@@ -97,7 +98,7 @@ public class ImageFetcher extends ImageWorker {
     public void loadCurrentArtwork(final ImageView imageView) {
         loadImage(getCurrentCacheKey(),
                 MusicUtils.getArtistName(), MusicUtils.getAlbumName(), MusicUtils.getCurrentAlbumId(),
-                imageView, ImageType.ALBUM);
+                imageView, ImageType.ALBUM, false, ArtworkScheduler.PRIORITY_NOW_PLAYING);
     }
 
     /**
@@ -124,7 +125,8 @@ public class ImageFetcher extends ImageWorker {
      * Used to fetch artist images. It also scales the image to fit the image view, if necessary.
      */
     public void loadArtistImage(final String key, final ImageView imageView, boolean scaleImgToView) {
-        loadImage(key, key, null, -1, imageView, ImageType.ARTIST, scaleImgToView);
+        loadImage(key, key, null, -1, imageView, ImageType.ARTIST, scaleImgToView,
+                ArtworkScheduler.PRIORITY_VISIBLE);
     }
 
     /**
@@ -132,16 +134,14 @@ public class ImageFetcher extends ImageWorker {
      */
     public void loadCurrentArtistImage(final ImageView imageView) {
         loadImage(MusicUtils.getArtistName(), MusicUtils.getArtistName(), null, -1, imageView,
-                ImageType.ARTIST);
+                ImageType.ARTIST, false, ArtworkScheduler.PRIORITY_NOW_PLAYING);
     }
 
     /**
-     * @param pause True to temporarily pause the disk cache, false otherwise.
+     * @param flinging True while a list is flinging, false otherwise.
      */
-    public void setPauseDiskCache(final boolean pause) {
-        if (mImageCache != null) {
-            mImageCache.setPauseDiskCache(pause);
-        }
+    public void setFlinging(final boolean flinging) {
+        ArtworkScheduler.getInstance().setFlinging(flinging);
     }
 
     /**
@@ -152,20 +152,8 @@ public class ImageFetcher extends ImageWorker {
             mImageCache.clearCaches();
         }
 
-        // clear the keys of images we've already downloaded
-        sKeys.clear();
-    }
-
-    public void addCacheListener(ICacheListener listener) {
-        if (mImageCache != null) {
-            mImageCache.addCacheListener(listener);
-        }
-    }
-
-    public void removeCacheListener(ICacheListener listener) {
-        if (mImageCache != null) {
-            mImageCache.removeCacheListener(listener);
-        }
+        // allow the downloads that failed to be tried again
+        ArtworkRequests.getInstance().clearFailures();
     }
 
     /**
@@ -202,7 +190,8 @@ public class ImageFetcher extends ImageWorker {
             artwork = mImageCache.getArtworkFromFile(mContext, albumId);
         }
         if (artwork != null) {
-            return new BitmapWithColors(artwork, key.hashCode());
+            return new BitmapWithColors(artwork, key.hashCode(),
+                    mImageCache.getColors(key, artwork));
         }
 
         return LetterTileDrawable.createDefaultBitmap(mContext, key, ImageType.ALBUM, false,
@@ -253,8 +242,17 @@ public class ImageFetcher extends ImageWorker {
 
             // Decode bitmap with inSampleSize set
             options.inJustDecodeBounds = false;
-            input = cr.openInputStream(selectedImage);
-            return BitmapFactory.decodeStream(input, null, options);
+            return BitmapPool.getInstance().decode(options, new BitmapPool.Decoder() {
+                @Override
+                public Bitmap decode(BitmapFactory.Options options) throws IOException {
+                    final InputStream stream = cr.openInputStream(selectedImage);
+                    try {
+                        return BitmapFactory.decodeStream(stream, null, options);
+                    } finally {
+                        IoUtils.closeQuietly(stream);
+                    }
+                }
+            });
         } catch (FileNotFoundException e) {
             e.printStackTrace();
             return null;
@@ -21,7 +21,6 @@ import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.TransitionDrawable;
-import androidx.renderscript.RenderScript;
 import android.view.View;
 import android.widget.ImageView;
 
@@ -29,14 +28,12 @@ import org.lineageos.eleven.provider.PlaylistArtworkStore;
 import org.lineageos.eleven.utils.ElevenUtils;
 import org.lineageos.eleven.utils.ImageUtils;
 import org.lineageos.eleven.widgets.BlurScrimImage;
+import org.lineageos.eleven.cache.ImageCache.ArtworkSize;
 import org.lineageos.eleven.cache.PlaylistWorkerTask.PlaylistWorkerType;
 import org.lineageos.eleven.widgets.LetterTileDrawable;
 
 import java.lang.ref.WeakReference;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Callable;
 
 /**
  * This class wraps up completing some arbitrary long running work when loading
@@ -46,17 +43,6 @@ import java.util.concurrent.RejectedExecutionException;
  */
 public abstract class ImageWorker {
 
-    /**
-     * Render script
-     */
-    public static RenderScript sRenderScript = null;
-
-    /**
-     * Tracks which images we've tried to download and prevents it from trying again
-     * In the future we might want to throw this into a db
-     */
-    public static Set<String> sKeys = Collections.synchronizedSet(new HashSet<String>());
-
     /**
      * Default transition drawable fade time
      */
@@ -95,10 +81,6 @@ public abstract class ImageWorker {
     protected ImageWorker(final Context context) {
         mContext = context.getApplicationContext();
 
-        if (sRenderScript == null) {
-            sRenderScript = RenderScript.create(mContext);
-        }
-
         mResources = mContext.getResources();
         // Create the transparent layer for the transition drawable
         mTransparentDrawable = new ColorDrawable(Color.TRANSPARENT);
@@ -160,36 +142,81 @@ public abstract class ImageWorker {
     public static Bitmap getBitmapInBackground(final Context context, final ImageCache imageCache,
                                    final String key, final String albumName, final String artistName,
                                    final long albumId, final ImageType imageType) {
+        return getBitmapInBackground(context, imageCache, key, albumName, artistName, albumId,
+                imageType, ArtworkSize.FULL);
+    }
+
+    /**
+     * Loads an image from the caches, the device or the network. Concurrent requests for the
+     * same image and size share a single load.
+     */
+    public static Bitmap getBitmapInBackground(final Context context, final ImageCache imageCache,
+                                   final String key, final String albumName, final String artistName,
+                                   final long albumId, final ImageType imageType,
+                                   final ArtworkSize size) {
+        if (key == null) {
+            return loadBitmap(context, imageCache, key, albumName, artistName, albumId,
+                    imageType, size);
+        }
+        return ArtworkRequests.getInstance().load(size.getKey(key), new Callable<Bitmap>() {
+            @Override
+            public Bitmap call() {
+                return loadBitmap(context, imageCache, key, albumName, artistName, albumId,
+                        imageType, size);
+            }
+        });
+    }
+
+    private static Bitmap loadBitmap(final Context context, final ImageCache imageCache,
+                                   final String key, final String albumName, final String artistName,
+                                   final long albumId, final ImageType imageType,
+                                   final ArtworkSize size) {
         // The result
         Bitmap bitmap = null;
 
         // First, check the disk cache for the image
         if (key != null && imageCache != null) {
-            bitmap = imageCache.getCachedBitmap(key);
+            bitmap = imageCache.getCachedBitmap(key, size);
         }
 
         // Second, if we're fetching artwork, check the device for the image
         if (bitmap == null && imageType.equals(ImageType.ALBUM) && albumId >= 0
                 && key != null && imageCache != null) {
-            bitmap = imageCache.getCachedArtwork(context, key, albumId);
+            bitmap = imageCache.getCachedArtwork(context, key, albumId, size);
         }
 
         // Third, by now we need to download the image
-        if (bitmap == null && ElevenUtils.isOnline(context) && !sKeys.contains(key)) {
+        boolean downloaded = false;
+        if (bitmap == null && ElevenUtils.isOnline(context)
+                && !ArtworkRequests.getInstance().isDownloadFailed(key)) {
             // Now define what the artist name, album name, and url are.
             String url = ImageUtils.processImageUrl(context, artistName, albumName, imageType);
             if (url != null) {
                 bitmap = ImageUtils.processBitmap(context, url);
+                downloaded = true;
+            }
+            if (bitmap == null) {
+                ArtworkRequests.getInstance().setDownloadFailed(key);
             }
         }
 
         // Fourth, add the new image to the cache
         if (bitmap != null && key != null && imageCache != null) {
-            imageCache.addBitmapToCache(key, bitmap);
+            if (size == ArtworkSize.FULL) {
+                imageCache.addBitmapToCache(key, bitmap);
+            } else if (downloaded) {
+                // keep the full size download on disk next to the smaller variant. Nothing
+                // else holds it, so its memory is reused once it is scaled down
+                imageCache.addBitmapToDiskCache(key, bitmap);
+                final Bitmap scaled = ImageCache.scaleToSize(bitmap, size);
+                imageCache.addBitmapToCache(key, size, scaled);
+                if (scaled != bitmap) {
+                    BitmapPool.getInstance().put(bitmap);
+                }
+                bitmap = scaled;
+            }
         }
 
-        sKeys.add(key);
-
         return bitmap;
     }
 
@@ -286,7 +313,7 @@ public abstract class ImageWorker {
             AsyncTaskContainer asyncTaskContainer = (AsyncTaskContainer)tag;
             BitmapWorkerTask bitmapWorkerTask = asyncTaskContainer.getBitmapWorkerTask();
             if (bitmapWorkerTask != null) {
-                bitmapWorkerTask.cancel(false);
+                bitmapWorkerTask.cancel();
             }
 
             // clear out the tag
@@ -416,7 +443,8 @@ public abstract class ImageWorker {
     protected void loadImage(final String key, final String artistName, final String albumName,
             final long albumId, final ImageView imageView, final ImageType imageType) {
 
-        loadImage(key, artistName, albumName, albumId, imageView, imageType, false);
+        loadImage(key, artistName, albumName, albumId, imageView, imageType, false,
+                ArtworkScheduler.PRIORITY_VISIBLE);
     }
 
     /**
@@ -430,17 +458,20 @@ public abstract class ImageWorker {
      *            {@link Bitmap}.
      * @param imageType The type of image URL to fetch for.
      * @param scaleImgToView config option to scale the image to the image view's dimensions
+     * @param priority the {@link ArtworkScheduler} priority of the load
      */
     protected void loadImage(final String key, final String artistName, final String albumName,
                              final long albumId, final ImageView imageView,
-                             final ImageType imageType, final boolean scaleImgToView) {
+                             final ImageType imageType, final boolean scaleImgToView,
+                             final int priority) {
 
         if (key == null || mImageCache == null || imageView == null) {
             return;
         }
 
         // First, check the memory for the image
-        final Bitmap lruBitmap = mImageCache.getBitmapFromMemCache(key);
+        final ArtworkSize size = ArtworkSize.forView(imageView);
+        final Bitmap lruBitmap = mImageCache.getBitmapFromMemCache(size.getKey(key));
         if (lruBitmap != null) {   // Bitmap found in memory cache
             // scale image if necessary
             if (scaleImgToView) {
@@ -461,8 +492,7 @@ public abstract class ImageWorker {
                 loadDefaultImage(imageView, imageType, null, key);
             }
 
-            if (executePotentialWork(key, imageView)
-                    && imageView != null && !mImageCache.isDiskCachePaused()) {
+            if (executePotentialWork(key, imageView)) {
                 Drawable fromDrawable = imageView.getDrawable();
                 if (fromDrawable == null) {
                     fromDrawable = mTransparentDrawable;
@@ -471,15 +501,11 @@ public abstract class ImageWorker {
                 // Otherwise run the worker task
                 final SimpleBitmapWorkerTask bitmapWorkerTask = new SimpleBitmapWorkerTask(key,
                             imageView, imageType, fromDrawable, mContext, scaleImgToView);
+                bitmapWorkerTask.mArtworkSize = size;
 
                 final AsyncTaskContainer asyncTaskContainer = new AsyncTaskContainer(bitmapWorkerTask);
                 imageView.setTag(asyncTaskContainer);
-                try {
-                    ElevenUtils.execute(false, bitmapWorkerTask,
-                            artistName, albumName, String.valueOf(albumId));
-                } catch (RejectedExecutionException e) {
-                    // Executor has exhausted queue space
-                }
+                bitmapWorkerTask.execute(priority, artistName, albumName, String.valueOf(albumId));
             }
         }
     }
@@ -520,7 +546,7 @@ public abstract class ImageWorker {
         // even though we may have found the image in the cache, we want to check if the playlist
         // has been updated, or it's been too long since the last update and change the image
         // accordingly
-        if (executePotentialWork(key, imageView) && !mImageCache.isDiskCachePaused()) {
+        if (executePotentialWork(key, imageView)) {
             // since a playlist's image can change based on changes to the playlist
             // set the from drawable to be the existing image (if it exists) instead of transparent
             // and fade from there
@@ -534,11 +560,7 @@ public abstract class ImageWorker {
                     lruBitmap != null, imageView, fromDrawable, mContext);
             final AsyncTaskContainer asyncTaskContainer = new AsyncTaskContainer(bitmapWorkerTask);
             imageView.setTag(asyncTaskContainer);
-            try {
-                ElevenUtils.execute(false, bitmapWorkerTask);
-            } catch (RejectedExecutionException e) {
-                // Executor has exhausted queue space
-            }
+            bitmapWorkerTask.execute(ArtworkScheduler.PRIORITY_VISIBLE);
         }
     }
 
@@ -559,19 +581,14 @@ public abstract class ImageWorker {
             return;
         }
 
-        if (executePotentialWork(key, blurScrimImage) && !mImageCache.isDiskCachePaused()) {
+        if (executePotentialWork(key, blurScrimImage)) {
             // Otherwise run the worker task
             final BlurBitmapWorkerTask blurWorkerTask = new BlurBitmapWorkerTask(key, blurScrimImage,
-                    imageType, mTransparentDrawable, mContext, sRenderScript);
+                    imageType, mTransparentDrawable, mContext);
             final AsyncTaskContainer asyncTaskContainer = new AsyncTaskContainer(blurWorkerTask);
             blurScrimImage.setTag(asyncTaskContainer);
-
-            try {
-                ElevenUtils.execute(false, blurWorkerTask, artistName, albumName, String.valueOf(albumId));
-            } catch (RejectedExecutionException e) {
-                // Executor has exhausted queue space, show default artwork
-                blurScrimImage.transitionToDefaultState();
-            }
+            blurWorkerTask.execute(ArtworkScheduler.PRIORITY_NOW_PLAYING, artistName, albumName,
+                    String.valueOf(albumId));
         }
     }
 
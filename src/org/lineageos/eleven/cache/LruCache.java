@@ -12,12 +12,21 @@
 package org.lineageos.eleven.cache;
 
 // NOTE: upstream of this class is android.util.LruCache, changes below
-// expose trimToSize() to be called externally.
+// expose trimToSize() to be called externally and replace the single
+// synchronized map with lock striped segments.
 
 import android.annotation.SuppressLint;
 
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Static library version of {@link android.util.LruCache}. Used to write apps
@@ -25,25 +34,61 @@ import java.util.Map;
  * this implementation is still used; it does not try to switch to the
  * framework's implementation. See the framework SDK documentation for a class
  * overview.
+ * <p>
+ * Unlike the framework version, the entries are spread over {@link #SEGMENT_COUNT}
+ * segments by key hash, each with its own lock, so threads reading and writing
+ * different keys rarely wait on each other. Every access stamps the entry with
+ * a global tick; eviction removes the entry with the oldest tick among the
+ * eldest entries of the segments, which is the least recently used entry of
+ * the whole cache.
  */
 public class LruCache<K, V> {
 
-    private final LinkedHashMap<K, V> map;
+    /* number of lock stripes, a power of two */
+    private static final int SEGMENT_COUNT = 16;
+
+    private final Segment<K, V>[] segments;
 
     private final int maxSize;
 
     /** Size of this cache in units. Not necessarily the number of elements. */
-    private int size;
+    private final AtomicInteger size = new AtomicInteger();
+
+    /** Source of the access ticks */
+    private final AtomicLong clock = new AtomicLong();
+
+    /** Serializes the evictions, readers and writers don't take it */
+    private final Object evictionLock = new Object();
+
+    private final AtomicInteger putCount = new AtomicInteger();
 
-    private int putCount;
+    private final AtomicInteger createCount = new AtomicInteger();
 
-    private int createCount;
+    private final AtomicInteger evictionCount = new AtomicInteger();
 
-    private int evictionCount;
+    private final AtomicInteger hitCount = new AtomicInteger();
+
+    private final AtomicInteger missCount = new AtomicInteger();
+
+    /**
+     * A value and the tick of its last access
+     */
+    private static final class Node<V> {
+        final V value;
+        long tick;
 
-    private int hitCount;
+        Node(final V value, final long tick) {
+            this.value = value;
+            this.tick = tick;
+        }
+    }
 
-    private int missCount;
+    /**
+     * An access ordered map guarded by its own monitor
+     */
+    private static final class Segment<K, V> {
+        final LinkedHashMap<K, Node<V>> map = new LinkedHashMap<>(0, 0.75f, true);
+    }
 
     /**
      * @param maxSize for caches that do not override {@link #sizeOf}, this is
@@ -51,12 +96,21 @@ public class LruCache<K, V> {
      *            caches, this is the maximum sum of the sizes of the entries in
      *            this cache.
      */
+    @SuppressWarnings("unchecked")
     public LruCache(final int maxSize) {
         if (maxSize <= 0) {
             throw new IllegalArgumentException("maxSize <= 0");
         }
         this.maxSize = maxSize;
-        this.map = new LinkedHashMap<>(0, 0.75f, true);
+        this.segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            this.segments[i] = new Segment<>();
+        }
+    }
+
+    private Segment<K, V> segmentFor(final K key) {
+        final int h = key.hashCode();
+        return this.segments[(h ^ (h >>> 16)) & (SEGMENT_COUNT - 1)];
     }
 
     /**
@@ -70,15 +124,16 @@ public class LruCache<K, V> {
             throw new NullPointerException("key == null");
         }
 
-        V mapValue;
-        synchronized (this) {
-            mapValue = map.get(key);
-            if (mapValue != null) {
-                this.hitCount++;
-                return mapValue;
+        final Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            final Node<V> node = segment.map.get(key);
+            if (node != null) {
+                node.tick = this.clock.incrementAndGet();
+                this.hitCount.incrementAndGet();
+                return node.value;
             }
-            this.missCount++;
         }
+        this.missCount.incrementAndGet();
 
         /*
          * Attempt to create a value. This may take a long time, and the map may
@@ -92,15 +147,16 @@ public class LruCache<K, V> {
             return null;
         }
 
-        synchronized (this) {
-            this.createCount++;
-            mapValue = map.put(key, createdValue);
-
-            if (mapValue != null) {
-                /* There was a conflict so undo that last put */
-                this.map.put(key, mapValue);
+        V mapValue = null;
+        synchronized (segment) {
+            this.createCount.incrementAndGet();
+            final Node<V> existing = segment.map.get(key);
+            if (existing != null) {
+                /* There was a conflict so keep the existing value */
+                mapValue = existing.value;
             } else {
-                this.size += safeSizeOf(key, createdValue);
+                segment.map.put(key, new Node<>(createdValue, this.clock.incrementAndGet()));
+                this.size.addAndGet(safeSizeOf(key, createdValue));
             }
         }
 
@@ -124,14 +180,18 @@ public class LruCache<K, V> {
             throw new NullPointerException("key == null || value == null");
         }
 
-        V previous;
-        synchronized (this) {
-            this.putCount++;
-            this.size += safeSizeOf(key, value);
-            previous = this.map.put(key, value);
-            if (previous != null) {
-                this.size -= safeSizeOf(key, previous);
+        V previous = null;
+        final Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            this.putCount.incrementAndGet();
+            int delta = safeSizeOf(key, value);
+            final Node<V> previousNode = segment.map.put(key,
+                    new Node<>(value, this.clock.incrementAndGet()));
+            if (previousNode != null) {
+                previous = previousNode.value;
+                delta -= safeSizeOf(key, previous);
             }
+            this.size.addAndGet(delta);
         }
 
         if (previous != null) {
@@ -147,28 +207,64 @@ public class LruCache<K, V> {
      *            to evict even 0-sized elements.
      */
     public void trimToSize(final int maxSize) {
-        while (true) {
-            K key;
-            V value;
-            synchronized (this) {
-                if (this.size < 0 || this.map.isEmpty() && size != 0) {
+        if (this.size.get() <= maxSize && maxSize >= 0) {
+            return;
+        }
+
+        synchronized (this.evictionLock) {
+            while (true) {
+                final int currentSize = this.size.get();
+                if (currentSize < 0) {
                     throw new IllegalStateException(getClass().getName()
                             + ".sizeOf() is reporting inconsistent results!");
                 }
+                if (currentSize <= maxSize) {
+                    break;
+                }
+
+                // the least recently used entry of the cache is the oldest of the eldest
+                // entries of the segments
+                Segment<K, V> oldest = null;
+                long oldestTick = Long.MAX_VALUE;
+                for (Segment<K, V> segment : this.segments) {
+                    synchronized (segment) {
+                        final Iterator<Node<V>> it = segment.map.values().iterator();
+                        if (it.hasNext()) {
+                            final long tick = it.next().tick;
+                            if (tick < oldestTick) {
+                                oldestTick = tick;
+                                oldest = segment;
+                            }
+                        }
+                    }
+                }
 
-                if (this.size <= maxSize || this.map.isEmpty()) {
+                if (oldest == null) {
+                    if (currentSize != 0) {
+                        throw new IllegalStateException(getClass().getName()
+                                + ".sizeOf() is reporting inconsistent results!");
+                    }
                     break;
                 }
 
-                final Map.Entry<K, V> toEvict = this.map.entrySet().iterator().next();
-                key = toEvict.getKey();
-                value = toEvict.getValue();
-                this.map.remove(key);
-                this.size -= safeSizeOf(key, value);
-                this.evictionCount++;
-            }
+                K key;
+                V value;
+                synchronized (oldest) {
+                    final Iterator<Map.Entry<K, Node<V>>> it = oldest.map.entrySet().iterator();
+                    if (!it.hasNext()) {
+                        // emptied by another thread in the meantime, look again
+                        continue;
+                    }
+                    final Map.Entry<K, Node<V>> toEvict = it.next();
+                    key = toEvict.getKey();
+                    value = toEvict.getValue().value;
+                    it.remove();
+                    this.size.addAndGet(-safeSizeOf(key, value));
+                    this.evictionCount.incrementAndGet();
+                }
 
-            entryRemoved(true, key, value, null);
+                entryRemoved(true, key, value, null);
+            }
         }
     }
 
@@ -182,11 +278,13 @@ public class LruCache<K, V> {
             throw new NullPointerException("key == null");
         }
 
-        V previous;
-        synchronized (this) {
-            previous = this.map.remove(key);
-            if (previous != null) {
-                this.size -= safeSizeOf(key, previous);
+        V previous = null;
+        final Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            final Node<V> previousNode = segment.map.remove(key);
+            if (previousNode != null) {
+                previous = previousNode.value;
+                this.size.addAndGet(-safeSizeOf(key, previous));
             }
         }
 
@@ -265,8 +363,8 @@ public class LruCache<K, V> {
      * of entries in the cache. For all other caches, this returns the sum of
      * the sizes of the entries in this cache.
      */
-    public synchronized final int size() {
-        return this.size;
+    public final int size() {
+        return this.size.get();
     }
 
     /**
@@ -274,60 +372,82 @@ public class LruCache<K, V> {
      * number of entries in the cache. For all other caches, this returns the
      * maximum sum of the sizes of the entries in this cache.
      */
-    public synchronized final int maxSize() {
+    public final int maxSize() {
         return this.maxSize;
     }
 
     /**
      * Returns the number of times {@link #get} returned a value.
      */
-    public synchronized final int hitCount() {
-        return this.hitCount;
+    public final int hitCount() {
+        return this.hitCount.get();
     }
 
     /**
      * Returns the number of times {@link #get} returned null or required a new
      * value to be created.
      */
-    public synchronized final int missCount() {
-        return this.missCount;
+    public final int missCount() {
+        return this.missCount.get();
     }
 
     /**
      * Returns the number of times {@link #create(Object)} returned a value.
      */
-    public synchronized final int createCount() {
-        return this.createCount;
+    public final int createCount() {
+        return this.createCount.get();
     }
 
     /**
      * Returns the number of times {@link #put} was called.
      */
-    public synchronized final int putCount() {
-        return this.putCount;
+    public final int putCount() {
+        return this.putCount.get();
     }
 
     /**
      * Returns the number of values that have been evicted.
      */
-    public synchronized final int evictionCount() {
-        return this.evictionCount;
+    public final int evictionCount() {
+        return this.evictionCount.get();
     }
 
     /**
      * Returns a copy of the current contents of the cache, ordered from least
      * recently accessed to most recently accessed.
      */
-    public synchronized final Map<K, V> snapshot() {
-        return new LinkedHashMap<>(this.map);
+    public final Map<K, V> snapshot() {
+        final List<Map.Entry<K, Node<V>>> entries = new ArrayList<>();
+        for (Segment<K, V> segment : this.segments) {
+            synchronized (segment) {
+                for (Map.Entry<K, Node<V>> entry : segment.map.entrySet()) {
+                    final Node<V> node = entry.getValue();
+                    entries.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(),
+                            new Node<>(node.value, node.tick)));
+                }
+            }
+        }
+        Collections.sort(entries, new Comparator<Map.Entry<K, Node<V>>>() {
+            @Override
+            public int compare(Map.Entry<K, Node<V>> lhs, Map.Entry<K, Node<V>> rhs) {
+                return Long.compare(lhs.getValue().tick, rhs.getValue().tick);
+            }
+        });
+
+        final LinkedHashMap<K, V> snapshot = new LinkedHashMap<>(entries.size());
+        for (Map.Entry<K, Node<V>> entry : entries) {
+            snapshot.put(entry.getKey(), entry.getValue().value);
+        }
+        return snapshot;
     }
 
     @SuppressLint("DefaultLocale")
     @Override
-    public synchronized final String toString() {
-        final int accesses = this.hitCount + this.missCount;
-        final int hitPercent = accesses != 0 ? 100 * this.hitCount / accesses : 0;
+    public final String toString() {
+        final int hits = this.hitCount.get();
+        final int accesses = hits + this.missCount.get();
+        final int hitPercent = accesses != 0 ? 100 * hits / accesses : 0;
         return String.format("LruCache[maxSize=%d,hits=%d,misses=%d,hitRate=%d%%]", this.maxSize,
-                this.hitCount, this.missCount, hitPercent);
+                hits, accesses - hits, hitPercent);
     }
 }
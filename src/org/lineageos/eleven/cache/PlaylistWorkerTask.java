@@ -25,6 +25,7 @@ import android.graphics.drawable.TransitionDrawable;
 import android.provider.MediaStore;
 import android.widget.ImageView;
 
+import org.lineageos.eleven.cache.ImageCache.ArtworkSize;
 import org.lineageos.eleven.cache.ImageWorker.ImageType;
 import org.lineageos.eleven.loaders.PlaylistSongLoader;
 import org.lineageos.eleven.loaders.SortedCursor;
@@ -40,7 +41,7 @@ import java.util.HashSet;
  * elapsed since the last update or if the # of songs in the playlist hasn't changed, no new images
  * will be loaded.
  */
-public class PlaylistWorkerTask extends BitmapWorkerTask<Void, Void, TransitionDrawable> {
+public class PlaylistWorkerTask extends BitmapWorkerTask<Void, TransitionDrawable> {
     // the work type
     public enum PlaylistWorkerType {
         Artist, CoverArt
@@ -297,7 +298,7 @@ public class PlaylistWorkerTask extends BitmapWorkerTask<Void, Void, TransitionD
             if (keys.add(key)) {
                 // try to load the bitmap
                 bitmap = ImageWorker.getBitmapInBackground(mContext, mImageCache,
-                        key, albumName, artistName, albumId, ImageType.ALBUM);
+                        key, albumName, artistName, albumId, ImageType.ALBUM, ArtworkSize.GRID);
 
                 // if we got the bitmap, add it to the list
                 if (bitmap != null) {
@@ -24,9 +24,9 @@ import org.lineageos.eleven.cache.ImageWorker.ImageType;
 import org.lineageos.eleven.utils.ImageUtils;
 
 /**
- * The actual {@link android.os.AsyncTask} that will process the image.
+ * The actual {@link BitmapWorkerTask} that will process the image.
  */
-public class SimpleBitmapWorkerTask extends BitmapWorkerTask<String, Void, TransitionDrawable> {
+public class SimpleBitmapWorkerTask extends BitmapWorkerTask<String, TransitionDrawable> {
 
     /**
      * Constructor of <code>BitmapWorkerTask</code>
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2019 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.cache;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.provider.MediaStore;
+import android.provider.MediaStore.Audio.AlbumColumns;
+import android.provider.MediaStore.Audio.AudioColumns;
+import android.util.LongSparseArray;
+
+import org.lineageos.eleven.utils.IdSetQuery;
+
+import java.util.Arrays;
+
+/**
+ * A process wide, size bounded cache of the media store metadata of tracks, keyed by audio id,
+ * so the playback service, the media session queue and the queue list don't each query the
+ * same rows again on every track or queue change. The cache is dropped whenever the media store
+ * reports a change to its audio or album tables.
+ */
+public final class TrackMetadataCache {
+    private static TrackMetadataCache sInstance = null;
+
+    /* number of tracks kept in memory */
+    private static final int MAX_TRACKS = 1000;
+
+    /* number of album artists kept in memory */
+    private static final int MAX_ALBUMS = 100;
+
+    private static final String[] PROJECTION = new String[] {
+            /* 0 */
+            AudioColumns._ID,
+            /* 1 */
+            AudioColumns.TITLE,
+            /* 2 */
+            AudioColumns.ARTIST,
+            /* 3 */
+            AudioColumns.ARTIST_ID,
+            /* 4 */
+            AudioColumns.ALBUM,
+            /* 5 */
+            AudioColumns.ALBUM_ID,
+            /* 6 */
+            AudioColumns.DURATION,
+            /* 7 */
+            AudioColumns.YEAR,
+            /* 8 */
+            AudioColumns.DATA,
+            /* 9 */
+            AudioColumns.MIME_TYPE,
+    };
+
+    /**
+     * The metadata of a single track
+     */
+    public static final class TrackMetadata {
+        public final long mId;
+        public final String mTitle;
+        public final String mArtistName;
+        public final long mArtistId;
+        public final String mAlbumName;
+        public final long mAlbumId;
+        /* in milliseconds */
+        public final long mDuration;
+        public final int mYear;
+        public final String mData;
+        public final String mMimeType;
+
+        private TrackMetadata(final Cursor cursor) {
+            mId = cursor.getLong(0);
+            mTitle = cursor.getString(1);
+            mArtistName = cursor.getString(2);
+            mArtistId = cursor.getLong(3);
+            mAlbumName = cursor.getString(4);
+            mAlbumId = cursor.getLong(5);
+            mDuration = cursor.getLong(6);
+            mYear = cursor.getInt(7);
+            mData = cursor.getString(8);
+            mMimeType = cursor.getString(9);
+        }
+    }
+
+    private final Context mContext;
+
+    private final LruCache<Long, TrackMetadata> mTracks = new LruCache<>(MAX_TRACKS);
+    private final LruCache<Long, String> mAlbumArtists = new LruCache<>(MAX_ALBUMS);
+
+    /* bumped on every media store change so queries started before it aren't cached */
+    private volatile int mGeneration;
+
+    /**
+     * @param context The {@link Context} to use
+     * @return A new instance of this class.
+     */
+    public static final synchronized TrackMetadataCache getInstance(final Context context) {
+        if (sInstance == null) {
+            sInstance = new TrackMetadataCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private TrackMetadataCache(final Context context) {
+        mContext = context;
+
+        final ContentObserver observer = new ContentObserver(null) {
+            @Override
+            public void onChange(boolean selfChange) {
+                invalidate();
+            }
+        };
+        context.getContentResolver().registerContentObserver(
+                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, true, observer);
+        context.getContentResolver().registerContentObserver(
+                MediaStore.Audio.Albums.EXTERNAL_CONTENT_URI, true, observer);
+    }
+
+    /**
+     * @param id the audio id
+     * @return the metadata of the track, or null if it isn't in the media store
+     */
+    public TrackMetadata get(final long id) {
+        return getAll(new long[] { id }).get(id);
+    }
+
+    /**
+     * Gets the metadata of many tracks, querying only the ones that aren't cached
+     *
+     * @param ids the audio ids, possibly with duplicates
+     * @return the metadata by audio id, without the ids that aren't in the media store
+     */
+    public LongSparseArray<TrackMetadata> getAll(final long[] ids) {
+        return getAll(ids, true);
+    }
+
+    /**
+     * Like {@link #getAll(long[])}, but the tracks that have to be queried aren't added to the
+     * cache. Used for bulk lookups such as the whole queue, which would otherwise push out the
+     * tracks that are looked up again and again.
+     *
+     * @param ids the audio ids, possibly with duplicates
+     * @return the metadata by audio id, without the ids that aren't in the media store
+     */
+    public LongSparseArray<TrackMetadata> getAllUncached(final long[] ids) {
+        return getAll(ids, false);
+    }
+
+    private LongSparseArray<TrackMetadata> getAll(final long[] ids, final boolean store) {
+        final LongSparseArray<TrackMetadata> result = new LongSparseArray<>(ids.length);
+        final long[] misses = new long[ids.length];
+        int missCount = 0;
+        for (final long id : ids) {
+            if (result.get(id) != null) {
+                continue;
+            }
+            final TrackMetadata cached = mTracks.get(id);
+            if (cached != null) {
+                result.put(id, cached);
+            } else {
+                misses[missCount++] = id;
+            }
+        }
+
+        if (missCount == 0) {
+            return result;
+        }
+
+        final int generation = mGeneration;
+        final Cursor cursor = IdSetQuery.query(mContext.getContentResolver(),
+                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, PROJECTION, AudioColumns._ID,
+                missCount == misses.length ? misses : Arrays.copyOf(misses, missCount));
+        if (cursor == null) {
+            return result;
+        }
+
+        try {
+            while (cursor.moveToNext()) {
+                final TrackMetadata track = new TrackMetadata(cursor);
+                result.put(track.mId, track);
+                if (store && generation == mGeneration) {
+                    mTracks.put(track.mId, track);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return result;
+    }
+
+    /**
+     * @param albumId the album id
+     * @return the artist of the album, or null if unknown
+     */
+    public String getAlbumArtist(final long albumId) {
+        final String cached = mAlbumArtists.get(albumId);
+        if (cached != null) {
+            return cached;
+        }
+
+        final int generation = mGeneration;
+        final Cursor cursor = mContext.getContentResolver().query(
+                MediaStore.Audio.Albums.EXTERNAL_CONTENT_URI, new String[] { AlbumColumns.ARTIST },
+                MediaStore.Audio.Albums._ID + "=" + albumId, null, null);
+        if (cursor == null) {
+            return null;
+        }
+
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            final String artist = cursor.getString(0);
+            if (artist != null && generation == mGeneration) {
+                mAlbumArtists.put(albumId, artist);
+            }
+            return artist;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Drops everything cached
+     */
+    public synchronized void invalidate() {
+        mGeneration++;
+        mTracks.evictAll();
+        mAlbumArtists.evictAll();
+    }
+
+    /**
+     * @return the number of track lookups served from memory
+     */
+    public int getHitCount() {
+        return mTracks.hitCount() + mAlbumArtists.hitCount();
+    }
+
+    /**
+     * @return the number of track lookups that had to query the media store
+     */
+    public int getMissCount() {
+        return mTracks.missCount() + mAlbumArtists.missCount();
+    }
+}
@@ -16,8 +16,12 @@
 
 package org.lineageos.eleven.cache.disklrucache;
 
-import java.io.BufferedWriter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
@@ -30,9 +34,12 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -86,57 +93,66 @@ import java.util.regex.Pattern;
  * responding appropriately.
  */
 public final class DiskLruCache implements Closeable {
-  static final String JOURNAL_FILE = "journal";
-  static final String JOURNAL_FILE_TEMP = "journal.tmp";
-  static final String JOURNAL_FILE_BACKUP = "journal.bkp";
-  static final String MAGIC = "libcore.io.DiskLruCache";
-  static final String VERSION_1 = "1";
+  static final String JOURNAL_FILE = "journal.bin";
+  static final String JOURNAL_FILE_TEMP = "journal.bin.tmp";
+  static final String JOURNAL_FILE_BACKUP = "journal.bin.bkp";
+  static final String LEGACY_JOURNAL_FILE = "journal";
+  static final String LEGACY_JOURNAL_FILE_BACKUP = "journal.bkp";
+  static final int MAGIC = 0x444c5243;
+  static final int VERSION_2 = 2;
+  static final String LEGACY_MAGIC = "libcore.io.DiskLruCache";
+  static final String LEGACY_VERSION_1 = "1";
   static final long ANY_SEQUENCE_NUMBER = -1;
-  static final String STRING_KEY_PATTERN = "[a-z0-9_-]{1,120}";
+  static final int MAX_KEY_LENGTH = 120;
+  static final String STRING_KEY_PATTERN = "[a-z0-9_-]{1," + MAX_KEY_LENGTH + "}";
   static final Pattern LEGAL_KEY_PATTERN = Pattern.compile(STRING_KEY_PATTERN);
-  private static final String CLEAN = "CLEAN";
-  private static final String DIRTY = "DIRTY";
-  private static final String REMOVE = "REMOVE";
-  private static final String READ = "READ";
+  private static final byte CLEAN = 1;
+  private static final byte DIRTY = 2;
+  private static final byte REMOVE = 3;
+  private static final byte READ = 4;
+  private static final String LEGACY_CLEAN = "CLEAN";
+  private static final String LEGACY_DIRTY = "DIRTY";
+  private static final String LEGACY_REMOVE = "REMOVE";
+  private static final String LEGACY_READ = "READ";
+
+  /** The number of reads that are held in memory before they are journaled. */
+  private static final int READ_BATCH_SIZE = 64;
 
     /*
-     * This cache uses a journal file named "journal". A typical journal file
-     * looks like this:
-     *     libcore.io.DiskLruCache
-     *     1
-     *     100
-     *     2
+     * This cache uses a binary journal file named "journal.bin". The journal
+     * starts with a 16 byte header made of four big endian ints: the magic
+     * number 0x444c5243, the journal's version, the application's version and
+     * the value count.
      *
-     *     CLEAN 3400330d1dfc7f3f7f4b8d4d803dfcf6 832 21054
-     *     DIRTY 335c4c6028171cfddfbaae1a9c313c52
-     *     CLEAN 335c4c6028171cfddfbaae1a9c313c52 3934 2342
-     *     REMOVE 335c4c6028171cfddfbaae1a9c313c52
-     *     DIRTY 1ab96a171faeeee38496d8b330771a7a
-     *     CLEAN 1ab96a171faeeee38496d8b330771a7a 1600 234
-     *     READ 335c4c6028171cfddfbaae1a9c313c52
-     *     READ 3400330d1dfc7f3f7f4b8d4d803dfcf6
+     * The header is followed by fixed size records, one per cache operation,
+     * so the journal can be read back in large blocks without any parsing and
+     * a record cut short by a crash is detected from the file length alone.
+     * Each record is laid out as:
+     *     1 byte               the operation
+     *     1 byte               the key length
+     *     120 bytes            the key, padded with zeros
+     *     8 bytes per value    the value lengths, only set for CLEAN records
      *
-     * The first five lines of the journal form its header. They are the
-     * constant string "libcore.io.DiskLruCache", the disk cache's version,
-     * the application's version, the value count, and a blank line.
+     *   o DIRTY records track that an entry is actively being created or
+     *     updated. Every successful DIRTY action should be followed by a CLEAN
+     *     or REMOVE action. DIRTY records without a matching CLEAN or REMOVE
+     *     indicate that temporary files may need to be deleted.
+     *   o CLEAN records track a cache entry that has been successfully
+     *     published and may be read.
+     *   o READ records track accesses for LRU. Reads are kept in memory and
+     *     written in batches rather than on every access, so the journal only
+     *     sees the latest access of each key within a batch.
+     *   o REMOVE records track entries that have been deleted.
      *
-     * Each of the subsequent lines in the file is a record of the state of a
-     * cache entry. Each line contains space-separated values: a state, a key,
-     * and optional state-specific values.
-     *   o DIRTY lines track that an entry is actively being created or updated.
-     *     Every successful DIRTY action should be followed by a CLEAN or REMOVE
-     *     action. DIRTY lines without a matching CLEAN or REMOVE indicate that
-     *     temporary files may need to be deleted.
-     *   o CLEAN lines track a cache entry that has been successfully published
-     *     and may be read. A publish line is followed by the lengths of each of
-     *     its values.
-     *   o READ lines track accesses for LRU.
-     *   o REMOVE lines track entries that have been deleted.
+     * The journal file is appended to as cache operations occur. The journal
+     * may occasionally be compacted by dropping redundant records. Compaction
+     * writes the live entries to a temporary file named "journal.bin.tmp"
+     * without holding the cache lock, then appends the records written in the
+     * meantime and swaps the files. That file should be deleted if it exists
+     * when the cache is opened.
      *
-     * The journal file is appended to as cache operations occur. The journal may
-     * occasionally be compacted by dropping redundant lines. A temporary file named
-     * "journal.tmp" will be used during compaction; that file should be deleted if
-     * it exists when the cache is opened.
+     * Caches created by older versions use a text journal named "journal" with
+     * one line per record. It is read once and replaced by a binary journal.
      */
 
   private final File directory;
@@ -146,12 +162,22 @@ public final class DiskLruCache implements Closeable {
   private final int appVersion;
   private long maxSize;
   private final int valueCount;
+  private final int recordSize;
   private long size = 0;
-  private Writer journalWriter;
+  private OutputStream journalWriter;
   private final LinkedHashMap<String, Entry> lruEntries =
       new LinkedHashMap<String, Entry>(0, 0.75f, true);
   private int redundantOpCount;
 
+  /** The keys read since the last READ batch was written, least recent first. */
+  private final LinkedHashSet<String> pendingReads = new LinkedHashSet<String>();
+
+  /**
+   * The records written while a compaction is in progress, to be appended to
+   * the compacted journal. Null when no compaction is running.
+   */
+  private ByteArrayOutputStream compactionBacklog;
+
   /**
    * To differentiate between old and current snapshots, each entry is given
    * a sequence number each time an edit is committed. A snapshot is stale if
@@ -164,16 +190,20 @@ public final class DiskLruCache implements Closeable {
       new ThreadPoolExecutor(0, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
   private final Callable<Void> cleanupCallable = new Callable<Void>() {
     public Void call() throws Exception {
+      final List<byte[]> records;
       synchronized (DiskLruCache.this) {
         if (journalWriter == null) {
           return null; // Closed.
         }
         trimToSize();
-        if (journalRebuildRequired()) {
-          rebuildJournal();
-          redundantOpCount = 0;
+        if (!journalRebuildRequired()) {
+          return null;
         }
+        records = getLiveRecords();
+        compactionBacklog = new ByteArrayOutputStream();
+        redundantOpCount = 0;
       }
+      compactJournal(records);
       return null;
     }
   };
@@ -185,6 +215,7 @@ public final class DiskLruCache implements Closeable {
     this.journalFileTmp = new File(directory, JOURNAL_FILE_TEMP);
     this.journalFileBackup = new File(directory, JOURNAL_FILE_BACKUP);
     this.valueCount = valueCount;
+    this.recordSize = 2 + MAX_KEY_LENGTH + 8 * valueCount;
     this.maxSize = maxSize;
   }
 
@@ -207,23 +238,23 @@ public final class DiskLruCache implements Closeable {
     }
 
     // If a bkp file exists, use it instead.
-    File backupFile = new File(directory, JOURNAL_FILE_BACKUP);
-    if (backupFile.exists()) {
-      File journalFile = new File(directory, JOURNAL_FILE);
-      // If journal file also exists just delete backup file.
-      if (journalFile.exists()) {
-        backupFile.delete();
-      } else {
-        renameTo(backupFile, journalFile, false);
-      }
-    }
+    restoreBackup(directory, JOURNAL_FILE, JOURNAL_FILE_BACKUP);
+    restoreBackup(directory, LEGACY_JOURNAL_FILE, LEGACY_JOURNAL_FILE_BACKUP);
 
     // Prefer to pick up where we left off.
     DiskLruCache cache = new DiskLruCache(directory, appVersion, valueCount, maxSize);
-    if (cache.journalFile.exists()) {
+    File legacyJournalFile = new File(directory, LEGACY_JOURNAL_FILE);
+    if (cache.journalFile.exists() || legacyJournalFile.exists()) {
       try {
-        cache.readJournal();
-        cache.processJournal();
+        if (cache.journalFile.exists()) {
+          cache.readJournal();
+          cache.processJournal();
+        } else {
+          cache.readLegacyJournal(legacyJournalFile);
+          cache.processJournal();
+          cache.rebuildJournal();
+        }
+        deleteIfExists(legacyJournalFile);
         return cache;
       } catch (IOException journalIsCorrupt) {
         System.out
@@ -243,16 +274,125 @@ public final class DiskLruCache implements Closeable {
     return cache;
   }
 
+  private static void restoreBackup(File directory, String journalName, String backupName)
+      throws IOException {
+    File backupFile = new File(directory, backupName);
+    if (backupFile.exists()) {
+      File journalFile = new File(directory, journalName);
+      // If journal file also exists just delete backup file.
+      if (journalFile.exists()) {
+        backupFile.delete();
+      } else {
+        renameTo(backupFile, journalFile, false);
+      }
+    }
+  }
+
   private void readJournal() throws IOException {
-    StrictLineReader reader = new StrictLineReader(new FileInputStream(journalFile), Util.US_ASCII);
+    DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(journalFile), 64 * 1024));
+    try {
+      int magic = in.readInt();
+      int version = in.readInt();
+      int appVersionValue = in.readInt();
+      int valueCountValue = in.readInt();
+      if (magic != MAGIC
+          || version != VERSION_2
+          || appVersionValue != appVersion
+          || valueCountValue != valueCount) {
+        throw new IOException("unexpected journal header: [" + Integer.toHexString(magic) + ", "
+            + version + ", " + appVersionValue + ", " + valueCountValue + "]");
+      }
+
+      byte[] record = new byte[recordSize];
+      ByteBuffer buffer = ByteBuffer.wrap(record);
+      int recordCount = 0;
+      boolean truncated = false;
+      while (true) {
+        int read = readRecord(in, record);
+        if (read == 0) {
+          break;
+        } else if (read < recordSize) {
+          truncated = true;
+          break;
+        }
+        readJournalRecord(buffer);
+        recordCount++;
+      }
+      redundantOpCount = recordCount - lruEntries.size();
+
+      // If we ended on a truncated record, rebuild the journal before appending to it.
+      if (truncated) {
+        rebuildJournal();
+      } else {
+        journalWriter = newJournalWriter();
+      }
+    } finally {
+      Util.closeQuietly(in);
+    }
+  }
+
+  /** Reads up to one record, returning the number of bytes read. */
+  private static int readRecord(InputStream in, byte[] record) throws IOException {
+    int total = 0;
+    while (total < record.length) {
+      int read = in.read(record, total, record.length - total);
+      if (read == -1) {
+        break;
+      }
+      total += read;
+    }
+    return total;
+  }
+
+  private void readJournalRecord(ByteBuffer record) throws IOException {
+    byte op = record.get(0);
+    int keyLength = record.get(1) & 0xff;
+    if (keyLength == 0 || keyLength > MAX_KEY_LENGTH) {
+      throw new IOException("unexpected journal record: key length " + keyLength);
+    }
+    String key = new String(record.array(), 2, keyLength, Util.US_ASCII);
+
+    if (op == REMOVE) {
+      lruEntries.remove(key);
+      return;
+    } else if (op == READ) {
+      // Moves the entry to the head of the LRU queue, if it still exists.
+      lruEntries.get(key);
+      return;
+    }
+
+    Entry entry = lruEntries.get(key);
+    if (entry == null) {
+      entry = new Entry(key);
+      lruEntries.put(key, entry);
+    }
+
+    if (op == CLEAN) {
+      entry.readable = true;
+      entry.currentEditor = null;
+      for (int i = 0; i < valueCount; i++) {
+        entry.lengths[i] = record.getLong(2 + MAX_KEY_LENGTH + 8 * i);
+      }
+    } else if (op == DIRTY) {
+      entry.currentEditor = new Editor(entry);
+    } else {
+      throw new IOException("unexpected journal record: op " + op);
+    }
+  }
+
+  /** Reads the text journal written by older versions of this cache. */
+  private void readLegacyJournal(File legacyJournalFile) throws IOException {
+    StrictLineReader reader =
+        new StrictLineReader(new FileInputStream(legacyJournalFile), Util.US_ASCII);
     try {
       String magic = reader.readLine();
       String version = reader.readLine();
       String appVersionString = reader.readLine();
       String valueCountString = reader.readLine();
       String blank = reader.readLine();
-      if (!MAGIC.equals(magic)
-          || !VERSION_1.equals(version)
+      if (!LEGACY_MAGIC.equals(magic)
+          || !LEGACY_VERSION_1.equals(version)
           || !Integer.toString(appVersion).equals(appVersionString)
           || !Integer.toString(valueCount).equals(valueCountString)
           || !"".equals(blank)) {
@@ -260,30 +400,19 @@ public final class DiskLruCache implements Closeable {
             + valueCountString + ", " + blank + "]");
       }
 
-      int lineCount = 0;
       while (true) {
         try {
-          readJournalLine(reader.readLine());
-          lineCount++;
+          readLegacyJournalLine(reader.readLine());
         } catch (EOFException endOfJournal) {
           break;
         }
       }
-      redundantOpCount = lineCount - lruEntries.size();
-
-      // If we ended on a truncated line, rebuild the journal before appending to it.
-      if (reader.hasUnterminatedLine()) {
-        rebuildJournal();
-      } else {
-        journalWriter = new BufferedWriter(new OutputStreamWriter(
-            new FileOutputStream(journalFile, true), Util.US_ASCII));
-      }
     } finally {
       Util.closeQuietly(reader);
     }
   }
 
-  private void readJournalLine(String line) throws IOException {
+  private void readLegacyJournalLine(String line) throws IOException {
     int firstSpace = line.indexOf(' ');
     if (firstSpace == -1) {
       throw new IOException("unexpected journal line: " + line);
@@ -294,7 +423,7 @@ public final class DiskLruCache implements Closeable {
     final String key;
     if (secondSpace == -1) {
       key = line.substring(keyBegin);
-      if (firstSpace == REMOVE.length() && line.startsWith(REMOVE)) {
+      if (firstSpace == LEGACY_REMOVE.length() && line.startsWith(LEGACY_REMOVE)) {
         lruEntries.remove(key);
         return;
       }
@@ -308,14 +437,17 @@ public final class DiskLruCache implements Closeable {
       lruEntries.put(key, entry);
     }
 
-    if (secondSpace != -1 && firstSpace == CLEAN.length() && line.startsWith(CLEAN)) {
+    if (secondSpace != -1 && firstSpace == LEGACY_CLEAN.length()
+        && line.startsWith(LEGACY_CLEAN)) {
       String[] parts = line.substring(secondSpace + 1).split(" ");
       entry.readable = true;
       entry.currentEditor = null;
       entry.setLengths(parts);
-    } else if (secondSpace == -1 && firstSpace == DIRTY.length() && line.startsWith(DIRTY)) {
+    } else if (secondSpace == -1 && firstSpace == LEGACY_DIRTY.length()
+        && line.startsWith(LEGACY_DIRTY)) {
       entry.currentEditor = new Editor(entry);
-    } else if (secondSpace == -1 && firstSpace == READ.length() && line.startsWith(READ)) {
+    } else if (secondSpace == -1 && firstSpace == LEGACY_READ.length()
+        && line.startsWith(LEGACY_READ)) {
       // This work was already done by calling lruEntries.get().
     } else {
       throw new IOException("unexpected journal line: " + line);
@@ -345,6 +477,66 @@ public final class DiskLruCache implements Closeable {
     }
   }
 
+  private OutputStream newJournalWriter() throws IOException {
+    return new BufferedOutputStream(new FileOutputStream(journalFile, true));
+  }
+
+  private void writeHeader(OutputStream out) throws IOException {
+    DataOutputStream header = new DataOutputStream(out);
+    header.writeInt(MAGIC);
+    header.writeInt(VERSION_2);
+    header.writeInt(appVersion);
+    header.writeInt(valueCount);
+    header.flush();
+  }
+
+  private byte[] newRecord(byte op, String key, long[] lengths) {
+    byte[] record = new byte[recordSize];
+    ByteBuffer buffer = ByteBuffer.wrap(record);
+    buffer.put(op);
+    buffer.put((byte) key.length());
+    buffer.put(key.getBytes(Util.US_ASCII));
+    if (lengths != null) {
+      buffer.position(2 + MAX_KEY_LENGTH);
+      for (long length : lengths) {
+        buffer.putLong(length);
+      }
+    }
+    return record;
+  }
+
+  private void writeRecord(byte op, String key, long[] lengths) throws IOException {
+    byte[] record = newRecord(op, key, lengths);
+    journalWriter.write(record);
+    if (compactionBacklog != null) {
+      compactionBacklog.write(record, 0, record.length);
+    }
+  }
+
+  /** Writes the accesses held in memory to the journal. */
+  private void writePendingReads() throws IOException {
+    for (String key : pendingReads) {
+      writeRecord(READ, key, null);
+    }
+    redundantOpCount += pendingReads.size();
+    pendingReads.clear();
+  }
+
+  /** Returns a record for every entry, least recently used first. */
+  private List<byte[]> getLiveRecords() {
+    // The entries are already in access order, so the pending reads are redundant.
+    pendingReads.clear();
+    List<byte[]> records = new ArrayList<byte[]>(lruEntries.size());
+    for (Entry entry : lruEntries.values()) {
+      if (entry.currentEditor != null) {
+        records.add(newRecord(DIRTY, entry.key, null));
+      } else {
+        records.add(newRecord(CLEAN, entry.key, entry.lengths));
+      }
+    }
+    return records;
+  }
+
   /**
    * Creates a new journal that omits redundant information. This replaces the
    * current journal if it exists.
@@ -354,38 +546,64 @@ public final class DiskLruCache implements Closeable {
       journalWriter.close();
     }
 
-    Writer writer = new BufferedWriter(
-        new OutputStreamWriter(new FileOutputStream(journalFileTmp), Util.US_ASCII));
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(journalFileTmp));
     try {
-      writer.write(MAGIC);
-      writer.write("\n");
-      writer.write(VERSION_1);
-      writer.write("\n");
-      writer.write(Integer.toString(appVersion));
-      writer.write("\n");
-      writer.write(Integer.toString(valueCount));
-      writer.write("\n");
-      writer.write("\n");
-
-      for (Entry entry : lruEntries.values()) {
-        if (entry.currentEditor != null) {
-          writer.write(DIRTY + ' ' + entry.key + '\n');
-        } else {
-          writer.write(CLEAN + ' ' + entry.key + entry.getLengths() + '\n');
-        }
+      writeHeader(out);
+      for (byte[] record : getLiveRecords()) {
+        out.write(record);
       }
     } finally {
-      writer.close();
+      out.close();
     }
 
+    swapJournal();
+  }
+
+  /**
+   * Writes a compacted journal made of {@code records} without holding the
+   * cache lock, so reads and edits carry on meanwhile. The records journaled
+   * in the meantime are appended before the compacted journal replaces the
+   * current one.
+   */
+  private void compactJournal(List<byte[]> records) throws IOException {
+    OutputStream out = null;
+    boolean written = false;
+    try {
+      out = new BufferedOutputStream(new FileOutputStream(journalFileTmp));
+      writeHeader(out);
+      for (byte[] record : records) {
+        out.write(record);
+      }
+      written = true;
+    } finally {
+      synchronized (this) {
+        try {
+          if (written && journalWriter != null) {
+            compactionBacklog.writeTo(out);
+            out.close();
+            journalWriter.close();
+            swapJournal();
+          } else {
+            Util.closeQuietly(out);
+            journalFileTmp.delete();
+          }
+        } finally {
+          compactionBacklog = null;
+          notifyAll();
+        }
+      }
+    }
+  }
+
+  /** Replaces the journal with the temporary one and reopens it for appending. */
+  private void swapJournal() throws IOException {
     if (journalFile.exists()) {
       renameTo(journalFile, journalFileBackup, true);
     }
     renameTo(journalFileTmp, journalFile, false);
     journalFileBackup.delete();
 
-    journalWriter = new BufferedWriter(
-        new OutputStreamWriter(new FileOutputStream(journalFile, true), Util.US_ASCII));
+    journalWriter = newJournalWriter();
   }
 
   private static void deleteIfExists(File file) throws IOException {
@@ -440,10 +658,14 @@ public final class DiskLruCache implements Closeable {
       return null;
     }
 
-    redundantOpCount++;
-    journalWriter.append(READ + ' ' + key + '\n');
-    if (journalRebuildRequired()) {
-      executorService.submit(cleanupCallable);
+    // The access is only journaled once a batch of them is pending.
+    pendingReads.remove(key);
+    pendingReads.add(key);
+    if (pendingReads.size() >= READ_BATCH_SIZE) {
+      writePendingReads();
+      if (journalRebuildRequired()) {
+        executorService.submit(cleanupCallable);
+      }
     }
 
     return new Snapshot(key, entry.sequenceNumber, ins, entry.lengths);
@@ -476,7 +698,7 @@ public final class DiskLruCache implements Closeable {
     entry.currentEditor = editor;
 
     // Flush the journal before creating files to prevent file leaks.
-    journalWriter.write(DIRTY + ' ' + key + '\n');
+    writeRecord(DIRTY, key, null);
     journalWriter.flush();
     return editor;
   }
@@ -552,13 +774,14 @@ public final class DiskLruCache implements Closeable {
     entry.currentEditor = null;
     if (entry.readable | success) {
       entry.readable = true;
-      journalWriter.write(CLEAN + ' ' + entry.key + entry.getLengths() + '\n');
+      writeRecord(CLEAN, entry.key, entry.lengths);
       if (success) {
         entry.sequenceNumber = nextSequenceNumber++;
       }
     } else {
       lruEntries.remove(entry.key);
-      journalWriter.write(REMOVE + ' ' + entry.key + '\n');
+      pendingReads.remove(entry.key);
+      writeRecord(REMOVE, entry.key, null);
     }
     journalWriter.flush();
 
@@ -601,8 +824,9 @@ public final class DiskLruCache implements Closeable {
     }
 
     redundantOpCount++;
-    journalWriter.append(REMOVE + ' ' + key + '\n');
+    writeRecord(REMOVE, key, null);
     lruEntries.remove(key);
+    pendingReads.remove(key);
 
     if (journalRebuildRequired()) {
       executorService.submit(cleanupCallable);
@@ -626,11 +850,13 @@ public final class DiskLruCache implements Closeable {
   public synchronized void flush() throws IOException {
     checkNotClosed();
     trimToSize();
+    writePendingReads();
     journalWriter.flush();
   }
 
   /** Closes this cache. Stored values will remain on the filesystem. */
   public synchronized void close() throws IOException {
+    awaitCompaction();
     if (journalWriter == null) {
       return; // Already closed.
     }
@@ -640,10 +866,26 @@ public final class DiskLruCache implements Closeable {
       }
     }
     trimToSize();
+    writePendingReads();
     journalWriter.close();
     journalWriter = null;
   }
 
+  /** Waits for a running compaction to swap in its journal. */
+  private void awaitCompaction() {
+    boolean interrupted = false;
+    while (compactionBacklog != null) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
   private void trimToSize() throws IOException {
     while (size > maxSize) {
       Map.Entry<String, Entry> toEvict = lruEntries.entrySet().iterator().next();
@@ -905,14 +1147,6 @@ public final class DiskLruCache implements Closeable {
       this.lengths = new long[valueCount];
     }
 
-    public String getLengths() {
-      StringBuilder result = new StringBuilder();
-      for (long size : lengths) {
-        result.append(' ').append(size);
-      }
-      return result.toString();
-    }
-
     /** Set lengths using decimal numbers like "10123". */
     private void setLengths(String[] strings) throws IOException {
       if (strings.length != valueCount) {
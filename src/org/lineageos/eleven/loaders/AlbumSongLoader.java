@@ -20,10 +20,9 @@ import android.provider.MediaStore;
 import android.provider.MediaStore.Audio.AudioColumns;
 
 import org.lineageos.eleven.model.Song;
-import org.lineageos.eleven.utils.Lists;
+import org.lineageos.eleven.model.SongList;
 import org.lineageos.eleven.utils.PreferenceUtils;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -34,11 +33,6 @@ import java.util.List;
  */
 public class AlbumSongLoader extends WrappedAsyncTaskLoader<List<Song>> {
 
-    /**
-     * The result
-     */
-    private final ArrayList<Song> mSongList = Lists.newArrayList();
-
     /**
      * The Id of the album the songs belong to.
      */
@@ -62,6 +56,8 @@ public class AlbumSongLoader extends WrappedAsyncTaskLoader<List<Song>> {
     public List<Song> loadInBackground() {
         // Create the Cursor
         Cursor cursor = makeAlbumSongCursor(getContext(), mAlbumID);
+        // Create a new list each load, the adapter keeps the previous one
+        final SongList songList = new SongList(cursor != null ? cursor.getCount() : 0);
         // Gather the data
         if (cursor != null && cursor.moveToFirst()) {
             do {
@@ -86,11 +82,8 @@ public class AlbumSongLoader extends WrappedAsyncTaskLoader<List<Song>> {
                 // Grab the Song Year
                 final int year = cursor.getInt(5);
 
-                // Create a new song
-                final Song song = new Song(id, songName, artist, album, mAlbumID, seconds, year);
-
                 // Add everything up
-                mSongList.add(song);
+                songList.add(id, songName, artist, album, mAlbumID, seconds, year, null);
             } while (cursor.moveToNext());
         }
         // Close the cursor
@@ -98,7 +91,8 @@ public class AlbumSongLoader extends WrappedAsyncTaskLoader<List<Song>> {
             cursor.close();
             cursor = null;
         }
-        return mSongList;
+        songList.trimToSize();
+        return songList;
     }
 
     /**
@@ -20,11 +20,10 @@ import android.provider.MediaStore;
 import android.provider.MediaStore.Audio.AudioColumns;
 
 import org.lineageos.eleven.model.Song;
+import org.lineageos.eleven.model.SongList;
 import org.lineageos.eleven.sectionadapter.SectionCreator;
-import org.lineageos.eleven.utils.Lists;
 import org.lineageos.eleven.utils.PreferenceUtils;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -34,11 +33,6 @@ import java.util.List;
  * @author Andrew Neal (andrewdneal@gmail.com)
  */
 public class LastAddedLoader extends SectionCreator.SimpleListLoader<Song> {
-    /**
-     * The result
-     */
-    private final ArrayList<Song> mSongList = Lists.newArrayList();
-
     /**
      * Constructor of <code>LastAddedHandler</code>
      *
@@ -55,6 +49,8 @@ public class LastAddedLoader extends SectionCreator.SimpleListLoader<Song> {
     public List<Song> loadInBackground() {
         // Create the xCursor
         Cursor cursor = makeLastAddedCursor(getContext());
+        // Create a new list each load, the adapter keeps the previous one
+        final SongList songList = new SongList(cursor != null ? cursor.getCount() : 0);
         // Gather the data
         if (cursor != null && cursor.moveToFirst()) {
             do {
@@ -82,11 +78,8 @@ public class LastAddedLoader extends SectionCreator.SimpleListLoader<Song> {
                 // Grab the Song Year
                 final int year = cursor.getInt(6);
 
-                // Create a new song
-                final Song song = new Song(id, songName, artist, album, albumId, durationInSecs, year);
-
                 // Add everything up
-                mSongList.add(song);
+                songList.add(id, songName, artist, album, albumId, durationInSecs, year, null);
             } while (cursor.moveToNext());
         }
         // Close the cursor
@@ -94,7 +87,8 @@ public class LastAddedLoader extends SectionCreator.SimpleListLoader<Song> {
             cursor.close();
             cursor = null;
         }
-        return mSongList;
+        songList.trimToSize();
+        return songList;
     }
 
     /**
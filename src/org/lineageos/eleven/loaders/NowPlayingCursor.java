@@ -7,11 +7,19 @@ import android.annotation.SuppressLint;
 import android.content.Context;
 import android.database.AbstractCursor;
 import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
 import android.os.RemoteException;
 import android.provider.BaseColumns;
-import android.provider.MediaStore;
 import android.provider.MediaStore.Audio.AudioColumns;
+import android.util.LongSparseArray;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
 
+import org.lineageos.eleven.cache.TrackMetadataCache;
+import org.lineageos.eleven.cache.TrackMetadataCache.TrackMetadata;
 import org.lineageos.eleven.utils.MusicUtils;
 
 import java.util.Arrays;
@@ -19,6 +27,16 @@ import java.util.Arrays;
 /**
  * A custom {@link Cursor} used to return the queue and allow for easy dragging
  * and dropping of the items in it.
+ *
+ * Only the ids of the queue are fetched up front. The track metadata is queried in windows of
+ * {@link #WINDOW_SIZE} positions when a position of the window is first visited, the next window
+ * in the scroll direction is prefetched in the background and the windows farthest from the
+ * current position are evicted once more than {@link #MAX_WINDOWS} are loaded. Opening a huge
+ * queue therefore costs about the same as opening a small one.
+ *
+ * When used from the UI thread, {@link #setLoadWindowsAsync(boolean)} makes the positions of a
+ * window that isn't loaded yet show a placeholder row with only the track id, the window is
+ * loaded in the background and the data set observers are notified once it is.
  */
 @SuppressLint("NewApi")
 public class NowPlayingCursor extends AbstractCursor {
@@ -40,18 +58,85 @@ public class NowPlayingCursor extends AbstractCursor {
             AudioColumns.YEAR,
     };
 
-    private final Context mContext;
+    /* number of queue positions whose metadata is loaded by a single query */
+    private static final int WINDOW_SIZE = 100;
+
+    /* number of windows kept in memory */
+    private static final int MAX_WINDOWS = 5;
+
+    /* the next window is prefetched once the position is this close to it */
+    private static final int PREFETCH_DISTANCE = WINDOW_SIZE / 4;
+
+    private static Handler sPrefetchHandler;
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
 
-    private long[] mNowPlaying;
+    private final Context mContext;
 
-    private long[] mCursorIndexes;
+    /* replaced rather than edited, so the prefetch thread always sees a consistent queue */
+    private volatile long[] mNowPlaying;
 
-    private int mSize;
+    /* read by the prefetch thread as well */
+    private volatile int mSize;
 
     private int mCurPos;
 
+    /* the row of the current position, null if the track isn't in the media store */
     private Cursor mQueueCursor;
 
+    /* the loaded windows by window index, guarded by itself */
+    private final SparseArray<Window> mWindows = new SparseArray<>();
+
+    /* the window waiting to be prefetched, or -1 */
+    private volatile int mPrefetchWindow = -1;
+
+    private volatile boolean mClosed;
+
+    /* whether missing windows are loaded in the background instead of on the calling thread */
+    private boolean mLoadWindowsAsync;
+
+    /* the windows being loaded in the background, guarded by mWindows */
+    private final SparseBooleanArray mPendingWindows = new SparseBooleanArray();
+
+    /**
+     * The metadata of the tracks of a range of queue positions
+     */
+    private static final class Window {
+        /* the ids that were queried, sorted */
+        private final long[] mRequestedIds;
+
+        /* the rows found, ordered by id, and the id of each row */
+        private final Cursor mCursor;
+        private final long[] mCursorIds;
+
+        private Window(final long[] requestedIds, final Cursor cursor, final long[] cursorIds) {
+            mRequestedIds = requestedIds;
+            mCursor = cursor;
+            mCursorIds = cursorIds;
+        }
+
+        /**
+         * @return the cursor moved to the row of the id, or null if the window doesn't have it
+         */
+        private Cursor moveToId(final long id) {
+            final int row = Arrays.binarySearch(mCursorIds, id);
+            if (row < 0 || !mCursor.moveToPosition(row)) {
+                return null;
+            }
+            return mCursor;
+        }
+
+        private boolean wasRequested(final long id) {
+            return Arrays.binarySearch(mRequestedIds, id) >= 0;
+        }
+
+        private void close() {
+            if (mCursor != null) {
+                mCursor.close();
+            }
+        }
+    }
+
     /**
      * Constructor of <code>NowPlayingCursor</code>
      *
@@ -79,14 +164,34 @@ public class NowPlayingCursor extends AbstractCursor {
             return true;
         }
 
-        if (mNowPlaying == null || mCursorIndexes == null || newPosition >= mNowPlaying.length) {
+        final long[] nowPlaying = mNowPlaying;
+        if (nowPlaying == null || newPosition < 0 || newPosition >= nowPlaying.length) {
             return false;
         }
 
-        final long id = mNowPlaying[newPosition];
-        final int cursorIndex = Arrays.binarySearch(mCursorIndexes, id);
-        mQueueCursor.moveToPosition(cursorIndex);
+        final long id = nowPlaying[newPosition];
+        final int windowIndex = newPosition / WINDOW_SIZE;
+        final Window window = mLoadWindowsAsync ? getLoadedWindow(windowIndex)
+                : getWindow(windowIndex);
+        mQueueCursor = window != null ? window.moveToId(id) : null;
+        if (mQueueCursor == null && (window == null || !window.wasRequested(id))) {
+            // the window isn't loaded yet or the queue was edited since it was loaded, check
+            // the other windows before (re)loading this one
+            mQueueCursor = findLoadedRow(id);
+            if (mQueueCursor == null) {
+                removeWindow(windowIndex);
+                if (mLoadWindowsAsync) {
+                    loadWindowAsync(windowIndex);
+                    mQueueCursor = makePlaceholderRow(id);
+                } else {
+                    mQueueCursor = getWindow(windowIndex).moveToId(id);
+                }
+            }
+        }
         mCurPos = newPosition;
+
+        trimWindows(windowIndex);
+        prefetch(oldPosition, newPosition);
         return true;
     }
 
@@ -108,7 +213,12 @@ public class NowPlayingCursor extends AbstractCursor {
      */
     @Override
     public short getShort(final int column) {
-        return mQueueCursor.getShort(column);
+        try {
+            return mQueueCursor.getShort(column);
+        } catch (final Exception ignored) {
+            onChange(true);
+            return 0;
+        }
     }
 
     /**
@@ -142,7 +252,12 @@ public class NowPlayingCursor extends AbstractCursor {
      */
     @Override
     public float getFloat(final int column) {
-        return mQueueCursor.getFloat(column);
+        try {
+            return mQueueCursor.getFloat(column);
+        } catch (final Exception ignored) {
+            onChange(true);
+            return 0;
+        }
     }
 
     /**
@@ -150,7 +265,12 @@ public class NowPlayingCursor extends AbstractCursor {
      */
     @Override
     public double getDouble(final int column) {
-        return mQueueCursor.getDouble(column);
+        try {
+            return mQueueCursor.getDouble(column);
+        } catch (final Exception ignored) {
+            onChange(true);
+            return 0;
+        }
     }
 
     /**
@@ -158,7 +278,12 @@ public class NowPlayingCursor extends AbstractCursor {
      */
     @Override
     public int getType(final int column) {
-        return mQueueCursor.getType(column);
+        try {
+            return mQueueCursor.getType(column);
+        } catch (final Exception ignored) {
+            onChange(true);
+            return FIELD_TYPE_NULL;
+        }
     }
 
     /**
@@ -166,7 +291,12 @@ public class NowPlayingCursor extends AbstractCursor {
      */
     @Override
     public boolean isNull(final int column) {
-        return mQueueCursor.isNull(column);
+        try {
+            return mQueueCursor.isNull(column);
+        } catch (final Exception ignored) {
+            onChange(true);
+            return true;
+        }
     }
 
     /**
@@ -183,9 +313,9 @@ public class NowPlayingCursor extends AbstractCursor {
     @SuppressWarnings("deprecation")
     @Override
     public void deactivate() {
-        if (mQueueCursor != null) {
-            mQueueCursor.deactivate();
-        }
+        // the windows are loaded again when needed
+        clearWindows();
+        mQueueCursor = null;
     }
 
     /**
@@ -202,74 +332,332 @@ public class NowPlayingCursor extends AbstractCursor {
      */
     @Override
     public void close() {
+        mClosed = true;
         try {
-            if (mQueueCursor != null) {
-                mQueueCursor.close();
-                mQueueCursor = null;
-            }
+            clearWindows();
+            mQueueCursor = null;
         } catch (final Exception close) {
         }
         super.close();
     };
 
+    /**
+     * Loads the metadata around a position ahead of time, without moving the cursor. Can be
+     * called from any thread.
+     *
+     * @param position the queue position
+     */
+    public void preloadWindow(final int position) {
+        if (position >= 0 && position < mSize) {
+            getWindow(position / WINDOW_SIZE);
+        }
+    }
+
+    /**
+     * @param async true to show placeholder rows while the windows are loaded in the
+     *              background, for a cursor read from the UI thread
+     */
+    public void setLoadWindowsAsync(final boolean async) {
+        mLoadWindowsAsync = async;
+    }
+
+    /**
+     * @param position the queue position
+     * @return the id of the track at the position, without loading its metadata
+     */
+    public long getTrackId(final int position) {
+        return mNowPlaying[position];
+    }
+
     /**
      * Actually makes the queue
      */
     private void makeNowPlayingCursor() {
+        clearWindows();
         mQueueCursor = null;
         mNowPlaying = MusicUtils.getQueue();
         mSize = mNowPlaying.length;
-        if (mSize == 0) {
-            return;
+        mCurPos = -1;
+    }
+
+    /**
+     * @param windowIndex the index of the window
+     * @return the window, loading it if needed
+     */
+    private Window getWindow(final int windowIndex) {
+        synchronized (mWindows) {
+            final Window window = mWindows.get(windowIndex);
+            if (window != null) {
+                return window;
+            }
         }
 
-        final StringBuilder selection = new StringBuilder();
-        selection.append(MediaStore.Audio.Media._ID + " IN (");
-        for (int i = 0; i < mSize; i++) {
-            selection.append(mNowPlaying[i]);
-            if (i < mSize - 1) {
-                selection.append(",");
+        final Window loaded = loadWindow(windowIndex);
+        synchronized (mWindows) {
+            final Window window = mWindows.get(windowIndex);
+            if (window != null || mClosed) {
+                // loaded by another thread in the meantime
+                loaded.close();
+                return window != null ? window : loaded;
             }
+            mWindows.put(windowIndex, loaded);
+            return loaded;
         }
-        selection.append(")");
+    }
 
-        mQueueCursor = mContext.getContentResolver().query(
-                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, PROJECTION, selection.toString(),
-                null, MediaStore.Audio.Media._ID);
+    /**
+     * @param windowIndex the index of the window
+     * @return the window, or null if it isn't loaded
+     */
+    private Window getLoadedWindow(final int windowIndex) {
+        synchronized (mWindows) {
+            return mWindows.get(windowIndex);
+        }
+    }
 
-        if (mQueueCursor == null) {
-            mSize = 0;
+    /**
+     * Loads a window in the background and notifies the data set observers once it is loaded
+     */
+    private void loadWindowAsync(final int windowIndex) {
+        synchronized (mWindows) {
+            if (mPendingWindows.get(windowIndex)) {
+                return;
+            }
+            mPendingWindows.put(windowIndex, true);
+        }
+
+        getPrefetchHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                if (!mClosed && windowIndex * WINDOW_SIZE < mSize) {
+                    getWindow(windowIndex);
+                }
+                synchronized (mWindows) {
+                    mPendingWindows.delete(windowIndex);
+                }
+                sMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!mClosed) {
+                            // the next move must not keep showing the placeholder row
+                            moveToPosition(-1);
+                            mDataSetObservable.notifyChanged();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @return a row with only the id of the track, shown until its window is loaded
+     */
+    private Cursor makePlaceholderRow(final long id) {
+        final MatrixCursor cursor = new MatrixCursor(PROJECTION, 1);
+        cursor.addRow(new Object[] { id, "", "", -1L, "", 0L, 0 });
+        cursor.moveToFirst();
+        return cursor;
+    }
+
+    private Window loadWindow(final int windowIndex) {
+        final long[] nowPlaying = mNowPlaying;
+        final int start = Math.min(windowIndex * WINDOW_SIZE, nowPlaying.length);
+        final int end = Math.min(start + WINDOW_SIZE, nowPlaying.length);
+        final long[] requestedIds = Arrays.copyOfRange(nowPlaying, start, end);
+        Arrays.sort(requestedIds);
+
+        final LongSparseArray<TrackMetadata> tracks =
+                TrackMetadataCache.getInstance(mContext).getAll(requestedIds);
+
+        // the rows are added ordered by id, tracks.keyAt() is sorted
+        final MatrixCursor cursor = new MatrixCursor(PROJECTION, tracks.size());
+        final long[] cursorIds = new long[tracks.size()];
+        for (int i = 0; i < tracks.size(); i++) {
+            final TrackMetadata track = tracks.valueAt(i);
+            cursorIds[i] = track.mId;
+            cursor.addRow(new Object[] {
+                    track.mId,
+                    track.mTitle,
+                    track.mArtistName,
+                    track.mAlbumId,
+                    track.mAlbumName,
+                    track.mDuration,
+                    track.mYear
+            });
+        }
+
+        if (cursorIds.length < requestedIds.length) {
+            removeMissingTracks(requestedIds, cursorIds);
+        }
+        return new Window(requestedIds, cursor, cursorIds);
+    }
+
+    /**
+     * Removes the tracks that are gone from the media store from the queue
+     */
+    private void removeMissingTracks(final long[] requestedIds, final long[] cursorIds) {
+        final long[] missingIds = new long[requestedIds.length];
+        int count = 0;
+        for (final long id : requestedIds) {
+            if (Arrays.binarySearch(cursorIds, id) < 0) {
+                missingIds[count++] = id;
+            }
+        }
+        if (count == 0) {
+            // only duplicates in the queue
             return;
         }
 
-        final int playlistSize = mQueueCursor.getCount();
-        mCursorIndexes = new long[playlistSize];
-        mQueueCursor.moveToFirst();
-        final int columnIndex = mQueueCursor.getColumnIndexOrThrow(MediaStore.Audio.Media._ID);
-        for (int i = 0; i < playlistSize; i++) {
-            mCursorIndexes[i] = mQueueCursor.getLong(columnIndex);
-            mQueueCursor.moveToNext();
+        final int missingCount = count;
+        getPrefetchHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < missingCount; i++) {
+                    MusicUtils.removeTrack(missingIds[i]);
+                }
+            }
+        });
+    }
+
+    private Cursor findLoadedRow(final long id) {
+        synchronized (mWindows) {
+            for (int i = 0; i < mWindows.size(); i++) {
+                final Cursor cursor = mWindows.valueAt(i).moveToId(id);
+                if (cursor != null) {
+                    return cursor;
+                }
+            }
         }
-        mQueueCursor.moveToFirst();
-        mCurPos = -1;
+        return null;
+    }
 
-        int removed = 0;
-        for (int i = mNowPlaying.length - 1; i >= 0; i--) {
-            final long trackId = mNowPlaying[i];
-            final int cursorIndex = Arrays.binarySearch(mCursorIndexes, trackId);
-            if (cursorIndex < 0) {
-                removed += MusicUtils.removeTrack(trackId);
+    private void removeWindow(final int windowIndex) {
+        synchronized (mWindows) {
+            final Window window = mWindows.get(windowIndex);
+            if (window != null) {
+                mWindows.remove(windowIndex);
+                window.close();
             }
         }
-        if (removed > 0) {
-            mNowPlaying = MusicUtils.getQueue();
-            mSize = mNowPlaying.length;
-            if (mSize == 0) {
-                mCursorIndexes = null;
+    }
+
+    /**
+     * Evicts the windows farthest from the current one until at most MAX_WINDOWS are left
+     */
+    private void trimWindows(final int currentIndex) {
+        synchronized (mWindows) {
+            while (mWindows.size() > MAX_WINDOWS) {
+                int farthest = 0;
+                for (int i = 1; i < mWindows.size(); i++) {
+                    if (Math.abs(mWindows.keyAt(i) - currentIndex)
+                            > Math.abs(mWindows.keyAt(farthest) - currentIndex)) {
+                        farthest = i;
+                    }
+                }
+                mWindows.valueAt(farthest).close();
+                mWindows.removeAt(farthest);
             }
         }
     }
 
+    private void clearWindows() {
+        synchronized (mWindows) {
+            for (int i = 0; i < mWindows.size(); i++) {
+                mWindows.valueAt(i).close();
+            }
+            mWindows.clear();
+        }
+    }
+
+    /**
+     * Loads the next window in the scroll direction in the background once the position gets
+     * close to it
+     */
+    private void prefetch(final int oldPosition, final int newPosition) {
+        final int windowIndex = newPosition / WINDOW_SIZE;
+        final int offset = newPosition % WINDOW_SIZE;
+        final int target;
+        if (newPosition > oldPosition && offset >= WINDOW_SIZE - PREFETCH_DISTANCE) {
+            target = windowIndex + 1;
+        } else if (newPosition < oldPosition && offset < PREFETCH_DISTANCE) {
+            target = windowIndex - 1;
+        } else {
+            return;
+        }
+
+        if (target < 0 || target * WINDOW_SIZE >= mSize || target == mPrefetchWindow) {
+            return;
+        }
+        synchronized (mWindows) {
+            if (mWindows.get(target) != null) {
+                return;
+            }
+        }
+
+        mPrefetchWindow = target;
+        getPrefetchHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                if (!mClosed) {
+                    getWindow(target);
+                }
+                mPrefetchWindow = -1;
+            }
+        });
+    }
+
+    private static synchronized Handler getPrefetchHandler() {
+        if (sPrefetchHandler == null) {
+            final HandlerThread thread = new HandlerThread("NowPlayingPrefetch",
+                    android.os.Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            sPrefetchHandler = new Handler(thread.getLooper());
+        }
+        return sPrefetchHandler;
+    }
+
+    /**
+     * Mirrors a removal already made to the service queue until the cursor is reloaded
+     *
+     * @param which The position that was removed
+     */
+    public void onItemRemoved(final int which) {
+        final long[] nowPlaying = mNowPlaying;
+        if (which < 0 || which >= nowPlaying.length) {
+            return;
+        }
+        final long[] updated = new long[nowPlaying.length - 1];
+        System.arraycopy(nowPlaying, 0, updated, 0, which);
+        System.arraycopy(nowPlaying, which + 1, updated, which, updated.length - which);
+        mNowPlaying = updated;
+        mSize = updated.length;
+        onMove(-1, mCurPos);
+    }
+
+    /**
+     * Mirrors a move already made in the service queue until the cursor is reloaded
+     *
+     * @param from The position the track was moved from
+     * @param to The position the track was moved to
+     */
+    public void onItemMoved(final int from, final int to) {
+        final long[] nowPlaying = mNowPlaying;
+        if (from == to || from < 0 || to < 0 || from >= nowPlaying.length
+                || to >= nowPlaying.length) {
+            return;
+        }
+        final long[] updated = Arrays.copyOf(nowPlaying, nowPlaying.length);
+        final long id = updated[from];
+        if (from < to) {
+            System.arraycopy(updated, from + 1, updated, from, to - from);
+        } else {
+            System.arraycopy(updated, to, updated, to + 1, from - to);
+        }
+        updated[to] = id;
+        mNowPlaying = updated;
+        onMove(-1, mCurPos);
+    }
+
     /**
      * @param which The position to remove
      * @return True if sucessfull, false othersise
@@ -279,13 +667,7 @@ public class NowPlayingCursor extends AbstractCursor {
             if (mService.removeTracks(which, which) == 0) {
                 return false;
             }
-            int i = which;
-            mSize--;
-            while (i < mSize) {
-                mNowPlaying[i] = mNowPlaying[i + 1];
-                i++;
-            }
-            onMove(-1, mCurPos);
+            onItemRemoved(which);
         } catch (final RemoteException ignored) {
         }
         return true;
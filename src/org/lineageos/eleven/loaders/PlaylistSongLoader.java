@@ -25,7 +25,7 @@ import android.provider.MediaStore.Audio.Playlists;
 import android.util.Log;
 
 import org.lineageos.eleven.model.Song;
-import org.lineageos.eleven.utils.Lists;
+import org.lineageos.eleven.model.SongList;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -39,11 +39,6 @@ import java.util.List;
 public class PlaylistSongLoader extends WrappedAsyncTaskLoader<List<Song>> {
     private static final String TAG = PlaylistSongLoader.class.getSimpleName();
 
-    /**
-     * The result
-     */
-    private final ArrayList<Song> mSongList = Lists.newArrayList();
-
     /**
      * The Id of the playlist the songs belong to.
      */
@@ -114,45 +109,47 @@ public class PlaylistSongLoader extends WrappedAsyncTaskLoader<List<Song>> {
             }
         }
 
+        // Create a new list each load, the adapter keeps the previous one
+        final SongList songList = new SongList(cursor != null ? cursor.getCount() : 0);
+
         // Gather the data
         if (cursor != null && cursor.moveToFirst()) {
+            // Look up the columns once instead of for every song
+            final int idCol = cursor.getColumnIndexOrThrow(
+                    MediaStore.Audio.Playlists.Members.AUDIO_ID);
+            final int titleCol = cursor.getColumnIndexOrThrow(AudioColumns.TITLE);
+            final int artistCol = cursor.getColumnIndexOrThrow(AudioColumns.ARTIST);
+            final int albumIdCol = cursor.getColumnIndexOrThrow(AudioColumns.ALBUM_ID);
+            final int albumCol = cursor.getColumnIndexOrThrow(AudioColumns.ALBUM);
+            final int durationCol = cursor.getColumnIndexOrThrow(AudioColumns.DURATION);
+            final int yearCol = cursor.getColumnIndexOrThrow(AudioColumns.YEAR);
             do {
                 // Copy the song Id
-                final long id = cursor.getLong(cursor
-                        .getColumnIndexOrThrow(MediaStore.Audio.Playlists.Members.AUDIO_ID));
+                final long id = cursor.getLong(idCol);
 
                 // Copy the song name
-                final String songName = cursor.getString(cursor
-                        .getColumnIndexOrThrow(AudioColumns.TITLE));
+                final String songName = cursor.getString(titleCol);
 
                 // Copy the artist name
-                final String artist = cursor.getString(cursor
-                        .getColumnIndexOrThrow(AudioColumns.ARTIST));
+                final String artist = cursor.getString(artistCol);
 
                 // Copy the album id
-                final long albumId = cursor.getLong(cursor
-                        .getColumnIndexOrThrow(AudioColumns.ALBUM_ID));
+                final long albumId = cursor.getLong(albumIdCol);
 
                 // Copy the album name
-                final String album = cursor.getString(cursor
-                        .getColumnIndexOrThrow(AudioColumns.ALBUM));
+                final String album = cursor.getString(albumCol);
 
                 // Copy the duration
-                final long duration = cursor.getLong(cursor
-                        .getColumnIndexOrThrow(AudioColumns.DURATION));
+                final long duration = cursor.getLong(durationCol);
 
                 // Convert the duration into seconds
                 final int durationInSecs = (int) duration / 1000;
 
                 // Grab the Song Year
-                final int year = cursor.getInt(cursor
-                        .getColumnIndexOrThrow(AudioColumns.YEAR));
-
-                // Create a new song
-                final Song song = new Song(id, songName, artist, album, albumId, durationInSecs, year);
+                final int year = cursor.getInt(yearCol);
 
                 // Add everything up
-                mSongList.add(song);
+                songList.add(id, songName, artist, album, albumId, durationInSecs, year, null);
             } while (cursor.moveToNext());
         }
         // Close the cursor
@@ -160,7 +157,8 @@ public class PlaylistSongLoader extends WrappedAsyncTaskLoader<List<Song>> {
             cursor.close();
             cursor = null;
         }
-        return mSongList;
+        songList.trimToSize();
+        return songList;
     }
 
     /**
@@ -16,23 +16,15 @@ package org.lineageos.eleven.loaders;
 import android.content.Context;
 import android.database.Cursor;
 
-import org.lineageos.eleven.model.Song;
-import org.lineageos.eleven.utils.Lists;
-
-import java.util.ArrayList;
-import java.util.List;
+import org.lineageos.eleven.utils.MusicUtils;
 
 /**
- * Used to return the current playlist or queue.
+ * Used to return the current playlist or queue. The returned cursor loads the track metadata
+ * lazily, only the rows at the top of the list and around the current track are loaded here.
  *
  * @author Andrew Neal (andrewdneal@gmail.com)
  */
-public class QueueLoader extends WrappedAsyncTaskLoader<List<Song>> {
-
-    /**
-     * The result
-     */
-    private final ArrayList<Song> mSongList = Lists.newArrayList();
+public class QueueLoader extends WrappedAsyncTaskLoader<NowPlayingCursor> {
 
     /**
      * Constructor of <code>QueueLoader</code>
@@ -47,49 +39,24 @@ public class QueueLoader extends WrappedAsyncTaskLoader<List<Song>> {
      * {@inheritDoc}
      */
     @Override
-    public List<Song> loadInBackground() {
+    public NowPlayingCursor loadInBackground() {
         // Create the Cursor
-        NowPlayingCursor cursor = new NowPlayingCursor(getContext());
-        // Gather the data
-        if (cursor != null && cursor.moveToFirst()) {
-            do {
-                // Copy the song Id
-                final long id = cursor.getLong(0);
-
-                // Copy the song name
-                final String songName = cursor.getString(1);
-
-                // Copy the artist name
-                final String artist = cursor.getString(2);
-
-                // Copy the album id
-                final long albumId = cursor.getLong(3);
-
-                // Copy the album name
-                final String album = cursor.getString(4);
-
-                // Copy the duration
-                final long duration = cursor.getLong(5);
-
-                // Convert the duration into seconds
-                final int durationInSecs = (int) duration / 1000;
-
-                // Copy the year
-                final int year = cursor.getInt(6);
-
-                // Create a new song
-                final Song song = new Song(id, songName, artist, album, albumId, durationInSecs, year);
+        final NowPlayingCursor cursor = new NowPlayingCursor(getContext());
+        // Load the rows likely to be shown first
+        cursor.preloadWindow(0);
+        cursor.preloadWindow(MusicUtils.getQueuePosition());
+        return cursor;
+    }
 
-                // Add everything up
-                mSongList.add(song);
-            } while (cursor.moveToNext());
-        }
-        // Close the cursor
-        if (cursor != null) {
-            cursor.close();
-            cursor = null;
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onCanceled(final NowPlayingCursor data) {
+        // the cursor never reached the adapter, so nothing else will close it
+        if (data != null) {
+            data.close();
         }
-        return mSongList;
     }
 
     /**
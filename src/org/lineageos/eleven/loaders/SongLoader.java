@@ -20,15 +20,15 @@ import android.provider.MediaStore.Audio;
 import android.text.TextUtils;
 
 import org.lineageos.eleven.model.Song;
+import org.lineageos.eleven.model.SongList;
 import org.lineageos.eleven.provider.LocalizedStore;
 import org.lineageos.eleven.provider.LocalizedStore.SortParameter;
 import org.lineageos.eleven.sectionadapter.SectionCreator;
-import org.lineageos.eleven.utils.Lists;
+import org.lineageos.eleven.utils.IdSetQuery;
 import org.lineageos.eleven.utils.MusicUtils;
 import org.lineageos.eleven.utils.PreferenceUtils;
 import org.lineageos.eleven.utils.SortOrder;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -40,9 +40,26 @@ import java.util.List;
 public class SongLoader extends SectionCreator.SimpleListLoader<Song> {
 
     /**
-     * The result
+     * The number of songs shown before the whole list is loaded, about a screenful
      */
-    protected ArrayList<Song> mSongList = Lists.newArrayList();
+    private static final int FIRST_SONGS = 32;
+
+    private static final String[] PROJECTION = new String[] {
+            /* 0 */
+            Audio.Media._ID,
+            /* 1 */
+            Audio.Media.TITLE,
+            /* 2 */
+            Audio.Media.ARTIST,
+            /* 3 */
+            Audio.Media.ALBUM_ID,
+            /* 4 */
+            Audio.Media.ALBUM,
+            /* 5 */
+            Audio.Media.DURATION,
+            /* 6 */
+            Audio.Media.YEAR,
+    };
 
     /**
      * Additional selection filter
@@ -71,11 +88,30 @@ public class SongLoader extends SectionCreator.SimpleListLoader<Song> {
      */
     @Override
     public List<Song> loadInBackground() {
-        // Create the Cursor
-        Cursor cursor = getCursor();
+        // Show the first songs while the whole list is queried and sorted
+        if (wantsPartialResult()) {
+            final Cursor firstCursor = getFirstCursor(FIRST_SONGS);
+            if (firstCursor != null) {
+                deliverPartialItems(readSongs(firstCursor));
+            }
+        }
+
+        return readSongs(getCursor());
+    }
+
+    /**
+     * Reads the songs of a cursor and closes it
+     * @param cursor the cursor, or null
+     * @return the songs
+     */
+    private static SongList readSongs(Cursor cursor) {
+        // Create a new list each load, the adapter keeps the previous one
+        final SongList songList = new SongList(cursor != null ? cursor.getCount() : 0);
 
         // Gather the data
         if (cursor != null && cursor.moveToFirst()) {
+            final SortedCursor sortedCursor = cursor instanceof SortedCursor
+                    ? (SortedCursor) cursor : null;
             do {
                 // Copy the song Id
                 final long id = cursor.getLong(0);
@@ -101,15 +137,13 @@ public class SongLoader extends SectionCreator.SimpleListLoader<Song> {
                 // Copy the Year
                 final int year = cursor.getInt(6);
 
-                // Create a new song
-                final Song song = new Song(id, songName, artist, album, albumId,
-                                            durationInSecs, year);
+                // Copy the bucket label
+                final String bucketLabel = sortedCursor != null
+                        ? (String) sortedCursor.getExtraData() : null;
 
-                if (cursor instanceof SortedCursor) {
-                    song.mBucketLabel = (String)((SortedCursor)cursor).getExtraData();
-                }
-
-                mSongList.add(song);
+                // Add the song
+                songList.add(id, songName, artist, album, albumId, durationInSecs, year,
+                        bucketLabel);
             } while (cursor.moveToNext());
         }
         // Close the cursor
@@ -118,7 +152,8 @@ public class SongLoader extends SectionCreator.SimpleListLoader<Song> {
             cursor = null;
         }
 
-        return mSongList;
+        songList.trimToSize();
+        return songList;
     }
 
     /**
@@ -129,6 +164,16 @@ public class SongLoader extends SectionCreator.SimpleListLoader<Song> {
         return makeSongCursor(mContext, mSelection);
     }
 
+    /**
+     * Gets a cursor of only the first songs of {@link #getCursor()}, if they can be queried
+     * faster than the whole list - can be overriden
+     * @param count the number of songs
+     * @return the cursor, or null to wait for the whole list
+     */
+    protected Cursor getFirstCursor(int count) {
+        return TextUtils.isEmpty(mSelection) ? makeFirstSongsCursor(mContext, count) : null;
+    }
+
     /**
      * For string-based sorts, return the localized store sort parameter, otherwise return null
      * @param sortOrder the song ordering preference selected by the user
@@ -178,22 +223,7 @@ public class SongLoader extends SectionCreator.SimpleListLoader<Song> {
         final String songSortOrder = PreferenceUtils.getInstance(context).getSongSortOrder();
 
         Cursor cursor = context.getContentResolver().query(Audio.Media.EXTERNAL_CONTENT_URI,
-                new String[] {
-                        /* 0 */
-                        Audio.Media._ID,
-                        /* 1 */
-                        Audio.Media.TITLE,
-                        /* 2 */
-                        Audio.Media.ARTIST,
-                        /* 3 */
-                        Audio.Media.ALBUM_ID,
-                        /* 4 */
-                        Audio.Media.ALBUM,
-                        /* 5 */
-                        Audio.Media.DURATION,
-                        /* 6 */
-                        Audio.Media.YEAR,
-                }, selectionStatement, null, songSortOrder);
+                PROJECTION, selectionStatement, null, songSortOrder);
 
         // if our sort is a localized-based sort, grab localized data from the store
         final SortParameter sortParameter = getSortParameter(songSortOrder);
@@ -205,4 +235,32 @@ public class SongLoader extends SectionCreator.SimpleListLoader<Song> {
 
         return cursor;
     }
+
+    /**
+     * Creates a {@link Cursor} of the first songs in the localized sort order, read from the
+     * sort tables, so they can be shown before the whole library is queried and sorted
+     *
+     * @param context The {@link Context} to use.
+     * @param count The number of songs
+     * @return The {@link Cursor}, or null if the sort order isn't a localized one
+     */
+    public static final Cursor makeFirstSongsCursor(final Context context, final int count) {
+        final String songSortOrder = PreferenceUtils.getInstance(context).getSongSortOrder();
+        final SortParameter sortParameter = getSortParameter(songSortOrder);
+        if (sortParameter == null) {
+            return null;
+        }
+
+        final boolean descending = MusicUtils.isSortOrderDesending(songSortOrder);
+        return LocalizedStore.getInstance(context).getLocalizedSortHead(count, Audio.Media._ID,
+                SortParameter.Song, sortParameter, descending, new IdSetQuery.ChunkQuery() {
+                    @Override
+                    public Cursor query(String selection) {
+                        return context.getContentResolver().query(
+                                Audio.Media.EXTERNAL_CONTENT_URI, PROJECTION,
+                                MusicUtils.MUSIC_ONLY_SELECTION + " AND " + selection, null,
+                                Audio.Media._ID);
+                    }
+                });
+    }
 }
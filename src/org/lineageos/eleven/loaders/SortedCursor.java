@@ -18,27 +18,36 @@ package org.lineageos.eleven.loaders;
 import android.database.AbstractCursor;
 import android.database.Cursor;
 
+import org.lineageos.eleven.utils.LongIntMap;
+
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 
 /**
  * This cursor basically wraps a song cursor and is given a list of the order of the ids of the
  * contents of the cursor. It wraps the Cursor and simulates the internal cursor being sorted
  * by moving the point to the appropriate spot
+ *
+ * The mapping is kept in primitive arrays, so building it doesn't box every row of the cursor.
  */
 public class SortedCursor extends AbstractCursor {
+    /* marks the ids of the underlying cursor that are already part of the ordered positions */
+    private static final int MATCHED = -1;
+
     // cursor to wrap
     private final Cursor mCursor;
     // the map of external indices to internal indices
-    private ArrayList<Integer> mOrderedPositions;
+    private int[] mOrderedPositions;
+    // the number of ordered positions used
+    private int mCount;
     // this contains the ids that weren't found in the underlying cursor
     private ArrayList<Long> mMissingIds;
-    // this contains the mapped cursor positions and afterwards the extra ids that weren't found
-    private HashMap<Long, Integer> mMapCursorPositions;
+    // the ids that were in the underlying cursor but not part of the ordered list
+    private ArrayList<Long> mExtraIds;
     // extra we want to store with the cursor
-    private ArrayList<Object> mExtraData;
+    private Object[] mExtraData;
 
     /**
      * @param cursor to wrap
@@ -66,36 +75,60 @@ public class SortedCursor extends AbstractCursor {
             final String columnName, final List<? extends Object> extraData) {
         ArrayList<Long> missingIds = new ArrayList<>();
 
-        mOrderedPositions = new ArrayList<>(mCursor.getCount());
-        mExtraData = new ArrayList<>();
+        final int cursorCount = mCursor.getCount();
+        mOrderedPositions = new int[cursorCount];
+        mExtraData = extraData != null ? new Object[cursorCount] : null;
+        mExtraIds = new ArrayList<>();
 
-        mMapCursorPositions = new HashMap<>(mCursor.getCount());
+        // both are only needed while mapping, so they aren't kept with the cursor
+        final long[] cursorIds = new long[cursorCount];
+        final LongIntMap mapCursorPositions = new LongIntMap(cursorCount);
         final int idPosition = mCursor.getColumnIndex(columnName);
 
         if (mCursor.moveToFirst()) {
             // first figure out where each of the ids are in the cursor
             do {
-                mMapCursorPositions.put(mCursor.getLong(idPosition), mCursor.getPosition());
+                final long id = mCursor.getLong(idPosition);
+                cursorIds[mCursor.getPosition()] = id;
+                mapCursorPositions.put(id, mCursor.getPosition());
             } while (mCursor.moveToNext());
 
             // now create the ordered positions to map to the internal cursor given the
             // external sort order
             for (int i = 0; order != null && i < order.length; i++) {
                 final long id = order[i];
-                if (mMapCursorPositions.containsKey(id)) {
-                    mOrderedPositions.add(mMapCursorPositions.get(id));
-                    mMapCursorPositions.remove(id);
-                    if (extraData != null) {
-                        mExtraData.add(extraData.get(i));
+                final int position = mapCursorPositions.get(id, MATCHED);
+                if (position != MATCHED) {
+                    mapCursorPositions.put(id, MATCHED);
+                    if (mExtraData != null) {
+                        mExtraData[mCount] = extraData.get(i);
                     }
+                    mOrderedPositions[mCount++] = position;
                 } else {
                     missingIds.add(id);
                 }
             }
 
+            // whatever wasn't matched is an extra id
+            for (int position = 0; position < cursorCount; position++) {
+                // a duplicated id is only mapped to its last position
+                final long id = cursorIds[position];
+                if (mapCursorPositions.get(id, MATCHED) == position) {
+                    mExtraIds.add(id);
+                }
+            }
+
             mCursor.moveToFirst();
         }
 
+        // the positions are only sized for the whole cursor until the extra ids are known
+        if (mCount < cursorCount) {
+            mOrderedPositions = Arrays.copyOf(mOrderedPositions, mCount);
+            if (mExtraData != null) {
+                mExtraData = Arrays.copyOf(mExtraData, mCount);
+            }
+        }
+
         return missingIds;
     }
 
@@ -110,7 +143,7 @@ public class SortedCursor extends AbstractCursor {
      * @return the list of ids that were in the underlying cursor but not part of the ordered list
      */
     public Collection<Long> getExtraIds() {
-        return mMapCursorPositions.keySet();
+        return mExtraIds;
     }
 
     /**
@@ -118,7 +151,8 @@ public class SortedCursor extends AbstractCursor {
      */
     public Object getExtraData() {
         int position = getPosition();
-        return position < mExtraData.size() ? mExtraData.get(position) : null;
+        return mExtraData != null && position >= 0 && position < mCount
+                ? mExtraData[position] : null;
     }
 
     @Override
@@ -130,7 +164,7 @@ public class SortedCursor extends AbstractCursor {
 
     @Override
     public int getCount() {
-        return mOrderedPositions.size();
+        return mCount;
     }
 
     @Override
@@ -176,7 +210,7 @@ public class SortedCursor extends AbstractCursor {
     @Override
     public boolean onMove(int oldPosition, int newPosition) {
         if (newPosition >= 0 && newPosition < getCount()) {
-            mCursor.moveToPosition(mOrderedPositions.get(newPosition));
+            mCursor.moveToPosition(mOrderedPositions[newPosition]);
             return true;
         }
 
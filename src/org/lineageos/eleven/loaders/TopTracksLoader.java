@@ -23,6 +23,7 @@ import android.provider.BaseColumns;
 import org.lineageos.eleven.provider.RecentStore;
 import org.lineageos.eleven.provider.SongPlayCount;
 import org.lineageos.eleven.provider.SongPlayCount.SongPlayCountColumns;
+import org.lineageos.eleven.utils.IdSetQuery;
 
 import java.util.ArrayList;
 
@@ -76,6 +77,12 @@ public class TopTracksLoader extends SongLoader {
         return retCursor;
     }
 
+    @Override
+    protected Cursor getFirstCursor(int count) {
+        // the list is short already, and not in the library order
+        return null;
+    }
+
     /**
      * This creates a sorted cursor based on the top played results
      * @param context Android context
@@ -126,30 +133,21 @@ public class TopTracksLoader extends SongLoader {
     public static final SortedCursor makeSortedCursor(final Context context, final Cursor cursor,
                                                       final int idColumn) {
         if (cursor != null && cursor.moveToFirst()) {
-            // create the list of ids to select against
-            StringBuilder selection = new StringBuilder();
-            selection.append(BaseColumns._ID);
-            selection.append(" IN (");
-
             // this tracks the order of the ids
             long[] order = new long[cursor.getCount()];
 
-            long id = cursor.getLong(idColumn);
-            selection.append(id);
-            order[cursor.getPosition()] = id;
+            do {
+                order[cursor.getPosition()] = cursor.getLong(idColumn);
+            } while (cursor.moveToNext());
 
-            while (cursor.moveToNext()) {
-                selection.append(",");
-
-                id = cursor.getLong(idColumn);
-                order[cursor.getPosition()] = id;
-                selection.append(String.valueOf(id));
-            }
-
-            selection.append(")");
-
-            // get a list of songs with the data given the selection statement
-            Cursor songCursor = makeSongCursor(context, selection.toString(), false);
+            // get a list of songs with the data for the ids, a chunk of ids at a time
+            Cursor songCursor = IdSetQuery.query(BaseColumns._ID, order,
+                    new IdSetQuery.ChunkQuery() {
+                @Override
+                public Cursor query(String selection) {
+                    return makeSongCursor(context, selection, false);
+                }
+            });
             if (songCursor != null) {
                 // now return the wrapped TopTracksCursor to handle sorting given order
                 return new SortedCursor(songCursor, order, BaseColumns._ID, null);
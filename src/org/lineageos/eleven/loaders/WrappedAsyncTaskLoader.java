@@ -12,7 +12,7 @@ import androidx.loader.content.AsyncTaskLoader;
  */
 public abstract class WrappedAsyncTaskLoader<D> extends AsyncTaskLoader<D> {
 
-    private D mData;
+    private volatile D mData;
 
     /**
      * Constructor of <code>WrappedAsyncTaskLoader</code>
@@ -36,6 +36,26 @@ public abstract class WrappedAsyncTaskLoader<D> extends AsyncTaskLoader<D> {
         }
     }
 
+    /**
+     * Delivers part of a result while the load is still running. Unlike a result passed to
+     * {@link #deliverResult(Object)} it isn't kept, so a load stopped before it completes is run
+     * again when the loader starts.
+     *
+     * @param data the partial result, must be called on the main thread
+     */
+    protected void deliverPartialResult(D data) {
+        if (isStarted() && !isReset()) {
+            super.deliverResult(data);
+        }
+    }
+
+    /**
+     * @return true if a complete result was delivered and is kept
+     */
+    protected boolean hasResult() {
+        return this.mData != null;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -17,6 +17,7 @@
 package org.lineageos.eleven.locale;
 
 import android.icu.text.AlphabeticIndex;
+import android.icu.text.Collator;
 import androidx.annotation.VisibleForTesting;
 import android.util.Log;
 
@@ -64,6 +65,8 @@ public class LocaleUtils {
         protected final AlphabeticIndex.ImmutableIndex mAlphabeticIndex;
         private final int mAlphabeticIndexBucketCount;
         private final int mNumberBucketIndex;
+        /* frozen, so it can be shared between threads */
+        private final Collator mCollator;
 
         public LocaleUtilsBase(LocaleSet locales) {
             // AlphabeticIndex.getBucketLabel() uses a binary search across
@@ -96,12 +99,21 @@ public class LocaleUtils {
                 .buildImmutableIndex();
             mAlphabeticIndexBucketCount = mAlphabeticIndex.getBucketCount();
             mNumberBucketIndex = mAlphabeticIndexBucketCount - 1;
+            mCollator = Collator.getInstance(locales.getPrimaryLocale()).freeze();
         }
 
         public String getSortKey(String name) {
             return name;
         }
 
+        /**
+         * Returns the ICU collation key of the name. Comparing the keys byte by byte gives the
+         * same order as comparing the names with the collator of the primary locale.
+         */
+        public byte[] getCollationKey(String name) {
+            return mCollator.getCollationKey(name != null ? name : EMPTY_STRING).toByteArray();
+        }
+
         /**
          * Returns the bucket index for the specified string. AlphabeticIndex
          * sorts strings into buckets numbered in order from 0 to N, where the
@@ -229,6 +241,10 @@ public class LocaleUtils {
         return mUtils.getSortKey(name);
     }
 
+    public byte[] getCollationKey(String name) {
+        return mUtils.getCollationKey(name);
+    }
+
     public int getBucketIndex(String name) {
         return mUtils.getBucketIndex(name);
     }
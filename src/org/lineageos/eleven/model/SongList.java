@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2019 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.model;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.RandomAccess;
+
+/**
+ * A list of songs stored by column instead of as one {@link Song} per row. The ids, durations
+ * and years are kept in primitive arrays, and the artist names, album names and bucket labels,
+ * which repeat a lot, are stored once each in a pool and referenced by index.
+ *
+ * {@link #get(int)} creates a new {@link Song} for the row every time it is called, so rows are
+ * only turned into objects when they are actually used, for example when they are shown. The
+ * columns can also be read directly. Changing a returned {@link Song} doesn't change the list.
+ */
+public final class SongList extends AbstractList<Song> implements RandomAccess {
+    private static final int MIN_CAPACITY = 16;
+
+    /* the index of a null string in the pools */
+    private static final int NO_STRING = -1;
+
+    private long[] mSongIds;
+    private long[] mAlbumIds;
+    private int[] mDurations;
+    private int[] mYears;
+    private String[] mSongNames;
+    private int[] mArtistNames;
+    private int[] mAlbumNames;
+    private int[] mBucketLabels;
+    private int mSize;
+
+    /* the distinct strings, and their index while the list is built */
+    private final ArrayList<String> mPool = new ArrayList<>();
+    private HashMap<String, Integer> mPoolIndex = new HashMap<>();
+
+    public SongList() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param capacity the number of songs the list is sized for up front
+     */
+    public SongList(final int capacity) {
+        allocate(Math.max(MIN_CAPACITY, capacity));
+    }
+
+    /**
+     * Appends a song
+     *
+     * @param songId The Id of the song
+     * @param songName The name of the song
+     * @param artistName The song artist
+     * @param albumName The song album
+     * @param albumId The album id
+     * @param duration The duration of a song in seconds
+     * @param year The year the song was recorded
+     * @param bucketLabel The bucket label of the song, or null
+     */
+    public void add(final long songId, final String songName, final String artistName,
+            final String albumName, final long albumId, final int duration, final int year,
+            final String bucketLabel) {
+        if (mSize == mSongIds.length) {
+            allocate(mSize * 2);
+        }
+        mSongIds[mSize] = songId;
+        mSongNames[mSize] = songName;
+        mArtistNames[mSize] = pool(artistName);
+        mAlbumNames[mSize] = pool(albumName);
+        mAlbumIds[mSize] = albumId;
+        mDurations[mSize] = duration;
+        mYears[mSize] = year;
+        mBucketLabels[mSize] = pool(bucketLabel);
+        mSize++;
+        modCount++;
+    }
+
+    @Override
+    public boolean add(final Song song) {
+        add(song.mSongId, song.mSongName, song.mArtistName, song.mAlbumName, song.mAlbumId,
+                song.mDuration, song.mYear, song.mBucketLabel);
+        return true;
+    }
+
+    /**
+     * Shrinks the columns to the size of the list and drops the index of the pool. The list can
+     * still be appended to afterwards, but the strings added then aren't shared anymore.
+     */
+    public void trimToSize() {
+        if (mSize < mSongIds.length) {
+            allocate(mSize);
+        }
+        mPool.trimToSize();
+        mPoolIndex = null;
+    }
+
+    @Override
+    public Song get(final int index) {
+        checkIndex(index);
+        final Song song = new Song(mSongIds[index], mSongNames[index],
+                getPooled(mArtistNames[index]), getPooled(mAlbumNames[index]),
+                mAlbumIds[index], mDurations[index], mYears[index]);
+        song.mBucketLabel = getPooled(mBucketLabels[index]);
+        return song;
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    public long getSongId(final int index) {
+        checkIndex(index);
+        return mSongIds[index];
+    }
+
+    public String getSongName(final int index) {
+        checkIndex(index);
+        return mSongNames[index];
+    }
+
+    public String getArtistName(final int index) {
+        checkIndex(index);
+        return getPooled(mArtistNames[index]);
+    }
+
+    public String getAlbumName(final int index) {
+        checkIndex(index);
+        return getPooled(mAlbumNames[index]);
+    }
+
+    public long getAlbumId(final int index) {
+        checkIndex(index);
+        return mAlbumIds[index];
+    }
+
+    public int getDuration(final int index) {
+        checkIndex(index);
+        return mDurations[index];
+    }
+
+    public int getYear(final int index) {
+        checkIndex(index);
+        return mYears[index];
+    }
+
+    public String getBucketLabel(final int index) {
+        checkIndex(index);
+        return getPooled(mBucketLabels[index]);
+    }
+
+    private int pool(final String value) {
+        if (value == null) {
+            return NO_STRING;
+        }
+        if (mPoolIndex == null) {
+            mPool.add(value);
+            return mPool.size() - 1;
+        }
+
+        Integer index = mPoolIndex.get(value);
+        if (index == null) {
+            index = mPool.size();
+            mPool.add(value);
+            mPoolIndex.put(value, index);
+        }
+        return index;
+    }
+
+    private String getPooled(final int index) {
+        return index == NO_STRING ? null : mPool.get(index);
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+        }
+    }
+
+    private void allocate(final int capacity) {
+        if (mSongIds == null) {
+            mSongIds = new long[capacity];
+            mAlbumIds = new long[capacity];
+            mDurations = new int[capacity];
+            mYears = new int[capacity];
+            mSongNames = new String[capacity];
+            mArtistNames = new int[capacity];
+            mAlbumNames = new int[capacity];
+            mBucketLabels = new int[capacity];
+        } else {
+            mSongIds = Arrays.copyOf(mSongIds, capacity);
+            mAlbumIds = Arrays.copyOf(mAlbumIds, capacity);
+            mDurations = Arrays.copyOf(mDurations, capacity);
+            mYears = Arrays.copyOf(mYears, capacity);
+            mSongNames = Arrays.copyOf(mSongNames, capacity);
+            mArtistNames = Arrays.copyOf(mArtistNames, capacity);
+            mAlbumNames = Arrays.copyOf(mAlbumNames, capacity);
+            mBucketLabels = Arrays.copyOf(mBucketLabels, capacity);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2019 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.provider;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.lineageos.eleven.cache.LruCache;
+import org.lineageos.eleven.utils.BitmapWithColors.BitmapColors;
+
+/**
+ * This db stores the palette colors of the artwork by image cache key, so they are extracted
+ * once per artwork instead of every time the artwork is shown. The most recently used colors
+ * are kept in memory as well.
+ */
+public class ArtworkColorStore {
+    /* number of entries kept in memory */
+    private static final int MAX_CACHED_COLORS = 200;
+
+    private static ArtworkColorStore sInstance = null;
+
+    private final MusicDB mMusicDatabase;
+
+    private final LruCache<String, BitmapColors> mCachedColors =
+            new LruCache<>(MAX_CACHED_COLORS);
+
+    /**
+     * @param context The {@link android.content.Context} to use
+     * @return A new instance of this class.
+     */
+    public static synchronized ArtworkColorStore getInstance(final Context context) {
+        if (sInstance == null) {
+            sInstance = new ArtworkColorStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructor of <code>ArtworkColorStore</code>
+     *
+     * @param context The {@link android.content.Context} to use
+     */
+    public ArtworkColorStore(final Context context) {
+        mMusicDatabase = MusicDB.getInstance(context);
+    }
+
+    public void onCreate(final SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + ArtworkColorColumns.NAME + " ("
+                + ArtworkColorColumns.KEY + " TEXT PRIMARY KEY NOT NULL,"
+                + ArtworkColorColumns.VIBRANT + " INT NOT NULL,"
+                + ArtworkColorColumns.VIBRANT_DARK + " INT NOT NULL,"
+                + ArtworkColorColumns.VIBRANT_LIGHT + " INT NOT NULL,"
+                + ArtworkColorColumns.DOMINANT + " INT NOT NULL,"
+                + ArtworkColorColumns.FAST + " INT NOT NULL DEFAULT 0);");
+    }
+
+    public void onUpgrade(final SQLiteDatabase db, final int oldVersion, final int newVersion) {
+        // this table was created in version 7
+        if (oldVersion < 7 && newVersion >= 7) {
+            onCreate(db);
+        } else if (oldVersion < 9 && newVersion >= 9) {
+            // the fast column was added in version 9. The colors stored before may come from a
+            // thumbnail, so mark them fast to let the full size image replace them
+            db.execSQL("ALTER TABLE " + ArtworkColorColumns.NAME + " ADD COLUMN "
+                    + ArtworkColorColumns.FAST + " INT NOT NULL DEFAULT 1");
+        }
+    }
+
+    public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // If we ever have downgrade, drop the table to be safe
+        db.execSQL("DROP TABLE IF EXISTS " + ArtworkColorColumns.NAME);
+        onCreate(db);
+    }
+
+    /**
+     * @param key the image cache key of the artwork
+     * @return the colors of the artwork, or null if they weren't stored
+     */
+    public BitmapColors getColors(final String key) {
+        if (key == null) {
+            return null;
+        }
+        BitmapColors colors = mCachedColors.get(key);
+        if (colors != null) {
+            return colors;
+        }
+
+        final SQLiteDatabase database = mMusicDatabase.getReadableDatabase();
+        try (final Cursor c = database.query(ArtworkColorColumns.NAME, new String[] {
+                    ArtworkColorColumns.VIBRANT, ArtworkColorColumns.VIBRANT_DARK,
+                    ArtworkColorColumns.VIBRANT_LIGHT, ArtworkColorColumns.DOMINANT,
+                    ArtworkColorColumns.FAST
+                }, ArtworkColorColumns.KEY + "=?", new String[] { key }, null, null, null)) {
+            if (c != null && c.moveToFirst()) {
+                colors = new BitmapColors(c.getInt(0), c.getInt(1), c.getInt(2), c.getInt(3),
+                        c.getInt(4) != 0);
+                mCachedColors.put(key, colors);
+            }
+        }
+        return colors;
+    }
+
+    /**
+     * Stores the colors of an artwork, replacing the previous ones
+     *
+     * @param key the image cache key of the artwork
+     * @param colors the colors of the artwork
+     */
+    public void putColors(final String key, final BitmapColors colors) {
+        if (key == null || colors == null) {
+            return;
+        }
+        mCachedColors.put(key, colors);
+
+        final ContentValues values = new ContentValues(6);
+        values.put(ArtworkColorColumns.KEY, key);
+        values.put(ArtworkColorColumns.VIBRANT, colors.mVibrantColor);
+        values.put(ArtworkColorColumns.VIBRANT_DARK, colors.mVibrantDarkColor);
+        values.put(ArtworkColorColumns.VIBRANT_LIGHT, colors.mVibrantLightColor);
+        values.put(ArtworkColorColumns.DOMINANT, colors.mDominantColor);
+        values.put(ArtworkColorColumns.FAST, colors.mFast ? 1 : 0);
+
+        final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
+        database.insertWithOnConflict(ArtworkColorColumns.NAME, null, values,
+                SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * @param key the image cache key of the artwork whose colors are dropped
+     */
+    public void removeColors(final String key) {
+        if (key == null) {
+            return;
+        }
+        mCachedColors.remove(key);
+
+        final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
+        database.delete(ArtworkColorColumns.NAME, ArtworkColorColumns.KEY + "=?",
+                new String[] { key });
+    }
+
+    /**
+     * Drops all the stored colors
+     */
+    public void deleteAll() {
+        mCachedColors.evictAll();
+
+        final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
+        database.delete(ArtworkColorColumns.NAME, null, null);
+    }
+
+    public interface ArtworkColorColumns {
+        /* Table name */
+        public static final String NAME = "artwork_colors";
+
+        /* The image cache key of the artwork */
+        public static final String KEY = "cachekey";
+
+        /* The vibrant color, transparent if there is none */
+        public static final String VIBRANT = "vibrant";
+
+        /* The dark vibrant color, transparent if there is none */
+        public static final String VIBRANT_DARK = "vibrant_dark";
+
+        /* The light vibrant color, transparent if there is none */
+        public static final String VIBRANT_LIGHT = "vibrant_light";
+
+        /* The color of the most common swatch, transparent if there is none */
+        public static final String DOMINANT = "dominant";
+
+        /* 1 if the colors come from the fast extraction of a thumbnail */
+        public static final String FAST = "fast";
+    }
+}
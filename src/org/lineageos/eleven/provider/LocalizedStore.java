@@ -17,6 +17,7 @@ package org.lineageos.eleven.provider;
 
 import android.content.ContentValues;
 import android.content.Context;
+import android.database.ContentObserver;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.os.Build;
@@ -33,6 +34,7 @@ import org.lineageos.eleven.loaders.SortedCursor;
 import org.lineageos.eleven.locale.LocaleSet;
 import org.lineageos.eleven.locale.LocaleSetManager;
 import org.lineageos.eleven.locale.LocaleUtils;
+import org.lineageos.eleven.utils.IdSetQuery;
 import org.lineageos.eleven.utils.MusicUtils;
 
 import java.util.ArrayList;
@@ -43,6 +45,11 @@ import java.util.List;
  * Because sqlite localized collator isn't sufficient, we need to store more specialized logic
  * into our own db similar to contacts db.  This is most noticeable in languages like Chinese,
  * Japanese etc
+ *
+ * The data is only rebuilt from scratch when the locale changes. Otherwise it follows the media
+ * store in the background: after a change the song ids are diffed against the stored ones to find
+ * the added and removed songs, and the songs modified since the last sync are found through the
+ * highest date_modified seen, so only those are localized again.
  */
 public class LocalizedStore {
     private static final String TAG = LocalizedStore.class.getSimpleName();
@@ -50,6 +57,10 @@ public class LocalizedStore {
     private static LocalizedStore sInstance = null;
 
     private static final int LOCALE_CHANGED = 0;
+    private static final int MEDIA_CHANGED = 1;
+
+    /* how long to wait for the media store to settle after a change before syncing */
+    private static final long SYNC_DELAY = 2000;
 
     private final MusicDB mMusicDatabase;
     private final Context mContext;
@@ -70,6 +81,33 @@ public class LocalizedStore {
         List<String> bucketLabels;
     }
 
+    /**
+     * A name with its localized sort data
+     */
+    private static final class SortName {
+        final long mId;
+        final String mName;
+        final int mBucketIndex;
+        final String mLabel;
+        /* the bucket index followed by the collation key, so a bucket is never split up */
+        final byte[] mSortKey;
+
+        SortName(long id, String name) {
+            final LocaleUtils localeUtils = LocaleUtils.getInstance();
+            mId = id;
+            mName = MusicUtils.getTrimmedName(name);
+            mBucketIndex = localeUtils.getBucketIndex(mName);
+            mLabel = localeUtils.getBucketLabel(mBucketIndex);
+
+            final byte[] collationKey = localeUtils.getCollationKey(mName);
+            final int bucket = mBucketIndex + 1;
+            mSortKey = new byte[collationKey.length + 2];
+            mSortKey[0] = (byte) (bucket >> 8);
+            mSortKey[1] = (byte) bucket;
+            System.arraycopy(collationKey, 0, mSortKey, 2, collationKey.length);
+        }
+    }
+
     /**
      * @param context The {@link android.content.Context} to use
      * @return A new instance of this class.
@@ -94,12 +132,25 @@ public class LocalizedStore {
             public void handleMessage(Message msg) {
                 if (msg.what == LOCALE_CHANGED && mLocaleSetManager.localeSetNeedsUpdate()) {
                     rebuildLocaleData(mLocaleSetManager.getSystemLocaleSet());
+                } else if (msg.what == MEDIA_CHANGED) {
+                    syncWithMediaStore();
                 }
             }
         };
 
         // check to see if locale has changed
         onLocaleChanged();
+
+        // catch up with the changes made while we weren't running, then follow the media store
+        mHandler.sendEmptyMessage(MEDIA_CHANGED);
+        mContext.getContentResolver().registerContentObserver(
+                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, true, new ContentObserver(mHandler) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        mHandler.removeMessages(MEDIA_CHANGED);
+                        mHandler.sendEmptyMessageDelayed(MEDIA_CHANGED, SYNC_DELAY);
+                    }
+                });
     }
 
     public void onCreate(final SQLiteDatabase db) {
@@ -111,20 +162,42 @@ public class LocalizedStore {
                     SongSortColumns.ALBUM_ID + " INTEGER NOT NULL," +
                     SongSortColumns.NAME + " TEXT COLLATE LOCALIZED," +
                     SongSortColumns.NAME_LABEL + " TEXT," +
-                    SongSortColumns.NAME_BUCKET + " INTEGER);",
+                    SongSortColumns.NAME_BUCKET + " INTEGER," +
+                    SongSortColumns.SORT_KEY + " BLOB NOT NULL," +
+                    SongSortColumns.ARTIST_LABEL + " TEXT," +
+                    SongSortColumns.ARTIST_SORT_KEY + " BLOB NOT NULL," +
+                    SongSortColumns.ALBUM_LABEL + " TEXT," +
+                    SongSortColumns.ALBUM_SORT_KEY + " BLOB NOT NULL);",
 
             "CREATE TABLE IF NOT EXISTS " + AlbumSortColumns.TABLE_NAME + "(" +
                     AlbumSortColumns.ID + " INTEGER PRIMARY KEY," +
                     AlbumSortColumns.ARTIST_ID + " INTEGER NOT NULL," +
                     AlbumSortColumns.NAME + " TEXT COLLATE LOCALIZED," +
                     AlbumSortColumns.NAME_LABEL + " TEXT," +
-                    AlbumSortColumns.NAME_BUCKET + " INTEGER);",
+                    AlbumSortColumns.NAME_BUCKET + " INTEGER," +
+                    AlbumSortColumns.SORT_KEY + " BLOB NOT NULL," +
+                    AlbumSortColumns.ARTIST_SORT_KEY + " BLOB NOT NULL);",
 
             "CREATE TABLE IF NOT EXISTS " + ArtistSortColumns.TABLE_NAME + "(" +
                     ArtistSortColumns.ID + " INTEGER PRIMARY KEY," +
                     ArtistSortColumns.NAME + " TEXT COLLATE LOCALIZED," +
                     ArtistSortColumns.NAME_LABEL + " TEXT," +
-                    ArtistSortColumns.NAME_BUCKET + " INTEGER);",
+                    ArtistSortColumns.NAME_BUCKET + " INTEGER," +
+                    ArtistSortColumns.SORT_KEY + " BLOB NOT NULL);",
+
+            // one covering index per sort order, the row id is implicitly the last column
+            createIndex(SongSortColumns.TABLE_NAME, SongSortColumns.SORT_KEY,
+                    SongSortColumns.NAME_LABEL),
+            createIndex(SongSortColumns.TABLE_NAME, SongSortColumns.ARTIST_SORT_KEY,
+                    SongSortColumns.SORT_KEY, SongSortColumns.ARTIST_LABEL),
+            createIndex(SongSortColumns.TABLE_NAME, SongSortColumns.ALBUM_SORT_KEY,
+                    SongSortColumns.SORT_KEY, SongSortColumns.ALBUM_LABEL),
+            createIndex(AlbumSortColumns.TABLE_NAME, AlbumSortColumns.SORT_KEY,
+                    AlbumSortColumns.NAME_LABEL),
+            createIndex(AlbumSortColumns.TABLE_NAME, AlbumSortColumns.ARTIST_SORT_KEY,
+                    AlbumSortColumns.SORT_KEY, AlbumSortColumns.NAME_LABEL),
+            createIndex(ArtistSortColumns.TABLE_NAME, ArtistSortColumns.SORT_KEY,
+                    ArtistSortColumns.NAME_LABEL),
         };
 
         for (String table : tables) {
@@ -139,8 +212,12 @@ public class LocalizedStore {
         // this table was created in version 3 so call the onCreate method if oldVersion <= 2
         // in version 4 we need to recreate the SongSortcolumns table so drop the table and call
         // onCreate if oldVersion <= 3
-        if (oldVersion <= 3) {
+        // in version 8 the sort keys were added to all the tables, so drop them all. The sync
+        // with the media store fills them again since no song is tracked anymore
+        if (oldVersion < 8) {
             db.execSQL("DROP TABLE IF EXISTS " + SongSortColumns.TABLE_NAME);
+            db.execSQL("DROP TABLE IF EXISTS " + AlbumSortColumns.TABLE_NAME);
+            db.execSQL("DROP TABLE IF EXISTS " + ArtistSortColumns.TABLE_NAME);
             onCreate(db);
         }
     }
@@ -173,7 +250,9 @@ public class LocalizedStore {
             // prep the localization classes
             mLocaleSetManager.updateLocaleSet(locales);
 
-            updateLocalizedStore(db, null);
+            final long lastModified = updateLocalizedStore(db, null,
+                    SQLiteDatabase.CONFLICT_IGNORE);
+            storeLastModified(lastModified);
 
             // Update the ICU version used to generate the locale derived data
             // so we can tell when we need to rebuild with new ICU versions.
@@ -194,11 +273,125 @@ public class LocalizedStore {
         }
     }
 
+    /**
+     * Brings the data up to date with the media store without rebuilding it: removes the songs
+     * that are gone and localizes the songs that were added or modified since the last sync.
+     * Albums and artists that are left without songs are removed as well.
+     */
+    private void syncWithMediaStore() {
+        final long start = SystemClock.elapsedRealtime();
+        final SQLiteDatabase db = mMusicDatabase.getWritableDatabase();
+
+        // without a stored mark the data is assumed current, only additions and removals are synced
+        long lastModified = Long.MAX_VALUE;
+        try {
+            lastModified = Long.parseLong(PropertiesStore.getInstance(mContext).getProperty(
+                    PropertiesStore.DbProperties.MEDIA_LAST_MODIFIED, ""));
+        } catch (NumberFormatException e) {
+            // not synced yet
+        }
+
+        final long[] storedIds = getStoredSongIds(db);
+        final ArrayList<Long> removedIds = new ArrayList<>();
+        final ArrayList<Long> changedIds = new ArrayList<>();
+        long newLastModified = lastModified == Long.MAX_VALUE ? 0 : lastModified;
+
+        try (Cursor cursor = mContext.getContentResolver().query(
+                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
+                new String[] { AudioColumns._ID, AudioColumns.DATE_MODIFIED },
+                MusicUtils.MUSIC_ONLY_SELECTION, null, AudioColumns._ID)) {
+            if (cursor == null) {
+                return;
+            }
+
+            // both lists are sorted by id, so one pass finds the differences
+            int stored = 0;
+            while (cursor.moveToNext()) {
+                final long id = cursor.getLong(0);
+                final long modified = cursor.getLong(1);
+                newLastModified = Math.max(newLastModified, modified);
+
+                while (stored < storedIds.length && storedIds[stored] < id) {
+                    removedIds.add(storedIds[stored++]);
+                }
+                if (stored < storedIds.length && storedIds[stored] == id) {
+                    stored++;
+                    // the mark is in seconds, so recheck the songs modified in its last second
+                    if (modified >= lastModified) {
+                        changedIds.add(id);
+                    }
+                } else {
+                    changedIds.add(id);
+                }
+            }
+            while (stored < storedIds.length) {
+                removedIds.add(storedIds[stored++]);
+            }
+        } catch (SecurityException e) {
+            // we can't read the media store until the storage permission is granted
+            Log.w(TAG, "Cannot sync with the media store", e);
+            return;
+        }
+
+        if (!removedIds.isEmpty() || !changedIds.isEmpty()) {
+            db.beginTransaction();
+            try {
+                if (!removedIds.isEmpty()) {
+                    IdSetQuery.delete(db, SongSortColumns.TABLE_NAME, SongSortColumns.ID,
+                            removedIds);
+                }
+                for (String selection : IdSetQuery.buildSelections(AudioColumns._ID, changedIds)) {
+                    updateLocalizedStore(db, selection, SQLiteDatabase.CONFLICT_REPLACE);
+                }
+                db.execSQL("DELETE FROM " + AlbumSortColumns.TABLE_NAME
+                        + " WHERE " + AlbumSortColumns.ID + " NOT IN (SELECT "
+                        + SongSortColumns.ALBUM_ID + " FROM " + SongSortColumns.TABLE_NAME + ")");
+                db.execSQL("DELETE FROM " + ArtistSortColumns.TABLE_NAME
+                        + " WHERE " + ArtistSortColumns.ID + " NOT IN (SELECT "
+                        + SongSortColumns.ARTIST_ID + " FROM " + SongSortColumns.TABLE_NAME + ")");
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+        if (newLastModified != lastModified) {
+            storeLastModified(newLastModified);
+        }
+
+        if (DEBUG) {
+            Log.d(TAG, "Synced " + changedIds.size() + " changed and " + removedIds.size()
+                    + " removed songs in " + (SystemClock.elapsedRealtime() - start) + "ms");
+        }
+    }
+
+    /**
+     * @return the ids of the songs in the store, in ascending order
+     */
+    private long[] getStoredSongIds(final SQLiteDatabase db) {
+        try (Cursor c = db.rawQuery("SELECT " + SongSortColumns.ID + " FROM "
+                + SongSortColumns.TABLE_NAME + " ORDER BY " + SongSortColumns.ID, null)) {
+            final long[] ids = new long[c != null ? c.getCount() : 0];
+            for (int i = 0; i < ids.length && c.moveToNext(); i++) {
+                ids[i] = c.getLong(0);
+            }
+            return ids;
+        }
+    }
+
+    private void storeLastModified(final long lastModified) {
+        PropertiesStore.getInstance(mContext).storeProperty(
+                PropertiesStore.DbProperties.MEDIA_LAST_MODIFIED, String.valueOf(lastModified));
+    }
+
     /**
      * This will grab all the songs from the medistore and add the localized data to the db
      * @param selection if we only want to do this for some songs, this selection will filter it out
+     * @param conflictAlgorithm how to handle the rows already in the db, replace to update them
+     * @return the highest date_modified of the songs
      */
-    private void updateLocalizedStore(final SQLiteDatabase db, final String selection) {
+    private long updateLocalizedStore(final SQLiteDatabase db, final String selection,
+            final int conflictAlgorithm) {
+        long lastModified = 0;
         db.beginTransaction();
         try {
             Cursor cursor = null;
@@ -230,10 +423,12 @@ public class LocalizedStore {
                                 AudioColumns.ALBUM_ID,
                                 // 5
                                 AudioColumns.ALBUM,
+                                // 6
+                                AudioColumns.DATE_MODIFIED,
                         }, combinedSelection, null, orderBy);
 
-                long previousArtistId = -1;
-                long previousAlbumId = -1;
+                SortName artist = null;
+                SortName album = null;
                 long artistId;
                 long albumId;
 
@@ -242,18 +437,19 @@ public class LocalizedStore {
                         albumId = cursor.getLong(4);
                         artistId = cursor.getLong(2);
 
-                        if (artistId != previousArtistId) {
-                            previousArtistId = artistId;
-                            updateArtistData(db, artistId, cursor.getString(3));
+                        if (artist == null || artistId != artist.mId) {
+                            artist = new SortName(artistId, cursor.getString(3));
+                            updateArtistData(db, artist, conflictAlgorithm);
                         }
 
-                        if (albumId != previousAlbumId) {
-                            previousAlbumId = albumId;
-
-                            updateAlbumData(db, albumId, cursor.getString(5), artistId);
+                        if (album == null || albumId != album.mId) {
+                            album = new SortName(albumId, cursor.getString(5));
+                            updateAlbumData(db, album, artist, conflictAlgorithm);
                         }
 
-                        updateSongData(db, cursor.getLong(0), cursor.getString(1), artistId, albumId);
+                        updateSongData(db, new SortName(cursor.getLong(0), cursor.getString(1)),
+                                artist, album, conflictAlgorithm);
+                        lastModified = Math.max(lastModified, cursor.getLong(6));
                     } while (cursor.moveToNext());
                 }
             } finally {
@@ -267,61 +463,53 @@ public class LocalizedStore {
         } finally {
             db.endTransaction();
         }
+        return lastModified;
     }
 
-    private void updateArtistData(SQLiteDatabase db, long id, String name) {
+    private void updateArtistData(SQLiteDatabase db, SortName artist, int conflictAlgorithm) {
         mContentValues.clear();
-        name = MusicUtils.getTrimmedName(name);
-
-        final LocaleUtils localeUtils = LocaleUtils.getInstance();
-        final int bucketIndex = localeUtils.getBucketIndex(name);
-
-        mContentValues.put(ArtistSortColumns.ID, id);
-        mContentValues.put(ArtistSortColumns.NAME, name);
-        mContentValues.put(ArtistSortColumns.NAME_BUCKET, bucketIndex);
-        mContentValues.put(ArtistSortColumns.NAME_LABEL,
-                localeUtils.getBucketLabel(bucketIndex));
+        mContentValues.put(ArtistSortColumns.ID, artist.mId);
+        mContentValues.put(ArtistSortColumns.NAME, artist.mName);
+        mContentValues.put(ArtistSortColumns.NAME_BUCKET, artist.mBucketIndex);
+        mContentValues.put(ArtistSortColumns.NAME_LABEL, artist.mLabel);
+        mContentValues.put(ArtistSortColumns.SORT_KEY, artist.mSortKey);
 
         db.insertWithOnConflict(ArtistSortColumns.TABLE_NAME, null, mContentValues,
-                SQLiteDatabase.CONFLICT_IGNORE);
+                conflictAlgorithm);
     }
 
-    private void updateAlbumData(SQLiteDatabase db, long id, String name, long artistId) {
+    private void updateAlbumData(SQLiteDatabase db, SortName album, SortName artist,
+                                 int conflictAlgorithm) {
         mContentValues.clear();
-        name = MusicUtils.getTrimmedName(name);
-
-        final LocaleUtils localeUtils = LocaleUtils.getInstance();
-        final int bucketIndex = localeUtils.getBucketIndex(name);
-
-        mContentValues.put(AlbumSortColumns.ID, id);
-        mContentValues.put(AlbumSortColumns.NAME, name);
-        mContentValues.put(AlbumSortColumns.NAME_BUCKET, bucketIndex);
-        mContentValues.put(AlbumSortColumns.NAME_LABEL,
-                localeUtils.getBucketLabel(bucketIndex));
-        mContentValues.put(AlbumSortColumns.ARTIST_ID, artistId);
+        mContentValues.put(AlbumSortColumns.ID, album.mId);
+        mContentValues.put(AlbumSortColumns.NAME, album.mName);
+        mContentValues.put(AlbumSortColumns.NAME_BUCKET, album.mBucketIndex);
+        mContentValues.put(AlbumSortColumns.NAME_LABEL, album.mLabel);
+        mContentValues.put(AlbumSortColumns.SORT_KEY, album.mSortKey);
+        mContentValues.put(AlbumSortColumns.ARTIST_ID, artist.mId);
+        mContentValues.put(AlbumSortColumns.ARTIST_SORT_KEY, artist.mSortKey);
 
         db.insertWithOnConflict(AlbumSortColumns.TABLE_NAME, null, mContentValues,
-                SQLiteDatabase.CONFLICT_IGNORE);
+                conflictAlgorithm);
     }
 
-    private void updateSongData(SQLiteDatabase db, long id, String name, long artistId,
-                                long albumId) {
+    private void updateSongData(SQLiteDatabase db, SortName song, SortName artist,
+                                SortName album, int conflictAlgorithm) {
         mContentValues.clear();
-        name = MusicUtils.getTrimmedName(name);
-
-        final LocaleUtils localeUtils = LocaleUtils.getInstance();
-        final int bucketIndex = localeUtils.getBucketIndex(name);
-
-        mContentValues.put(SongSortColumns.ID, id);
-        mContentValues.put(SongSortColumns.NAME, name);
-        mContentValues.put(SongSortColumns.NAME_BUCKET, bucketIndex);
-        mContentValues.put(SongSortColumns.NAME_LABEL,
-                localeUtils.getBucketLabel(bucketIndex));
-        mContentValues.put(SongSortColumns.ARTIST_ID, artistId);
-        mContentValues.put(SongSortColumns.ALBUM_ID, albumId);
+        mContentValues.put(SongSortColumns.ID, song.mId);
+        mContentValues.put(SongSortColumns.NAME, song.mName);
+        mContentValues.put(SongSortColumns.NAME_BUCKET, song.mBucketIndex);
+        mContentValues.put(SongSortColumns.NAME_LABEL, song.mLabel);
+        mContentValues.put(SongSortColumns.SORT_KEY, song.mSortKey);
+        mContentValues.put(SongSortColumns.ARTIST_ID, artist.mId);
+        mContentValues.put(SongSortColumns.ARTIST_LABEL, artist.mLabel);
+        mContentValues.put(SongSortColumns.ARTIST_SORT_KEY, artist.mSortKey);
+        mContentValues.put(SongSortColumns.ALBUM_ID, album.mId);
+        mContentValues.put(SongSortColumns.ALBUM_LABEL, album.mLabel);
+        mContentValues.put(SongSortColumns.ALBUM_SORT_KEY, album.mSortKey);
 
         db.insertWithOnConflict(SongSortColumns.TABLE_NAME, null, mContentValues,
-                SQLiteDatabase.CONFLICT_IGNORE);
+                conflictAlgorithm);
     }
 
     /**
@@ -333,62 +521,62 @@ public class LocalizedStore {
      *                 doesn't make sense
      * @param descending Whether we want to sort ascending or descending.  This will only apply to
      *                  the basic searches (ie when sortType == itemType),
-     *                  otherwise ascending is always assumed
+     *                  otherwise ascending is always assumed since the indexes are ascending
      * @return sorted list of ids and bucket labels for the itemType
      */
     public SortData getSortOrder(SortParameter itemType, SortParameter sortType,
                                 boolean descending) {
+        return getSortOrder(itemType, sortType, descending, 0);
+    }
+
+    /**
+     * @param limit the number of ids to return, or 0 for all of them
+     * @see #getSortOrder(SortParameter, SortParameter, boolean)
+     */
+    private SortData getSortOrder(SortParameter itemType, SortParameter sortType,
+                                  boolean descending, int limit) {
         SortData sortData = new SortData();
         String tableName = "";
-        String joinClause = "";
         String selectParams = "";
-        String postfixOrder = "";
-        String prefixOrder = "";
+        String orderBy = "";
 
         switch (itemType) {
             case Song:
-                selectParams = SongSortColumns.CONCRETE_ID + ",";
-                postfixOrder = SongSortColumns.getOrderBy(descending);
+                selectParams = SongSortColumns.ID + ",";
                 tableName = SongSortColumns.TABLE_NAME;
 
                 if (sortType == SortParameter.Artist) {
-                    selectParams += ArtistSortColumns.NAME_LABEL;
-                    prefixOrder = ArtistSortColumns.getOrderBy(false) + ",";
-                    joinClause = createJoin(ArtistSortColumns.TABLE_NAME,
-                            SongSortColumns.ARTIST_ID, ArtistSortColumns.CONCRETE_ID);
+                    selectParams += SongSortColumns.ARTIST_LABEL;
+                    orderBy = SongSortColumns.ARTIST_SORT_KEY + "," + SongSortColumns.SORT_KEY;
                 } else if (sortType == SortParameter.Album) {
-                    selectParams += AlbumSortColumns.NAME_LABEL;
-                    prefixOrder = AlbumSortColumns.getOrderBy(false) + ",";
-                    joinClause = createJoin(AlbumSortColumns.TABLE_NAME,
-                            SongSortColumns.ALBUM_ID, AlbumSortColumns.CONCRETE_ID);
+                    selectParams += SongSortColumns.ALBUM_LABEL;
+                    orderBy = SongSortColumns.ALBUM_SORT_KEY + "," + SongSortColumns.SORT_KEY;
                 } else {
                     selectParams += SongSortColumns.NAME_LABEL;
+                    orderBy = SongSortColumns.getOrderBy(descending);
                 }
                 break;
             case Artist:
-                selectParams = ArtistSortColumns.CONCRETE_ID + "," + ArtistSortColumns.NAME_LABEL;
-                postfixOrder = ArtistSortColumns.getOrderBy(descending);
+                selectParams = ArtistSortColumns.ID + "," + ArtistSortColumns.NAME_LABEL;
+                orderBy = ArtistSortColumns.getOrderBy(descending);
                 tableName = ArtistSortColumns.TABLE_NAME;
                 break;
             case Album:
-                selectParams = AlbumSortColumns.CONCRETE_ID + ",";
-                postfixOrder = AlbumSortColumns.getOrderBy(descending);
+                selectParams = AlbumSortColumns.ID + "," + AlbumSortColumns.NAME_LABEL;
                 tableName = AlbumSortColumns.TABLE_NAME;
                 if (sortType == SortParameter.Artist) {
-                    selectParams += AlbumSortColumns.NAME_LABEL;
-                    prefixOrder = ArtistSortColumns.getOrderBy(false) + ",";
-                    joinClause = createJoin(ArtistSortColumns.TABLE_NAME,
-                            AlbumSortColumns.ARTIST_ID, ArtistSortColumns.CONCRETE_ID);
+                    orderBy = AlbumSortColumns.ARTIST_SORT_KEY + "," + AlbumSortColumns.SORT_KEY;
                 } else {
-                    selectParams += AlbumSortColumns.NAME_LABEL;
+                    orderBy = AlbumSortColumns.getOrderBy(descending);
                 }
                 break;
         }
 
+        // every order has a covering index, so this only scans the index
         final String selection = "SELECT " + selectParams
                 + " FROM " + tableName
-                + joinClause
-                + " ORDER BY " + prefixOrder + postfixOrder;
+                + " ORDER BY " + orderBy
+                + (limit > 0 ? " LIMIT " + limit : "");
 
         if (DEBUG) {
             Log.d(TAG, "Running selection: " + selection);
@@ -444,6 +632,34 @@ public class LocalizedStore {
         return cursor;
     }
 
+    /**
+     * Queries only the first items in localized sorted order, so they can be shown before the
+     * whole list is queried and sorted. The ids are read from the sort tables, which may lag
+     * behind the media store, so this is only a preview of what {@link #getLocalizedSort} returns
+     * and the store isn't updated from it.
+     * @param count the number of items to query
+     * @param columnName the column name of the id
+     * @param idType the type of item that the cursor contains
+     * @param sortType the type to sort by (for example can be song sorted by albums)
+     * @param descending descending?
+     * @param query runs the query for a selection of ids
+     * @return the sorted cursor of the first items, or null if there are none
+     */
+    public Cursor getLocalizedSortHead(int count, String columnName, SortParameter idType,
+                                       SortParameter sortType, boolean descending,
+                                       IdSetQuery.ChunkQuery query) {
+        final SortData sortData = getSortOrder(idType, sortType, descending, count);
+        if (sortData.ids == null) {
+            return null;
+        }
+
+        final Cursor cursor = IdSetQuery.query(columnName, sortData.ids, query);
+        if (cursor == null) {
+            return null;
+        }
+        return new SortedCursor(cursor, sortData.ids, columnName, sortData.bucketLabels);
+    }
+
     /**
      * Updates the localized store based on the cursor
      * @param sortedCursor the current sorting cursor based on the LocalizedStore sort
@@ -472,56 +688,57 @@ public class LocalizedStore {
             return;
         }
 
-        final String inParams = "(" + MusicUtils.buildCollectionAsString(ids) + ")";
-
         if (DEBUG) {
-            Log.d(TAG, "Deleting from " + idType + " where id is in " + inParams);
+            Log.d(TAG, "Deleting " + ids.size() + " ids from " + idType);
         }
 
+        final SQLiteDatabase db = mMusicDatabase.getWritableDatabase();
         switch (idType) {
             case Song:
-                mMusicDatabase.getWritableDatabase().delete(SongSortColumns.TABLE_NAME,
-                        SongSortColumns.ID + " IN " + inParams, null);
+                IdSetQuery.delete(db, SongSortColumns.TABLE_NAME, SongSortColumns.ID, ids);
                 break;
             case Album:
-                mMusicDatabase.getWritableDatabase().delete(AlbumSortColumns.TABLE_NAME,
-                        AlbumSortColumns.ID + " IN " + inParams, null);
+                IdSetQuery.delete(db, AlbumSortColumns.TABLE_NAME, AlbumSortColumns.ID, ids);
                 break;
             case Artist:
-                mMusicDatabase.getWritableDatabase().delete(ArtistSortColumns.TABLE_NAME,
-                        ArtistSortColumns.ID + " IN " + inParams, null);
+                IdSetQuery.delete(db, ArtistSortColumns.TABLE_NAME, ArtistSortColumns.ID, ids);
                 break;
         }
     }
 
     private void addIds(Collection<Long> ids, SortParameter idType) {
-        StringBuilder builder = new StringBuilder();
+        String idColumn = null;
         switch (idType) {
             case Song:
-                builder.append(AudioColumns._ID);
+                idColumn = AudioColumns._ID;
                 break;
             case Album:
-                builder.append(AudioColumns.ALBUM_ID);
+                idColumn = AudioColumns.ALBUM_ID;
                 break;
             case Artist:
-                builder.append(AudioColumns.ARTIST_ID);
+                idColumn = AudioColumns.ARTIST_ID;
                 break;
         }
 
-        builder.append(" IN (");
-        builder.append(MusicUtils.buildCollectionAsString(ids));
-        builder.append(")");
-
-        updateLocalizedStore(mMusicDatabase.getWritableDatabase(), builder.toString());
+        final SQLiteDatabase db = mMusicDatabase.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (String selection : IdSetQuery.buildSelections(idColumn, ids)) {
+                updateLocalizedStore(db, selection, SQLiteDatabase.CONFLICT_IGNORE);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
     }
 
-    private static String createJoin(String tableName, String firstParam, String secondParam) {
-        return " JOIN " + tableName + " ON (" + firstParam + "=" + secondParam + ")";
+    private static String createIndex(String tableName, String... columns) {
+        return "CREATE INDEX IF NOT EXISTS " + tableName + "_" + columns[0] + "_idx ON "
+                + tableName + "(" + TextUtils.join(",", columns) + ");";
     }
 
-    private static String createOrderBy(String first, String second, boolean descending) {
-        String desc = descending ? " DESC" : "";
-        return first + desc + "," + second + desc;
+    private static String createOrderBy(String sortKey, boolean descending) {
+        return descending ? sortKey + " DESC" : sortKey;
     }
 
     private static final class SongSortColumns {
@@ -546,11 +763,23 @@ public class LocalizedStore {
         /* The numerical index of the bucket */
         public static final String NAME_BUCKET = "song_name_bucket";
 
-        /* Used for joins */
-        public static final String CONCRETE_ID = TABLE_NAME + "." + ID;
+        /* The bucket and collation key of the name */
+        public static final String SORT_KEY = "song_sort_key";
+
+        /* The label of the artist, copied so sorting by artist doesn't need a join */
+        public static final String ARTIST_LABEL = "song_artist_label";
+
+        /* The sort key of the artist */
+        public static final String ARTIST_SORT_KEY = "song_artist_sort_key";
+
+        /* The label of the album */
+        public static final String ALBUM_LABEL = "song_album_label";
+
+        /* The sort key of the album */
+        public static final String ALBUM_SORT_KEY = "song_album_sort_key";
 
         public static String getOrderBy(boolean descending) {
-            return createOrderBy(NAME_BUCKET, NAME, descending);
+            return createOrderBy(SORT_KEY, descending);
         }
     }
 
@@ -574,11 +803,14 @@ public class LocalizedStore {
         /* The numerical index of the bucket */
         public static final String NAME_BUCKET = "album_name_bucket";
 
-        /* Used for joins */
-        public static final String CONCRETE_ID = TABLE_NAME + "." + ID;
+        /* The bucket and collation key of the name */
+        public static final String SORT_KEY = "album_sort_key";
+
+        /* The sort key of the artist, copied so sorting by artist doesn't need a join */
+        public static final String ARTIST_SORT_KEY = "album_artist_sort_key";
 
         public static String getOrderBy(boolean descending) {
-            return createOrderBy(NAME_BUCKET, NAME, descending);
+            return createOrderBy(SORT_KEY, descending);
         }
     }
 
@@ -600,11 +832,11 @@ public class LocalizedStore {
         /* The numerical index of the bucket */
         public static final String NAME_BUCKET = "artist_name_bucket";
 
-        /* Used for joins */
-        public static final String CONCRETE_ID = TABLE_NAME + "." + ID;
+        /* The bucket and collation key of the name */
+        public static final String SORT_KEY = "artist_sort_key";
 
         public static String getOrderBy(boolean descending) {
-            return createOrderBy(NAME_BUCKET, NAME, descending);
+            return createOrderBy(SORT_KEY, descending);
         }
     }
 
@@ -31,11 +31,16 @@ public class MusicDB extends SQLiteOpenHelper {
      * v3 Dec 4 2014    Add Sorting tables similar to Contacts to enable other languages like
      *                  Chinese to properly sort as they would expect
      * v4 Jan 6 2015    Missed Collate keyword on the LocalizedSongSortTable
+     * v5 Oct 18 2026   Added the playback queue journal so queue edits are saved as deltas
+     * v6 Oct 18 2026   Replaced the SongPlayCount week columns with a decaying score
+     * v7 Oct 18 2026   Added ArtworkColorStore so palette colors survive restarts
+     * v8 Oct 18 2026   Added collation sort keys and covering indexes to the LocalizedStore
+     * v9 Oct 18 2026   Flag the ArtworkColorStore colors extracted from thumbnails
      */
 
 
     /* Version constant to increment when the database should be rebuilt */
-    private static final int VERSION = 4;
+    private static final int VERSION = 9;
 
     /* Name of database file */
     private static final String DATABASENAME = "musicdb.db";
@@ -69,6 +74,7 @@ public class MusicDB extends SQLiteOpenHelper {
         SearchHistory.getInstance(mContext).onCreate(db);
         MusicPlaybackState.getInstance(mContext).onCreate(db);
         LocalizedStore.getInstance(mContext).onCreate(db);
+        ArtworkColorStore.getInstance(mContext).onCreate(db);
     }
 
     @Override
@@ -80,6 +86,7 @@ public class MusicDB extends SQLiteOpenHelper {
         SearchHistory.getInstance(mContext).onUpgrade(db, oldVersion, newVersion);
         MusicPlaybackState.getInstance(mContext).onUpgrade(db, oldVersion, newVersion);
         LocalizedStore.getInstance(mContext).onUpgrade(db, oldVersion, newVersion);
+        ArtworkColorStore.getInstance(mContext).onUpgrade(db, oldVersion, newVersion);
     }
 
     @Override
@@ -93,5 +100,6 @@ public class MusicDB extends SQLiteOpenHelper {
         SearchHistory.getInstance(mContext).onDowngrade(db, oldVersion, newVersion);
         MusicPlaybackState.getInstance(mContext).onDowngrade(db, oldVersion, newVersion);
         LocalizedStore.getInstance(mContext).onDowngrade(db, oldVersion, newVersion);
+        ArtworkColorStore.getInstance(mContext).onDowngrade(db, oldVersion, newVersion);
     }
 }
@@ -19,23 +19,63 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.util.AtomicFile;
+import android.util.Log;
 
 import org.lineageos.eleven.Config;
-import org.lineageos.eleven.service.MusicPlaybackTrack;
+import org.lineageos.eleven.service.PlaybackQueue;
 import org.lineageos.eleven.utils.Lists;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.LinkedList;
 
 /**
  * This keeps track of the music playback and history state of the playback service
  */
 public class MusicPlaybackState {
+    private static final String TAG = "MusicPlaybackState";
+
     private static MusicPlaybackState sInstance = null;
 
+    /* file name of the binary queue snapshot, stored next to the database */
+    private static final String SNAPSHOT_NAME = "playbackqueue.snapshot";
+
+    /* rewrite the queue in full once the journal holds more rows than this or half the queue */
+    private static final int MIN_COMPACTION_ROWS = 500;
+
     private MusicDB mMusicDatabase = null;
 
+    /* queue edits not written to the journal yet */
+    private final ArrayList<JournalEntry> mPendingOps = new ArrayList<>();
+
+    /* number of rows currently in the journal table */
+    private int mJournalRows;
+
+    /* true if the stored queue can't be brought up to date through the journal */
+    private boolean mNeedsCompaction = true;
+
+    /* the queue last returned by getQueue(), which matches what is stored */
+    private PlaybackQueue mLoadedQueue;
+
+    /* the history as last written, to skip rewriting it when it didn't change */
+    private int[] mSavedHistory;
+
+    /* the binary snapshot, the database tables are only used if it can't be written */
+    private final AtomicFile mSnapshotFile;
+
+    /* the snapshot read by getQueue(), kept until its history is read as well */
+    private QueueSnapshot mSnapshot;
+
+    /* the generation of the last snapshot written or read */
+    private int mGeneration;
+
+    /* true if the journal applies to the snapshot, false if to the database copy of the queue */
+    private boolean mJournalOnSnapshot;
+
+    /* true if the history table replaces the history of the snapshot */
+    private boolean mHistoryJournaled;
+
     /**
      * Constructor of <code>MusicPlaybackState</code>
      *
@@ -43,6 +83,7 @@ public class MusicPlaybackState {
      */
     public MusicPlaybackState(final Context context) {
         mMusicDatabase = MusicDB.getInstance(context);
+        mSnapshotFile = new AtomicFile(context.getDatabasePath(SNAPSHOT_NAME));
     }
 
     public void onCreate(final SQLiteDatabase db) {
@@ -74,11 +115,40 @@ public class MusicPlaybackState {
         builder.append(" INT NOT NULL);");
 
         db.execSQL(builder.toString());
+
+        builder = new StringBuilder();
+        builder.append("CREATE TABLE IF NOT EXISTS ");
+        builder.append(PlaybackQueueJournalColumns.NAME);
+        builder.append("(");
+
+        builder.append(PlaybackQueueJournalColumns.OPERATION);
+        builder.append(" INT NOT NULL,");
+
+        builder.append(PlaybackQueueJournalColumns.POSITION);
+        builder.append(" INT NOT NULL,");
+
+        builder.append(PlaybackQueueJournalColumns.EXTRA);
+        builder.append(" INT NOT NULL,");
+
+        builder.append(PlaybackQueueJournalColumns.TRACK_ID);
+        builder.append(" LONG,");
+
+        builder.append(PlaybackQueueJournalColumns.SOURCE_ID);
+        builder.append(" LONG,");
+
+        builder.append(PlaybackQueueJournalColumns.SOURCE_TYPE);
+        builder.append(" INT,");
+
+        builder.append(PlaybackQueueJournalColumns.SOURCE_POSITION);
+        builder.append(" INT);");
+
+        db.execSQL(builder.toString());
     }
 
     public void onUpgrade(final SQLiteDatabase db, final int oldVersion, final int newVersion) {
         // this table was created in version 2 so call the onCreate method if we hit that scenario
-        if (oldVersion < 2 && newVersion >= 2) {
+        // the journal table was added in version 5
+        if ((oldVersion < 2 && newVersion >= 2) || (oldVersion < 5 && newVersion >= 5)) {
             onCreate(db);
         }
     }
@@ -87,6 +157,7 @@ public class MusicPlaybackState {
         // If we ever have downgrade, drop the table to be safe
         db.execSQL("DROP TABLE IF EXISTS " + PlaybackQueueColumns.NAME);
         db.execSQL("DROP TABLE IF EXISTS " + PlaybackHistoryColumns.NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + PlaybackQueueJournalColumns.NAME);
         onCreate(db);
     }
 
@@ -102,69 +173,229 @@ public class MusicPlaybackState {
     }
 
     /**
-     * Clears the existing database and saves the queue and history into the db so that when the
-     * app is restarted, the tracks you were listening to is restored
+     * Starts journaling the edits made to the given queue so that {@link #saveState} only has
+     * to write what changed. Unless the queue is the one just returned by {@link #getQueue()},
+     * the next save rewrites the stored queue in full.
+     * @param queue the queue the service plays from
+     */
+    public synchronized void trackQueue(final PlaybackQueue queue) {
+        if (queue != mLoadedQueue) {
+            mPendingOps.clear();
+            mNeedsCompaction = true;
+        }
+        mLoadedQueue = null;
+        queue.setCallback(mQueueCallback);
+    }
+
+    /**
+     * Saves the queue, history and playback position so that when the app is restarted, the
+     * tracks you were listening to are restored. Queue edits recorded since the last save are
+     * appended to the journal in a single transaction. The queue is only written in full, as
+     * the binary snapshot {@link #getQueue()} reads first, when compacting: once the journal
+     * grows too large compared to the queue, after the queue was cleared or replaced, or when
+     * asked to, such as when the service shuts down. The database only gets a full copy of the
+     * queue if the snapshot can't be written.
      * @param queue the queue to save
      * @param history the history to save
+     * @param position the current position in the queue
+     * @param shuffleMode the current shuffle mode
+     * @param repeatMode the current repeat mode
+     * @param compact true to write the queue in full if anything was journaled since the last
+     *                time it was
      */
-    public synchronized void saveState(final ArrayList<MusicPlaybackTrack> queue,
-                                       LinkedList<Integer> history) {
-        final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
-        database.beginTransaction();
+    public synchronized void saveState(final PlaybackQueue queue, LinkedList<Integer> history,
+                                       final int position, final int shuffleMode,
+                                       final int repeatMode, final boolean compact) {
+        int pendingRows = 0;
+        for (JournalEntry entry : mPendingOps) {
+            pendingRows += entry.getRowCount();
+        }
+        final boolean historyChanged = !isSavedHistory(history);
+        final boolean rewrite = mNeedsCompaction
+                || mJournalRows + pendingRows > Math.max(MIN_COMPACTION_ROWS, queue.size() / 2)
+                || (compact && (mJournalRows > 0 || pendingRows > 0 || historyChanged));
 
+        if (!rewrite && pendingRows == 0 && !historyChanged) {
+            return;
+        }
+
+        if (rewrite && writeSnapshot(queue, history, position, shuffleMode, repeatMode)) {
+            return;
+        }
+        saveDatabaseState(queue, history, rewrite, historyChanged);
+    }
+
+    /**
+     * Writes the queue and history in full as a new snapshot and empties the journal
+     * @return true if the snapshot was written
+     */
+    private boolean writeSnapshot(final PlaybackQueue queue, LinkedList<Integer> history,
+                                  final int position, final int shuffleMode,
+                                  final int repeatMode) {
+        final int generation = mGeneration + 1;
         try {
-            database.delete(PlaybackQueueColumns.NAME, null, null);
-            database.delete(PlaybackHistoryColumns.NAME, null, null);
-            database.setTransactionSuccessful();
-        } finally {
-            database.endTransaction();
+            QueueSnapshot.write(mSnapshotFile, queue, history, position, shuffleMode,
+                    repeatMode, generation);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write the queue snapshot, saving to the database", e);
+            return false;
         }
 
-        final int NUM_PROCESS = 20;
-        int position = 0;
-        while (position < queue.size()) {
-            database.beginTransaction();
-            try {
-                for (int i = position; i < queue.size() && i < position + NUM_PROCESS; i++) {
-                    MusicPlaybackTrack track = queue.get(i);
-                    ContentValues values = new ContentValues(4);
+        // if this doesn't make it to disk, the old journal is told apart by its generation
+        clearDatabaseQueue();
+        mGeneration = generation;
+        mJournalOnSnapshot = true;
+        mHistoryJournaled = false;
+        mNeedsCompaction = false;
+        mPendingOps.clear();
+        mSavedHistory = toArray(history);
+        return true;
+    }
 
-                    values.put(PlaybackQueueColumns.TRACK_ID, track.mId);
-                    values.put(PlaybackQueueColumns.SOURCE_ID, track.mSourceId);
-                    values.put(PlaybackQueueColumns.SOURCE_TYPE, track.mSourceType.mId);
-                    values.put(PlaybackQueueColumns.SOURCE_POSITION, track.mSourcePosition);
+    /**
+     * Saves the changes made to the queue and history into the db. Queue edits recorded since
+     * the last save are appended to the journal, or if the queue has to be written in full and
+     * the snapshot couldn't be, the queue is rewritten in the database and the journal emptied.
+     * @param queue the queue to save
+     * @param history the history to save
+     * @param rewrite true to write the queue in full
+     * @param historyChanged true if the history differs from the one last written
+     */
+    private void saveDatabaseState(final PlaybackQueue queue, LinkedList<Integer> history,
+                                   final boolean rewrite, final boolean historyChanged) {
+        // a rewrite moves the history out of the snapshot as well
+        final boolean writeHistory = historyChanged || rewrite;
+        final boolean markHistory = writeHistory && !rewrite && mJournalOnSnapshot
+                && !mHistoryJournaled;
+        int journalRows = 0;
+
+        final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
+        database.beginTransaction();
+
+        try {
+            if (rewrite) {
+                database.delete(PlaybackQueueColumns.NAME, null, null);
+                database.delete(PlaybackQueueJournalColumns.NAME, null, null);
+
+                ContentValues values = new ContentValues(4);
+                for (int i = 0; i < queue.size(); i++) {
+                    values.put(PlaybackQueueColumns.TRACK_ID, queue.getId(i));
+                    values.put(PlaybackQueueColumns.SOURCE_ID, queue.getSourceId(i));
+                    values.put(PlaybackQueueColumns.SOURCE_TYPE, queue.getSourceType(i).mId);
+                    values.put(PlaybackQueueColumns.SOURCE_POSITION, queue.getSourcePosition(i));
 
                     database.insert(PlaybackQueueColumns.NAME, null, values);
                 }
-                database.setTransactionSuccessful();
-            } finally {
-                database.endTransaction();
-                position += NUM_PROCESS;
+            } else {
+                if (mJournalOnSnapshot && mJournalRows == 0) {
+                    // the first row tells which snapshot the journal applies to
+                    JournalEntry.writeMarker(database, JournalEntry.BASE, mGeneration);
+                    journalRows++;
+                }
+                for (JournalEntry entry : mPendingOps) {
+                    entry.write(database);
+                    journalRows += entry.getRowCount();
+                }
             }
-        }
-
-        if (history != null) {
-            Iterator<Integer> iter = history.iterator();
-            while (iter.hasNext()) {
-                database.beginTransaction();
-                try {
-                    for (int i = 0; iter.hasNext() && i < NUM_PROCESS; i++) {
-                        ContentValues values = new ContentValues(1);
-                        values.put(PlaybackHistoryColumns.POSITION, iter.next());
 
+            if (writeHistory) {
+                database.delete(PlaybackHistoryColumns.NAME, null, null);
+                if (history != null) {
+                    ContentValues values = new ContentValues(1);
+                    for (Integer position : history) {
+                        values.put(PlaybackHistoryColumns.POSITION, position);
                         database.insert(PlaybackHistoryColumns.NAME, null, values);
                     }
-
-                    database.setTransactionSuccessful();
-                } finally {
-                    database.endTransaction();
+                }
+                if (markHistory) {
+                    // from now on the history table replaces the history of the snapshot
+                    JournalEntry.writeMarker(database, JournalEntry.HISTORY, 0);
+                    journalRows++;
                 }
             }
+
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        if (rewrite) {
+            // the snapshot is outdated now, make sure it isn't restored instead of the database
+            mSnapshotFile.delete();
+            mJournalOnSnapshot = false;
+            mJournalRows = 0;
+            mNeedsCompaction = false;
+        } else {
+            mJournalRows += journalRows;
+        }
+        if (markHistory) {
+            mHistoryJournaled = true;
         }
+        mPendingOps.clear();
+        if (writeHistory) {
+            mSavedHistory = toArray(history);
+        }
+    }
+
+    private void clearDatabaseQueue() {
+        final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
+        database.beginTransaction();
+        try {
+            database.delete(PlaybackQueueColumns.NAME, null, null);
+            database.delete(PlaybackQueueJournalColumns.NAME, null, null);
+            database.delete(PlaybackHistoryColumns.NAME, null, null);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        mJournalRows = 0;
     }
 
-    public ArrayList<MusicPlaybackTrack> getQueue() {
-        ArrayList<MusicPlaybackTrack> results = Lists.newArrayList();
+    /**
+     * Restores the queue from the binary snapshot, or if there is no usable snapshot, from the
+     * full copy in the database, which is how queues saved by older versions are migrated. The
+     * journal is then replayed on top of it.
+     * @return the saved queue
+     */
+    public synchronized PlaybackQueue getQueue() {
+        mSnapshot = null;
+        try {
+            mSnapshot = QueueSnapshot.read(mSnapshotFile);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read the queue snapshot, falling back to the database", e);
+        }
+
+        final PlaybackQueue results;
+        if (mSnapshot != null) {
+            results = mSnapshot.mQueue;
+            mGeneration = mSnapshot.mGeneration;
+            mJournalOnSnapshot = true;
+            mSavedHistory = mSnapshot.mHistory;
+        } else {
+            results = getDatabaseQueue();
+            mJournalOnSnapshot = false;
+            mSavedHistory = null;
+        }
+        replayJournal(results);
+
+        mPendingOps.clear();
+        mLoadedQueue = results;
+        return results;
+    }
+
+    /**
+     * @return the snapshot the last {@link #getQueue()} call restored from, or null if it was
+     * restored from the database
+     */
+    public synchronized QueueSnapshot getSnapshot() {
+        return mSnapshot;
+    }
+
+    /**
+     * @return the full copy of the queue stored in the database
+     */
+    private PlaybackQueue getDatabaseQueue() {
+        PlaybackQueue results = null;
 
         Cursor cursor = null;
         try {
@@ -172,15 +403,73 @@ public class MusicPlaybackState {
                     null, null, null, null, null);
 
             if (cursor != null && cursor.moveToFirst()) {
-                results.ensureCapacity(cursor.getCount());
+                results = new PlaybackQueue(cursor.getCount());
 
                 do {
-                    results.add(new MusicPlaybackTrack(cursor.getLong(0), cursor.getLong(1),
-                            Config.IdType.getTypeById(cursor.getInt(2)), cursor.getInt(3)));
+                    results.add(cursor.getLong(0), cursor.getLong(1),
+                            Config.IdType.getTypeById(cursor.getInt(2)), cursor.getInt(3));
                 } while (cursor.moveToNext());
             }
+            return results != null ? results : new PlaybackQueue();
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+                cursor = null;
+            }
+        }
+    }
 
-            return results;
+    /**
+     * Replays the journal on top of the queue it was recorded against. A journal recorded
+     * against another snapshot or against the database copy is left out, the queue is then
+     * written in full on the next save.
+     * @param queue the queue restored from the snapshot or the database copy
+     */
+    private void replayJournal(final PlaybackQueue queue) {
+        mJournalRows = 0;
+        mNeedsCompaction = false;
+        mHistoryJournaled = false;
+
+        Cursor cursor = null;
+        try {
+            cursor = mMusicDatabase.getReadableDatabase().query(PlaybackQueueJournalColumns.NAME,
+                    new String[] {
+                            PlaybackQueueJournalColumns.OPERATION,
+                            PlaybackQueueJournalColumns.POSITION,
+                            PlaybackQueueJournalColumns.EXTRA,
+                            PlaybackQueueJournalColumns.TRACK_ID,
+                            PlaybackQueueJournalColumns.SOURCE_ID,
+                            PlaybackQueueJournalColumns.SOURCE_TYPE,
+                            PlaybackQueueJournalColumns.SOURCE_POSITION
+                    }, null, null, null, null, "rowid");
+
+            if (cursor == null || !cursor.moveToFirst()) {
+                return;
+            }
+            mJournalRows = cursor.getCount();
+
+            final boolean onSnapshot = cursor.getInt(0) == JournalEntry.BASE;
+            if (onSnapshot != mJournalOnSnapshot
+                    || (onSnapshot && cursor.getInt(2) != mGeneration)) {
+                mNeedsCompaction = true;
+                return;
+            }
+
+            try {
+                do {
+                    final int operation = cursor.getInt(0);
+                    if (operation == JournalEntry.HISTORY) {
+                        mHistoryJournaled = true;
+                        mSavedHistory = null;
+                    } else if (operation != JournalEntry.BASE) {
+                        replay(queue, cursor);
+                    }
+                } while (cursor.moveToNext());
+            } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+                // the journal doesn't match the queue it was recorded against, keep what
+                // could be replayed and write it back in full on the next save
+                mNeedsCompaction = true;
+            }
         } finally {
             if (cursor != null) {
                 cursor.close();
@@ -189,9 +478,71 @@ public class MusicPlaybackState {
         }
     }
 
-    public LinkedList<Integer> getHistory(final int playlistSize) {
+    private static void replay(final PlaybackQueue queue, final Cursor cursor) {
+        final int position = cursor.getInt(1);
+        final int extra = cursor.getInt(2);
+        switch (cursor.getInt(0)) {
+            case JournalEntry.INSERT:
+                if (position > queue.size()) {
+                    throw new IndexOutOfBoundsException("Insert at " + position);
+                }
+                queue.insert(position, cursor.getLong(3), cursor.getLong(4),
+                        Config.IdType.getTypeById(cursor.getInt(5)), cursor.getInt(6));
+                break;
+            case JournalEntry.REMOVE:
+                queue.remove(position, extra);
+                break;
+            case JournalEntry.MOVE:
+                if (extra < 0 || extra >= queue.size()) {
+                    throw new IndexOutOfBoundsException("Move to " + extra);
+                }
+                queue.move(position, extra);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown journal operation");
+        }
+    }
+
+    private boolean isSavedHistory(final LinkedList<Integer> history) {
+        final int size = history != null ? history.size() : 0;
+        if (mSavedHistory == null || mSavedHistory.length != size) {
+            return false;
+        }
+        if (history != null) {
+            int i = 0;
+            for (Integer position : history) {
+                if (mSavedHistory[i++] != position) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static int[] toArray(final LinkedList<Integer> history) {
+        if (history == null) {
+            return new int[0];
+        }
+        final int[] results = new int[history.size()];
+        int i = 0;
+        for (Integer position : history) {
+            results[i++] = position;
+        }
+        return results;
+    }
+
+    public synchronized LinkedList<Integer> getHistory(final int playlistSize) {
         LinkedList<Integer> results = Lists.newLinkedList();
 
+        if (mSnapshot != null && !mHistoryJournaled) {
+            for (int pos : mSnapshot.mHistory) {
+                if (pos >= 0 && pos < playlistSize) {
+                    results.add(pos);
+                }
+            }
+            return results;
+        }
+
         Cursor cursor = null;
         try {
             cursor = mMusicDatabase.getReadableDatabase().query(PlaybackHistoryColumns.NAME, null,
@@ -206,6 +557,7 @@ public class MusicPlaybackState {
                 } while (cursor.moveToNext());
             }
 
+            mSavedHistory = toArray(results);
             return results;
         } finally {
             if (cursor != null) {
@@ -215,6 +567,145 @@ public class MusicPlaybackState {
         }
     }
 
+    /**
+     * A queue edit waiting to be written to the journal
+     */
+    private static final class JournalEntry {
+        public static final int INSERT = 0;
+        public static final int REMOVE = 1;
+        public static final int MOVE = 2;
+
+        /* markers, the generation of the snapshot and that the history table is used */
+        public static final int BASE = 3;
+        public static final int HISTORY = 4;
+
+        public final int mOperation;
+        public final int mPosition;
+        public int mExtra;
+
+        /* the inserted tracks, only set for INSERT */
+        public long[] mIds;
+        public long[] mSourceIds;
+        public int[] mSourceTypes;
+        public int[] mSourcePositions;
+
+        public JournalEntry(final int operation, final int position, final int extra) {
+            mOperation = operation;
+            mPosition = position;
+            mExtra = extra;
+        }
+
+        public int getRowCount() {
+            return mOperation == INSERT ? mIds.length : 1;
+        }
+
+        public static void writeMarker(final SQLiteDatabase database, final int operation,
+                                       final int extra) {
+            ContentValues values = new ContentValues(3);
+            values.put(PlaybackQueueJournalColumns.OPERATION, operation);
+            values.put(PlaybackQueueJournalColumns.POSITION, 0);
+            values.put(PlaybackQueueJournalColumns.EXTRA, extra);
+            database.insert(PlaybackQueueJournalColumns.NAME, null, values);
+        }
+
+        public void write(final SQLiteDatabase database) {
+            ContentValues values = new ContentValues(7);
+            values.put(PlaybackQueueJournalColumns.OPERATION, mOperation);
+            if (mOperation != INSERT) {
+                values.put(PlaybackQueueJournalColumns.POSITION, mPosition);
+                values.put(PlaybackQueueJournalColumns.EXTRA, mExtra);
+                database.insert(PlaybackQueueJournalColumns.NAME, null, values);
+                return;
+            }
+
+            values.put(PlaybackQueueJournalColumns.EXTRA, 0);
+            for (int i = 0; i < mIds.length; i++) {
+                values.put(PlaybackQueueJournalColumns.POSITION, mPosition + i);
+                values.put(PlaybackQueueJournalColumns.TRACK_ID, mIds[i]);
+                values.put(PlaybackQueueJournalColumns.SOURCE_ID, mSourceIds[i]);
+                values.put(PlaybackQueueJournalColumns.SOURCE_TYPE, mSourceTypes[i]);
+                values.put(PlaybackQueueJournalColumns.SOURCE_POSITION, mSourcePositions[i]);
+                database.insert(PlaybackQueueJournalColumns.NAME, null, values);
+            }
+        }
+    }
+
+    /**
+     * Records the edits made to the tracked queue, merging the ones that cancel out or extend
+     * each other, such as an item being dragged across several rows
+     */
+    private final PlaybackQueue.Callback mQueueCallback = new PlaybackQueue.Callback() {
+        @Override
+        public void onInserted(PlaybackQueue queue, int position, int count) {
+            synchronized (MusicPlaybackState.this) {
+                if (mNeedsCompaction) {
+                    return;
+                }
+                JournalEntry entry = new JournalEntry(JournalEntry.INSERT, position, count);
+                entry.mIds = new long[count];
+                entry.mSourceIds = new long[count];
+                entry.mSourceTypes = new int[count];
+                entry.mSourcePositions = new int[count];
+                for (int i = 0; i < count; i++) {
+                    entry.mIds[i] = queue.getId(position + i);
+                    entry.mSourceIds[i] = queue.getSourceId(position + i);
+                    entry.mSourceTypes[i] = queue.getSourceType(position + i).mId;
+                    entry.mSourcePositions[i] = queue.getSourcePosition(position + i);
+                }
+                mPendingOps.add(entry);
+            }
+        }
+
+        @Override
+        public void onRemoved(int first, int last) {
+            synchronized (MusicPlaybackState.this) {
+                if (mNeedsCompaction) {
+                    return;
+                }
+                JournalEntry previous = getLastPendingOp();
+                if (previous != null && previous.mOperation == JournalEntry.INSERT
+                        && previous.mPosition == first && previous.mIds.length == last - first + 1) {
+                    mPendingOps.remove(mPendingOps.size() - 1);
+                } else {
+                    mPendingOps.add(new JournalEntry(JournalEntry.REMOVE, first, last));
+                }
+            }
+        }
+
+        @Override
+        public void onMoved(int from, int to) {
+            synchronized (MusicPlaybackState.this) {
+                if (mNeedsCompaction) {
+                    return;
+                }
+                JournalEntry previous = getLastPendingOp();
+                if (previous != null && previous.mOperation == JournalEntry.MOVE
+                        && previous.mExtra == from) {
+                    if (previous.mPosition == to) {
+                        mPendingOps.remove(mPendingOps.size() - 1);
+                    } else {
+                        previous.mExtra = to;
+                    }
+                } else {
+                    mPendingOps.add(new JournalEntry(JournalEntry.MOVE, from, to));
+                }
+            }
+        }
+
+        @Override
+        public void onCleared() {
+            synchronized (MusicPlaybackState.this) {
+                // nothing before a clear matters anymore, rewrite the whole queue instead
+                mPendingOps.clear();
+                mNeedsCompaction = true;
+            }
+        }
+
+        private JournalEntry getLastPendingOp() {
+            return mPendingOps.isEmpty() ? null : mPendingOps.get(mPendingOps.size() - 1);
+        }
+    };
+
     public class PlaybackQueueColumns {
         /* Table name */
         public static final String NAME = "playbackqueue";
@@ -239,4 +730,28 @@ public class MusicPlaybackState {
         /* the position of the history item within the queue */
         public static final String POSITION = "position";
     }
+
+    public class PlaybackQueueJournalColumns {
+        /* Table name */
+        public static final String NAME = "playbackqueuejournal";
+
+        /* the kind of edit: insert, remove or move, or one of the markers */
+        public static final String OPERATION = "operation";
+
+        /* the position of the inserted track, the first removed or the moved track */
+        public static final String POSITION = "position";
+
+        /* the last removed position for removals, the destination for moves and the
+           snapshot generation for the base marker */
+        public static final String EXTRA = "extra";
+
+        /* the remaining columns describe the inserted track, see PlaybackQueueColumns */
+        public static final String TRACK_ID = "trackid";
+
+        public static final String SOURCE_ID = "sourceid";
+
+        public static final String SOURCE_TYPE = "sourcetype";
+
+        public static final String SOURCE_POSITION = "sourceposition";
+    }
 }
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2019 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.provider;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.util.Log;
+
+import java.util.Arrays;
+
+/**
+ * Collects track plays in memory and writes them to the {@link RecentStore} and
+ * {@link SongPlayCount} tables from a background thread, batching all the plays that happened
+ * since the last write into a single transaction. A write happens once
+ * {@link #MAX_PENDING_PLAYS} plays are pending or {@link #FLUSH_DELAY} after the first pending
+ * play, whichever comes first.
+ *
+ * The playback service also flushes before it broadcasts a track change, so the play of the
+ * new track is in the database by the time other processes reload their lists. The stores
+ * flush the pending plays of their own process before reading or deleting, without starting
+ * a recorder in processes that don't play music.
+ */
+public class PlayStatsRecorder {
+    private static final String TAG = PlayStatsRecorder.class.getSimpleName();
+
+    private static PlayStatsRecorder sInstance = null;
+
+    private static final int FLUSH = 0;
+
+    /* plays are written at the latest this long after being recorded */
+    private static final long FLUSH_DELAY = 10 * 1000;
+
+    /* number of pending plays that triggers an immediate write */
+    private static final int MAX_PENDING_PLAYS = 20;
+
+    private final Context mContext;
+    private final Object mFlushLock = new Object();
+
+    private final HandlerThread mHandlerThread;
+    private final Handler mHandler;
+
+    /* the plays not written yet, guarded by this */
+    private long[] mSongIds = new long[MAX_PENDING_PLAYS];
+    private long[] mTimesPlayed = new long[MAX_PENDING_PLAYS];
+    private int mPendingCount;
+
+    /**
+     * @param context The {@link android.content.Context} to use
+     * @return A new instance of this class.
+     */
+    public static final synchronized PlayStatsRecorder getInstance(final Context context) {
+        if (sInstance == null) {
+            sInstance = new PlayStatsRecorder(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Writes the pending plays of this process, if it records any. Unlike
+     * {@link #getInstance(Context)} this doesn't start a recorder.
+     */
+    public static void flushPending() {
+        final PlayStatsRecorder recorder;
+        synchronized (PlayStatsRecorder.class) {
+            recorder = sInstance;
+        }
+        if (recorder != null) {
+            recorder.flush();
+        }
+    }
+
+    private PlayStatsRecorder(final Context context) {
+        mContext = context;
+
+        mHandlerThread = new HandlerThread("PlayStatsRecorder",
+                android.os.Process.THREAD_PRIORITY_BACKGROUND);
+        mHandlerThread.start();
+        mHandler = new Handler(mHandlerThread.getLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                if (msg.what == FLUSH) {
+                    flush();
+                }
+            }
+        };
+    }
+
+    /**
+     * Records that a song started playing. Returns immediately, the play is written later.
+     * @param songId The song id that was played
+     */
+    public synchronized void recordPlay(final long songId) {
+        if (songId < 0) {
+            return;
+        }
+
+        if (mPendingCount == mSongIds.length) {
+            mSongIds = Arrays.copyOf(mSongIds, mPendingCount * 2);
+            mTimesPlayed = Arrays.copyOf(mTimesPlayed, mPendingCount * 2);
+        }
+        mSongIds[mPendingCount] = songId;
+        mTimesPlayed[mPendingCount] = System.currentTimeMillis();
+        mPendingCount++;
+
+        if (mPendingCount >= MAX_PENDING_PLAYS) {
+            mHandler.removeMessages(FLUSH);
+            mHandler.sendEmptyMessage(FLUSH);
+        } else if (!mHandler.hasMessages(FLUSH)) {
+            mHandler.sendEmptyMessageDelayed(FLUSH, FLUSH_DELAY);
+        }
+    }
+
+    /**
+     * Writes all the pending plays on the calling thread. When this returns, every play
+     * recorded before the call is in the database.
+     */
+    public void flush() {
+        synchronized (mFlushLock) {
+            final long[] songIds;
+            final long[] timesPlayed;
+            final int count;
+            synchronized (this) {
+                mHandler.removeMessages(FLUSH);
+                if (mPendingCount == 0) {
+                    return;
+                }
+                songIds = Arrays.copyOf(mSongIds, mPendingCount);
+                timesPlayed = Arrays.copyOf(mTimesPlayed, mPendingCount);
+                count = mPendingCount;
+                mPendingCount = 0;
+            }
+
+            final RecentStore recentStore = RecentStore.getInstance(mContext);
+            final SongPlayCount songPlayCount = SongPlayCount.getInstance(mContext);
+            final SQLiteDatabase database = MusicDB.getInstance(mContext).getWritableDatabase();
+            database.beginTransaction();
+            try {
+                for (int i = 0; i < count; i++) {
+                    recentStore.addSongIdInternal(songIds[i], timesPlayed[i]);
+                    songPlayCount.bumpSongCountInternal(songIds[i]);
+                }
+                database.setTransactionSuccessful();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Unable to save " + count + " plays", e);
+            } finally {
+                database.endTransaction();
+            }
+        }
+    }
+}
@@ -89,6 +89,8 @@ public class PropertiesStore {
     public interface DbProperties {
         String ICU_VERSION = "icu_version";
         String LOCALE = "locale";
+        /* the highest date_modified of the songs the localized data was synced with */
+        String MEDIA_LAST_MODIFIED = "media_last_modified";
     }
 
     private static final class PropertiesColumns {
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2019 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.provider;
+
+import android.util.AtomicFile;
+
+import org.lineageos.eleven.service.PlaybackQueue;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.zip.CRC32;
+
+/**
+ * A binary copy of the playback queue, the history and the playback position, so the queue can
+ * be restored at service start with a single memory-mapped read instead of going through
+ * SQLite row by row.
+ *
+ * The file is laid out as a fixed header followed by the queue columns and the history:
+ * <pre>
+ * int magic, int version, int queue size, int history size,
+ * int position, int shuffle mode, int repeat mode, int generation, long crc32 of the payload,
+ * long[size] ids, long[size] source ids, int[size] source positions, byte[size] source types,
+ * int[history size] history
+ * </pre>
+ * Writes go through {@link AtomicFile} so a crash can never leave a half written snapshot.
+ * The generation changes with every write, it tells which snapshot the edits journaled in the
+ * database since were recorded against.
+ */
+public final class QueueSnapshot {
+    private static final int MAGIC = 0x454c5153; // "ELQS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8 * 4 + 8;
+
+    /* entries larger than this are certainly garbage rather than a real queue */
+    private static final int MAX_ENTRIES = 10 * 1000 * 1000;
+
+    public final PlaybackQueue mQueue;
+    public final int[] mHistory;
+    public final int mPosition;
+    public final int mShuffleMode;
+    public final int mRepeatMode;
+    public final int mGeneration;
+
+    private QueueSnapshot(final PlaybackQueue queue, final int[] history, final int position,
+            final int shuffleMode, final int repeatMode, final int generation) {
+        mQueue = queue;
+        mHistory = history;
+        mPosition = position;
+        mShuffleMode = shuffleMode;
+        mRepeatMode = repeatMode;
+        mGeneration = generation;
+    }
+
+    /**
+     * @param file the snapshot file
+     * @return the snapshot, or null if none was written yet
+     * @throws IOException if the snapshot can't be read or is corrupted
+     */
+    public static QueueSnapshot read(final AtomicFile file) throws IOException {
+        final FileInputStream in;
+        try {
+            in = file.openRead();
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+
+        try {
+            final FileChannel channel = in.getChannel();
+            final long length = channel.size();
+            if (length < HEADER_SIZE) {
+                throw new IOException("Truncated snapshot header");
+            }
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            buffer.order(ByteOrder.nativeOrder());
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Unknown snapshot format");
+            }
+            final int size = buffer.getInt();
+            final int historySize = buffer.getInt();
+            final int position = buffer.getInt();
+            final int shuffleMode = buffer.getInt();
+            final int repeatMode = buffer.getInt();
+            final int generation = buffer.getInt();
+            final long crc = buffer.getLong();
+
+            if (size < 0 || size > MAX_ENTRIES || historySize < 0 || historySize > MAX_ENTRIES
+                    || length != HEADER_SIZE + getPayloadSize(size, historySize)) {
+                throw new IOException("Snapshot size mismatch");
+            }
+
+            final CRC32 checksum = new CRC32();
+            checksum.update(buffer.duplicate());
+            if (checksum.getValue() != crc) {
+                throw new IOException("Snapshot checksum mismatch");
+            }
+
+            final long[] ids = new long[size];
+            final long[] sourceIds = new long[size];
+            final int[] sourcePositions = new int[size];
+            final byte[] sourceTypes = new byte[size];
+            final int[] history = new int[historySize];
+
+            buffer.asLongBuffer().get(ids);
+            buffer.position(buffer.position() + size * 8);
+            buffer.asLongBuffer().get(sourceIds);
+            buffer.position(buffer.position() + size * 8);
+            buffer.asIntBuffer().get(sourcePositions);
+            buffer.position(buffer.position() + size * 4);
+            buffer.get(sourceTypes);
+            buffer.asIntBuffer().get(history);
+
+            final PlaybackQueue queue = new PlaybackQueue(ids, sourceIds, sourcePositions,
+                    sourceTypes);
+            return new QueueSnapshot(queue, history, position, shuffleMode, repeatMode,
+                    generation);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Atomically replaces the snapshot
+     *
+     * @param file the snapshot file
+     * @param queue the queue to save
+     * @param history the history to save, or null
+     * @param position the current position in the queue
+     * @param shuffleMode the current shuffle mode
+     * @param repeatMode the current repeat mode
+     * @param generation the generation of the new snapshot
+     * @throws IOException if the snapshot couldn't be written, the previous one is kept
+     */
+    public static void write(final AtomicFile file, final PlaybackQueue queue,
+            final Collection<Integer> history, final int position, final int shuffleMode,
+            final int repeatMode, final int generation) throws IOException {
+        final int size = queue.size();
+        final int historySize = history != null ? history.size() : 0;
+        final ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE
+                + (int) getPayloadSize(size, historySize));
+        buffer.order(ByteOrder.nativeOrder());
+
+        buffer.position(HEADER_SIZE);
+        for (int i = 0; i < size; i++) {
+            buffer.putLong(queue.getId(i));
+        }
+        for (int i = 0; i < size; i++) {
+            buffer.putLong(queue.getSourceId(i));
+        }
+        for (int i = 0; i < size; i++) {
+            buffer.putInt(queue.getSourcePosition(i));
+        }
+        for (int i = 0; i < size; i++) {
+            buffer.put((byte) queue.getSourceType(i).mId);
+        }
+        if (history != null) {
+            for (Integer entry : history) {
+                buffer.putInt(entry);
+            }
+        }
+
+        final CRC32 checksum = new CRC32();
+        checksum.update(buffer.array(), HEADER_SIZE, buffer.capacity() - HEADER_SIZE);
+
+        buffer.position(0);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(size);
+        buffer.putInt(historySize);
+        buffer.putInt(position);
+        buffer.putInt(shuffleMode);
+        buffer.putInt(repeatMode);
+        buffer.putInt(generation);
+        buffer.putLong(checksum.getValue());
+
+        FileOutputStream out = null;
+        try {
+            out = file.startWrite();
+            out.write(buffer.array());
+            file.finishWrite(out);
+        } catch (IOException e) {
+            if (out != null) {
+                file.failWrite(out);
+            }
+            throw e;
+        }
+    }
+
+    private static long getPayloadSize(final int size, final int historySize) {
+        return (long) size * (8 + 8 + 4 + 1) + (long) historySize * 4;
+    }
+}
@@ -63,11 +63,13 @@ public class RecentStore {
     }
 
     /**
-     * Used to store song IDs in the database.
+     * Used to store song IDs in the database. Plays are recorded through
+     * {@link PlayStatsRecorder}, which calls this in batches.
      *
      * @param songId The song id to store
+     * @param timePlayed When the song started playing
      */
-    public void addSongId(final long songId) {
+    void addSongIdInternal(final long songId, final long timePlayed) {
         final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
         database.beginTransaction();
 
@@ -75,7 +77,7 @@ public class RecentStore {
             // see if the most recent item is the same song id, if it is then don't insert
             Cursor mostRecentItem = null;
             try {
-                mostRecentItem = queryRecentIds("1");
+                mostRecentItem = queryRecentIdsInternal("1");
                 if (mostRecentItem != null && mostRecentItem.moveToFirst()) {
                     if (songId == mostRecentItem.getLong(0)) {
                         return;
@@ -91,7 +93,7 @@ public class RecentStore {
             // add the entry
             final ContentValues values = new ContentValues(2);
             values.put(RecentStoreColumns.ID, songId);
-            values.put(RecentStoreColumns.TIMEPLAYED, System.currentTimeMillis());
+            values.put(RecentStoreColumns.TIMEPLAYED, timePlayed);
             database.insert(RecentStoreColumns.NAME, null, values);
 
             // if our db is too large, delete the extra items
@@ -126,6 +128,7 @@ public class RecentStore {
      * @param songId to remove.
      */
     public void removeItem(final long songId) {
+        PlayStatsRecorder.flushPending();
         final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
         database.delete(RecentStoreColumns.NAME, RecentStoreColumns.ID + " = ?", new String[] {
             String.valueOf(songId)
@@ -134,6 +137,7 @@ public class RecentStore {
     }
 
     public void deleteAll() {
+        PlayStatsRecorder.flushPending();
         final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
         database.delete(RecentStoreColumns.NAME, null, null);
     }
@@ -144,6 +148,11 @@ public class RecentStore {
      * @return cursor
      */
     public Cursor queryRecentIds(final String limit) {
+        PlayStatsRecorder.flushPending();
+        return queryRecentIdsInternal(limit);
+    }
+
+    private Cursor queryRecentIdsInternal(final String limit) {
         final SQLiteDatabase database = mMusicDatabase.getReadableDatabase();
         return database.query(RecentStoreColumns.NAME,
                 new String[]{RecentStoreColumns.ID}, null, null, null, null,
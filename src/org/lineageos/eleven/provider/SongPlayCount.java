@@ -20,84 +20,74 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
-import android.view.animation.AccelerateInterpolator;
-import android.view.animation.Interpolator;
 
-import java.util.HashSet;
-import java.util.Iterator;
+import org.lineageos.eleven.utils.IdSetQuery;
+
+import java.util.LinkedHashSet;
 
 /**
  * This database tracks the number of play counts for an individual song.  This is used to drive
  * the top played tracks as well as the playlist images
+ *
+ * Every play adds a weight to the song's score that decays exponentially over time. Since all
+ * the scores decay at the same rate, the ranking doesn't change as time passes and nothing has
+ * to be rewritten when a new week starts. Instead of the decayed score, each row stores
+ * ln(sum(e^(DECAY_PER_WEEK * week played))), which grows with time rather than shrinking, so
+ * a play is a single row update and the top songs are a single indexed query.
  */
 public class SongPlayCount {
     private static SongPlayCount sInstance = null;
 
     private MusicDB mMusicDatabase = null;
 
-    // interpolator curve applied for measuring the curve
-    private static Interpolator sInterpolator = new AccelerateInterpolator(1.5f);
-
     // how many weeks worth of playback to track
     private static final int NUM_WEEKS = 52;
 
-    // how high to multiply the interpolation curve
-    private static int INTERPOLATOR_HEIGHT = 50;
-
-    // how high the base value is. The ratio of the Height to Base is what really matters
-    private static int INTERPOLATOR_BASE = 25;
+    // a play from NUM_WEEKS ago weighs a third of a play from this week, as with the old
+    // week based curve
+    private static final double DECAY_PER_WEEK = Math.log(3) / (NUM_WEEKS - 1);
 
-    private static int ONE_WEEK_IN_MS = 1000 * 60 * 60 * 24 * 7;
+    private static final long ONE_WEEK_IN_MS = 1000L * 60 * 60 * 24 * 7;
 
-    private static String WHERE_ID_EQUALS = SongPlayCountColumns.ID + "=?";
+    private static final String WHERE_ID_EQUALS = SongPlayCountColumns.ID + "=?";
 
-    // number of weeks since epoch time
-    private int mNumberOfWeeksSinceEpoch;
+    // the table and columns used before version 6, kept around for the migration
+    private static final String LEGACY_WEEK_PLAY_COUNT = "week";
+    private static final String LEGACY_LAST_UPDATED_WEEK_INDEX = "weekindex";
 
-    // used to track if we've walkd through the db and updated all the rows
-    private boolean mDatabaseUpdated;
+    // used to track if we've deleted the rows that haven't been played for NUM_WEEKS
+    private boolean mStaleRowsDeleted;
 
     /**
-     * Constructor of <code>RecentStore</code>
+     * Constructor of <code>SongPlayCount</code>
      *
      * @param context The {@link android.content.Context} to use
      */
     public SongPlayCount(final Context context) {
         mMusicDatabase = MusicDB.getInstance(context);
 
-        long msSinceEpoch = System.currentTimeMillis();
-        mNumberOfWeeksSinceEpoch = (int)(msSinceEpoch / ONE_WEEK_IN_MS);
-
-        mDatabaseUpdated = false;
+        mStaleRowsDeleted = false;
     }
 
     public void onCreate(final SQLiteDatabase db) {
         // create the play count table
-        // WARNING: If you change the order of these columns
-        // please update getColumnIndexForWeek
-        StringBuilder builder = new StringBuilder();
-        builder.append("CREATE TABLE IF NOT EXISTS ");
-        builder.append(SongPlayCountColumns.NAME);
-        builder.append("(");
-        builder.append(SongPlayCountColumns.ID);
-        builder.append(" INT UNIQUE,");
-
-        for (int i = 0; i < NUM_WEEKS; i++) {
-            builder.append(getColumnNameForWeek(i));
-            builder.append(" INT DEFAULT 0,");
-        }
-
-        builder.append(SongPlayCountColumns.LAST_UPDATED_WEEK_INDEX);
-        builder.append(" INT NOT NULL,");
-
-        builder.append(SongPlayCountColumns.PLAYCOUNTSCORE);
-        builder.append(" REAL DEFAULT 0);");
-
-        db.execSQL(builder.toString());
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + SongPlayCountColumns.NAME + " ("
+                + SongPlayCountColumns.ID + " INT UNIQUE,"
+                + SongPlayCountColumns.LAST_PLAYED_WEEK_INDEX + " INT NOT NULL,"
+                + SongPlayCountColumns.DECAY_SCORE + " REAL NOT NULL);");
+
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + SongPlayCountColumns.NAME + "_score_idx ON "
+                + SongPlayCountColumns.NAME + "(" + SongPlayCountColumns.DECAY_SCORE + ");");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + SongPlayCountColumns.NAME + "_week_idx ON "
+                + SongPlayCountColumns.NAME + "(" + SongPlayCountColumns.LAST_PLAYED_WEEK_INDEX
+                + ");");
     }
 
     public void onUpgrade(final SQLiteDatabase db, final int oldVersion, final int newVersion) {
-        // No upgrade path needed yet
+        // version 6 replaced the per week play count columns with the decaying score
+        if (oldVersion < 6 && newVersion >= 6) {
+            migrateWeekColumns(db);
+        }
     }
 
     public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
@@ -106,6 +96,53 @@ public class SongPlayCount {
         onCreate(db);
     }
 
+    /**
+     * Converts the rows of the week column table into decaying scores. Every play counted in
+     * a week column is assumed to have happened at the start of that week.
+     */
+    private void migrateWeekColumns(final SQLiteDatabase db) {
+        final String legacyName = SongPlayCountColumns.NAME + "_legacy";
+        db.execSQL("DROP TABLE IF EXISTS " + legacyName);
+        db.execSQL("ALTER TABLE " + SongPlayCountColumns.NAME + " RENAME TO " + legacyName);
+        onCreate(db);
+
+        final String[] columns = new String[NUM_WEEKS + 2];
+        columns[0] = SongPlayCountColumns.ID;
+        columns[1] = LEGACY_LAST_UPDATED_WEEK_INDEX;
+        for (int i = 0; i < NUM_WEEKS; i++) {
+            columns[i + 2] = LEGACY_WEEK_PLAY_COUNT + i;
+        }
+
+        final ContentValues values = new ContentValues(3);
+        final Cursor cursor = db.query(legacyName, columns, null, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                final int lastUpdatedWeek = cursor.getInt(1);
+                double score = Double.NEGATIVE_INFINITY;
+                int lastPlayedWeek = Integer.MIN_VALUE;
+                for (int i = 0; i < NUM_WEEKS; i++) {
+                    final int count = cursor.getInt(i + 2);
+                    if (count > 0) {
+                        final int week = lastUpdatedWeek - i;
+                        score = addToScore(score, Math.log(count) + DECAY_PER_WEEK * week);
+                        lastPlayedWeek = Math.max(lastPlayedWeek, week);
+                    }
+                }
+
+                if (lastPlayedWeek != Integer.MIN_VALUE) {
+                    values.put(SongPlayCountColumns.ID, cursor.getLong(0));
+                    values.put(SongPlayCountColumns.LAST_PLAYED_WEEK_INDEX, lastPlayedWeek);
+                    values.put(SongPlayCountColumns.DECAY_SCORE, score);
+                    db.insert(SongPlayCountColumns.NAME, null, values);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        db.execSQL("DROP TABLE " + legacyName);
+    }
+
     /**
      * @param context The {@link android.content.Context} to use
      * @return A new instance of this class.
@@ -118,142 +155,52 @@ public class SongPlayCount {
     }
 
     /**
-     * Increases the play count of a song by 1
+     * Increases the play count of a song by 1. Plays are recorded through
+     * {@link PlayStatsRecorder}, which calls this in batches.
      * @param songId The song id to increase the play count
      */
-    public void bumpSongCount(final long songId) {
+    void bumpSongCountInternal(final long songId) {
         if (songId < 0) {
             return;
         }
 
-        final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
-        updateExistingRow(database, songId, true);
-    }
-
-    /**
-     * This creates a new entry that indicates a song has been played once as well as its score
-     * @param database a writeable database
-     * @param songId the id of the track
-     */
-    private void createNewPlayedEntry(final SQLiteDatabase database, final long songId) {
-        // no row exists, create a new one
-        float newScore = getScoreMultiplierForWeek(0);
-        int newPlayCount = 1;
-
-        final ContentValues values = new ContentValues(3);
-        values.put(SongPlayCountColumns.ID, songId);
-        values.put(SongPlayCountColumns.PLAYCOUNTSCORE, newScore);
-        values.put(SongPlayCountColumns.LAST_UPDATED_WEEK_INDEX, mNumberOfWeeksSinceEpoch);
-        values.put(getColumnNameForWeek(0), newPlayCount);
-
-        database.insert(SongPlayCountColumns.NAME, null, values);
-    }
-
-    /**
-     * This function will take a song entry and update it to the latest week and increase the count
-     * for the current week by 1 if necessary
-     * @param database a writeable database
-     * @param id the id of the track to bump
-     * @param bumpCount whether to bump the current's week play count by 1 and adjust the score
-     */
-    private void updateExistingRow(final SQLiteDatabase database, final long id, boolean bumpCount) {
-        String stringId = String.valueOf(id);
+        final String stringId = String.valueOf(songId);
+        final double weeksSinceEpoch = System.currentTimeMillis() / (double) ONE_WEEK_IN_MS;
+        final double playScore = DECAY_PER_WEEK * weeksSinceEpoch;
 
-        // begin the transaction
+        final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
         database.beginTransaction();
-
-        // get the cursor of this content inside the transaction
-        final Cursor cursor = database.query(SongPlayCountColumns.NAME, null, WHERE_ID_EQUALS,
-                new String[] { stringId }, null, null, null);
-
-        // if we have a result
-        if (cursor != null && cursor.moveToFirst()) {
-            // figure how many weeks since we last updated
-            int lastUpdatedIndex = cursor.getColumnIndex(SongPlayCountColumns.LAST_UPDATED_WEEK_INDEX);
-            int lastUpdatedWeek = cursor.getInt(lastUpdatedIndex);
-            int weekDiff = mNumberOfWeeksSinceEpoch - lastUpdatedWeek;
-
-            // if it's more than the number of weeks we track, delete it and create a new entry
-            if (Math.abs(weekDiff) >= NUM_WEEKS) {
-                // this entry needs to be dropped since it is too outdated
-                deleteEntry(database, stringId);
-                if (bumpCount) {
-                    createNewPlayedEntry(database, id);
-                }
-            } else if (weekDiff != 0) {
-                // else, shift the weeks
-                int[] playCounts = new int[NUM_WEEKS];
-
-                if (weekDiff > 0) {
-                    // time is shifted forwards
-                    for (int i = 0; i < NUM_WEEKS - weekDiff; i++) {
-                        playCounts[i + weekDiff] = cursor.getInt(getColumnIndexForWeek(i));
-                    }
-                } else if (weekDiff < 0) {
-                    // time is shifted backwards (by user) - nor typical behavior but we
-                    // will still handle it
-
-                    // since weekDiff is -ve, NUM_WEEKS + weekDiff is the real # of weeks we have to
-                    // transfer.  Then we transfer the old week i - weekDiff to week i
-                    // for example if the user shifted back 2 weeks, ie -2, then for 0 to
-                    // NUM_WEEKS + (-2) we set the new week i = old week i - (-2) or i+2
-                    for (int i = 0; i < NUM_WEEKS + weekDiff; i++) {
-                        playCounts[i] = cursor.getInt(getColumnIndexForWeek(i - weekDiff));
-                    }
-                }
-
-                // bump the count
-                if (bumpCount) {
-                    playCounts[0]++;
-                }
-
-                float score = calculateScore(playCounts);
-
-                // if the score is non-existant, then delete it
-                if (score < .01f) {
-                    deleteEntry(database, stringId);
-                } else {
-                    // create the content values
-                    ContentValues values = new ContentValues(NUM_WEEKS + 2);
-                    values.put(SongPlayCountColumns.LAST_UPDATED_WEEK_INDEX, mNumberOfWeeksSinceEpoch);
-                    values.put(SongPlayCountColumns.PLAYCOUNTSCORE, score);
-
-                    for (int i = 0; i < NUM_WEEKS; i++) {
-                        values.put(getColumnNameForWeek(i), playCounts[i]);
-                    }
-
-                    // update the entry
-                    database.update(SongPlayCountColumns.NAME, values, WHERE_ID_EQUALS,
-                            new String[]{stringId});
+        try {
+            double score = Double.NEGATIVE_INFINITY;
+            final Cursor cursor = database.query(SongPlayCountColumns.NAME,
+                    new String[] { SongPlayCountColumns.DECAY_SCORE }, WHERE_ID_EQUALS,
+                    new String[] { stringId }, null, null, null);
+            try {
+                if (cursor.moveToFirst()) {
+                    score = cursor.getDouble(0);
                 }
-            } else if (bumpCount) {
-                // else no shifting, just update the scores
-                ContentValues values = new ContentValues(2);
-
-                // increase the score by a single score amount
-                int scoreIndex = cursor.getColumnIndex(SongPlayCountColumns.PLAYCOUNTSCORE);
-                float score = cursor.getFloat(scoreIndex) + getScoreMultiplierForWeek(0);
-                values.put(SongPlayCountColumns.PLAYCOUNTSCORE, score);
-
-                // increase the play count by 1
-                values.put(getColumnNameForWeek(0), cursor.getInt(getColumnIndexForWeek(0)) + 1);
+            } finally {
+                cursor.close();
+            }
 
-                // update the entry
+            final ContentValues values = new ContentValues(3);
+            values.put(SongPlayCountColumns.LAST_PLAYED_WEEK_INDEX, (int) weeksSinceEpoch);
+            values.put(SongPlayCountColumns.DECAY_SCORE, addToScore(score, playScore));
+            if (score == Double.NEGATIVE_INFINITY) {
+                values.put(SongPlayCountColumns.ID, songId);
+                database.insert(SongPlayCountColumns.NAME, null, values);
+            } else {
                 database.update(SongPlayCountColumns.NAME, values, WHERE_ID_EQUALS,
-                        new String[]{stringId});
+                        new String[] { stringId });
             }
-
-            cursor.close();
-        } else if (bumpCount) {
-            // if we have no existing results, create a new one
-            createNewPlayedEntry(database, id);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
         }
-
-        database.setTransactionSuccessful();
-        database.endTransaction();
     }
 
     public void deleteAll() {
+        PlayStatsRecorder.flushPending();
         final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
         database.delete(SongPlayCountColumns.NAME, null, null);
     }
@@ -265,11 +212,13 @@ public class SongPlayCount {
      * @return the top tracks
      */
     public Cursor getTopPlayedResults(int numResults) {
-        updateResults();
+        PlayStatsRecorder.flushPending();
+        deleteStaleRows();
 
         final SQLiteDatabase database = mMusicDatabase.getReadableDatabase();
         return database.query(SongPlayCountColumns.NAME, new String[] { SongPlayCountColumns.ID },
-                null, null, null, null, SongPlayCountColumns.PLAYCOUNTSCORE + " DESC",
+                getRecentlyPlayedSelection(), null, null, null,
+                SongPlayCountColumns.DECAY_SCORE + " DESC",
                 (numResults <= 0 ? null : String.valueOf(numResults)));
     }
 
@@ -285,61 +234,52 @@ public class SongPlayCount {
             return null;
         }
 
-        HashSet<Long> uniqueIds = new HashSet<>(ids.length);
-
-        // create the list of ids to select against
-        StringBuilder selection = new StringBuilder();
-        selection.append(SongPlayCountColumns.ID);
-        selection.append(" IN (");
-
-        // add the first element to handle the separator case for the first element
-        uniqueIds.add(ids[0]);
-        selection.append(ids[0]);
+        PlayStatsRecorder.flushPending();
 
-        for (int i = 1; i < ids.length; i++) {
-            // if the new id doesn't exist
-            if (uniqueIds.add(ids[i])) {
-                // append a separator
-                selection.append(",");
-
-                // append the id
-                selection.append(ids[i]);
-
-                // for performance reasons, only look at a certain number of songs
-                // in case their playlist is ridiculously large
-                if (uniqueIds.size() >= MAX_NUMBER_SONGS_TO_ANALYZE) {
-                    break;
-                }
-            }
+        // for performance reasons, only look at a certain number of songs
+        // in case their playlist is ridiculously large
+        LinkedHashSet<Long> uniqueIds = new LinkedHashSet<>();
+        for (int i = 0; i < ids.length && uniqueIds.size() < MAX_NUMBER_SONGS_TO_ANALYZE; i++) {
+            uniqueIds.add(ids[i]);
         }
 
-        // close out the selection
-        selection.append(")");
-
         long[] sortedList = new long[uniqueIds.size()];
+        double[] scores = new double[uniqueIds.size()];
 
         // now query for the songs
         final SQLiteDatabase database = mMusicDatabase.getReadableDatabase();
-        Cursor topSongsCursor = null;
+        final String recentlyPlayed = getRecentlyPlayedSelection();
         int idx = 0;
 
-        try {
-            topSongsCursor = database.query(SongPlayCountColumns.NAME,
-                    new String[]{ SongPlayCountColumns.ID }, selection.toString(), null, null,
-                    null, SongPlayCountColumns.PLAYCOUNTSCORE + " DESC");
-
-            if (topSongsCursor != null && topSongsCursor.moveToFirst()) {
-                do {
-                    // for each id found, add it to the list and remove it from the unique ids
-                    long id = topSongsCursor.getLong(0);
-                    sortedList[idx++] = id;
-                    uniqueIds.remove(id);
-                } while (topSongsCursor.moveToNext());
-            }
-        } finally {
-            if (topSongsCursor != null) {
-                topSongsCursor.close();
-                topSongsCursor = null;
+        for (String selection : IdSetQuery.buildSelections(SongPlayCountColumns.ID, uniqueIds)) {
+            Cursor topSongsCursor = null;
+            try {
+                topSongsCursor = database.query(SongPlayCountColumns.NAME,
+                        new String[]{ SongPlayCountColumns.ID, SongPlayCountColumns.DECAY_SCORE },
+                        selection + " AND " + recentlyPlayed, null, null, null, null);
+
+                if (topSongsCursor != null && topSongsCursor.moveToFirst()) {
+                    do {
+                        // insert each id found by score and remove it from the unique ids
+                        final long id = topSongsCursor.getLong(0);
+                        final double score = topSongsCursor.getDouble(1);
+                        int insertAt = idx;
+                        while (insertAt > 0 && scores[insertAt - 1] < score) {
+                            sortedList[insertAt] = sortedList[insertAt - 1];
+                            scores[insertAt] = scores[insertAt - 1];
+                            insertAt--;
+                        }
+                        sortedList[insertAt] = id;
+                        scores[insertAt] = score;
+                        idx++;
+                        uniqueIds.remove(id);
+                    } while (topSongsCursor.moveToNext());
+                }
+            } finally {
+                if (topSongsCursor != null) {
+                    topSongsCursor.close();
+                    topSongsCursor = null;
+                }
             }
         }
 
@@ -352,47 +292,27 @@ public class SongPlayCount {
     }
 
     /**
-     * This updates all the results for the getTopPlayedResults so that we can get an
-     * accurate list of the top played results
+     * Deletes the rows of songs that haven't been played in the past NUM_WEEKS. This only needs
+     * to happen once per process since the queries filter out these rows anyway, it just keeps
+     * the table from growing forever.
      */
-    private synchronized void updateResults() {
-        if (mDatabaseUpdated) {
+    private synchronized void deleteStaleRows() {
+        if (mStaleRowsDeleted) {
             return;
         }
 
         final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
+        database.delete(SongPlayCountColumns.NAME, SongPlayCountColumns.LAST_PLAYED_WEEK_INDEX
+                + " < " + getOldestWeekWeCareAbout(), null);
 
-        database.beginTransaction();
-
-        int oldestWeekWeCareAbout = mNumberOfWeeksSinceEpoch - NUM_WEEKS + 1;
-        // delete rows we don't care about anymore
-        database.delete(SongPlayCountColumns.NAME, SongPlayCountColumns.LAST_UPDATED_WEEK_INDEX
-                + " < " + oldestWeekWeCareAbout, null);
-
-        // get the remaining rows
-        Cursor cursor = database.query(SongPlayCountColumns.NAME,
-                new String[] { SongPlayCountColumns.ID },
-                null, null, null, null, null);
-
-        if (cursor != null && cursor.moveToFirst()) {
-            // for each row, update it
-            do {
-                updateExistingRow(database, cursor.getLong(0), false);
-            } while (cursor.moveToNext());
-
-            cursor.close();
-            cursor = null;
-        }
-
-        mDatabaseUpdated = true;
-        database.setTransactionSuccessful();
-        database.endTransaction();
+        mStaleRowsDeleted = true;
     }
 
     /**
      * @param songId The song Id to remove.
      */
     public void removeItem(final long songId) {
+        PlayStatsRecorder.flushPending();
         final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
         deleteEntry(database, String.valueOf(songId));
     }
@@ -407,52 +327,28 @@ public class SongPlayCount {
     }
 
     /**
-     * Calculates the score of the song given the play counts
-     * @param playCounts an array of the # of times a song has been played for each week
-     *                   where playCounts[N] is the # of times it was played N weeks ago
-     * @return the score
+     * @return the selection matching the songs played in the past NUM_WEEKS
      */
-    private static float calculateScore(final int[] playCounts) {
-        if (playCounts == null) {
-            return 0;
-        }
-
-        float score = 0;
-        for (int i = 0; i < Math.min(playCounts.length, NUM_WEEKS); i++) {
-            score += playCounts[i] * getScoreMultiplierForWeek(i);
-        }
-
-        return score;
-    }
-
-    /**
-     * Gets the column name for each week #
-     * @param week number
-     * @return the column name
-     */
-    private static String getColumnNameForWeek(final int week) {
-        return SongPlayCountColumns.WEEK_PLAY_COUNT + String.valueOf(week);
+    private static String getRecentlyPlayedSelection() {
+        return SongPlayCountColumns.LAST_PLAYED_WEEK_INDEX + " >= " + getOldestWeekWeCareAbout();
     }
 
-    /**
-     * Gets the score multiplier for each week
-     * @param week number
-     * @return the multiplier to apply
-     */
-    private static float getScoreMultiplierForWeek(final int week) {
-        return sInterpolator.getInterpolation(1 - (week / (float)NUM_WEEKS)) * INTERPOLATOR_HEIGHT
-                + INTERPOLATOR_BASE;
+    private static int getOldestWeekWeCareAbout() {
+        return (int) (System.currentTimeMillis() / ONE_WEEK_IN_MS) - NUM_WEEKS + 1;
     }
 
     /**
-     * For some performance gain, return a static value for the column index for a week
-     * WARNIGN: This function assumes you have selected all columns for it to work
-     * @param week number
-     * @return column index of that week
+     * Adds a play to a score without leaving the log domain, ie returns ln(e^score + e^play)
+     * @param score the current score, or negative infinity if there is none
+     * @param play the score of the play to add
+     * @return the new score
      */
-    private static int getColumnIndexForWeek(final int week) {
-        // ID, followed by the weeks columns
-        return 1 + week;
+    private static double addToScore(final double score, final double play) {
+        if (score == Double.NEGATIVE_INFINITY) {
+            return play;
+        }
+        final double max = Math.max(score, play);
+        return max + Math.log1p(Math.exp(Math.min(score, play) - max));
     }
 
     public interface SongPlayCountColumns {
@@ -463,13 +359,10 @@ public class SongPlayCount {
         /* Song IDs column */
         public static final String ID = "songid";
 
-        /* Week Play Count */
-        public static final String WEEK_PLAY_COUNT = "week";
-
-        /* Weeks since Epoch */
-        public static final String LAST_UPDATED_WEEK_INDEX = "weekindex";
+        /* Weeks since Epoch of the last play */
+        public static final String LAST_PLAYED_WEEK_INDEX = "lastplayedweek";
 
-        /* Play count */
-        public static final String PLAYCOUNTSCORE = "playcountscore";
+        /* Logarithm of the decaying play count score */
+        public static final String DECAY_SCORE = "decayscore";
     }
 }
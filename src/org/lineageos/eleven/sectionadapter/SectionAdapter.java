@@ -30,8 +30,6 @@ import org.lineageos.eleven.utils.SectionCreatorUtils.Section;
 import org.lineageos.eleven.utils.SectionCreatorUtils.SectionType;
 import org.lineageos.eleven.widgets.IPopupMenuCallback;
 
-import java.util.TreeMap;
-
 /**
  * This class wraps an ArrayAdapter that implements BasicAdapter and allows Sections to be inserted
  * into the list.  This wraps the methods for getting the view/indices and returns the section
@@ -58,9 +56,9 @@ public class SectionAdapter<TItem,
     protected TArrayAdapter mUnderlyingAdapter;
 
     /**
-     * A map of external position to the Section type and Identifier
+     * An index of external position to the Section type and Identifier
      */
-    protected TreeMap<Integer, Section> mSections;
+    protected SectionIndex mSections;
 
     protected int mHeaderLayoutId;
     protected boolean mHeaderEnabled;
@@ -87,7 +85,7 @@ public class SectionAdapter<TItem,
         mContext = context;
         mUnderlyingAdapter = underlyingAdapter;
         mUnderlyingAdapter.setPopupMenuClickedListener(this);
-        mSections = new TreeMap<>();
+        mSections = new SectionIndex();
         setupHeaderParameters(R.layout.list_header, false);
         // since we have no good default footer, just re-use the header layout
         setupFooterParameters(R.layout.list_header, false);
@@ -283,7 +281,8 @@ public class SectionAdapter<TItem,
      * @return true if a section header
      */
     public boolean isSectionHeader(int position) {
-        return mSections.containsKey(position) && mSections.get(position).mType == SectionType.Header;
+        final Section section = mSections.get(position);
+        return section != null && section.mType == SectionType.Header;
     }
 
     /**
@@ -292,7 +291,8 @@ public class SectionAdapter<TItem,
      * @return true if a section footer
      */
     public boolean isSectionFooter(int position) {
-        return mSections.containsKey(position) && mSections.get(position).mType == SectionType.Footer;
+        final Section section = mSections.get(position);
+        return section != null && section.mType == SectionType.Footer;
     }
 
     /**
@@ -301,7 +301,7 @@ public class SectionAdapter<TItem,
      * @return true if the item is a section
      */
     public boolean isSection(int position) {
-        return mSections.containsKey(position);
+        return mSections.contains(position);
     }
 
     /**
@@ -311,21 +311,7 @@ public class SectionAdapter<TItem,
      * @return the internal position
      */
     public int getInternalPosition(int position) {
-        if (isSection(position)) {
-            return -1;
-        }
-
-        int countSectionHeaders = 0;
-
-        for (Integer sectionPosition : mSections.keySet()) {
-            if (sectionPosition <= position) {
-                countSectionHeaders++;
-            } else {
-                break;
-            }
-        }
-
-        return position - countSectionHeaders;
+        return mSections.getInternalPosition(position);
     }
 
     /**
@@ -334,18 +320,7 @@ public class SectionAdapter<TItem,
      * @return the position of the wrapped adapter
      */
     public int getExternalPosition(int internalPosition) {
-        int externalPosition = internalPosition;
-        for (Integer sectionPosition : mSections.keySet()) {
-            // because the section headers are tracking the 'merged' lists, we need to keep bumping
-            // our position for each found section header
-            if (sectionPosition <= externalPosition) {
-                externalPosition++;
-            } else {
-                break;
-            }
-        }
-
-        return externalPosition;
+        return mSections.getExternalPosition(internalPosition);
     }
 
     /**
@@ -356,7 +331,7 @@ public class SectionAdapter<TItem,
         mUnderlyingAdapter.unload();
 
         if (data.mSections == null) {
-            mSections.clear();
+            mSections = new SectionIndex();
         } else {
             mSections = data.mSections;
         }
@@ -372,7 +347,7 @@ public class SectionAdapter<TItem,
      * unloads the underlying adapter
      */
     public void unload() {
-        mSections.clear();
+        mSections = new SectionIndex();
         mUnderlyingAdapter.unload();
         notifyDataSetChanged();
     }
@@ -386,9 +361,8 @@ public class SectionAdapter<TItem,
     }
 
     public void clear() {
-        mSections.clear();
+        mSections = new SectionIndex();
         mUnderlyingAdapter.clear();
-        mSections.clear();
     }
 
     /**
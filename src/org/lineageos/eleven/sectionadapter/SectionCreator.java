@@ -16,15 +16,21 @@
 package org.lineageos.eleven.sectionadapter;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 
 import org.lineageos.eleven.loaders.WrappedAsyncTaskLoader;
 import org.lineageos.eleven.utils.SectionCreatorUtils;
 
 import java.util.List;
-import java.util.TreeMap;
 
 /**
  * This class wraps a SimpleListLoader and creates header sections for the sections
+ *
+ * In progressive mode the first load shows the first items the loader can get cheaply, such as
+ * a screenful read in sorted order ahead of the full query, before the complete list replaces
+ * them. This needs a loader that reports them through
+ * {@link SimpleListLoader#deliverPartialItems(List)}.
  * @param <T> The type of item that is loaded
  */
 public class SectionCreator<T> extends WrappedAsyncTaskLoader<SectionListContainer<T>> {
@@ -33,8 +39,22 @@ public class SectionCreator<T> extends WrappedAsyncTaskLoader<SectionListContain
      * @param <T> type of item to load
      */
     public static abstract class SimpleListLoader<T> extends WrappedAsyncTaskLoader<List<T>> {
+        /**
+         * Receives the items a load can show before it completes
+         * @param <T> type of item to load
+         */
+        public interface PartialResultListener<T> {
+            /**
+             * Called on the loading thread
+             * @param items the first items of the result, in their final order
+             */
+            public void onPartialResult(List<T> items);
+        }
+
         protected Context mContext;
 
+        private volatile PartialResultListener<T> mPartialResultListener;
+
         public SimpleListLoader(Context context) {
             super(context);
             mContext = context;
@@ -43,10 +63,42 @@ public class SectionCreator<T> extends WrappedAsyncTaskLoader<SectionListContain
         public Context getContext() {
             return mContext;
         }
+
+        /**
+         * @param listener the listener to report the first items to, or null
+         */
+        public void setPartialResultListener(PartialResultListener<T> listener) {
+            mPartialResultListener = listener;
+        }
+
+        /**
+         * @return true if someone wants the first items before the load completes, loaders
+         * that can get them cheaply check this before doing so
+         */
+        protected boolean wantsPartialResult() {
+            return mPartialResultListener != null;
+        }
+
+        /**
+         * Reports the first items of the result while the load goes on
+         * @param items the first items, they must not be changed afterwards
+         */
+        protected void deliverPartialItems(List<T> items) {
+            final PartialResultListener<T> listener = mPartialResultListener;
+            if (listener != null) {
+                listener.onPartialResult(items);
+            }
+        }
     }
 
     private SimpleListLoader<T> mLoader;
     private SectionCreatorUtils.IItemCompare<T> mComparator;
+    private final boolean mProgressive;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /* identifies the running load, so the first items of a cancelled load aren't delivered */
+    private volatile int mGeneration;
 
     /**
      * Creates a SectionCreator object which loads @loader
@@ -56,9 +108,22 @@ public class SectionCreator<T> extends WrappedAsyncTaskLoader<SectionListContain
      */
     public SectionCreator(Context context, SimpleListLoader<T> loader,
                           SectionCreatorUtils.IItemCompare<T> comparator) {
+        this(context, loader, comparator, false);
+    }
+
+    /**
+     * Creates a SectionCreator object which loads @loader
+     * @param context The {@link Context} to use.
+     * @param loader loader to wrap
+     * @param comparator the comparison object to run to create the sections
+     * @param progressive whether the first load shows the first items before it completes
+     */
+    public SectionCreator(Context context, SimpleListLoader<T> loader,
+                          SectionCreatorUtils.IItemCompare<T> comparator, boolean progressive) {
         super(context);
         mLoader = loader;
         mComparator = comparator;
+        mProgressive = progressive;
     }
 
     /**
@@ -66,8 +131,25 @@ public class SectionCreator<T> extends WrappedAsyncTaskLoader<SectionListContain
      */
     @Override
     public SectionListContainer<T> loadInBackground() {
-        List<T> results = mLoader.loadInBackground();
-        TreeMap<Integer, SectionCreatorUtils.Section> sections = null;
+        final int generation = ++mGeneration;
+
+        // reloads replace the list shown at once instead of shrinking it to the first items
+        if (mProgressive && !hasResult()) {
+            mLoader.setPartialResultListener(new SimpleListLoader.PartialResultListener<T>() {
+                @Override
+                public void onPartialResult(List<T> items) {
+                    deliverFirstItems(items, generation);
+                }
+            });
+        }
+
+        List<T> results;
+        try {
+            results = mLoader.loadInBackground();
+        } finally {
+            mLoader.setPartialResultListener(null);
+        }
+        SectionIndex sections = null;
 
         if (mComparator != null) {
             sections = SectionCreatorUtils.createSections(results, mComparator);
@@ -75,4 +157,26 @@ public class SectionCreator<T> extends WrappedAsyncTaskLoader<SectionListContain
 
         return new SectionListContainer<>(sections, results);
     }
+
+    private void deliverFirstItems(final List<T> items, final int generation) {
+        if (items == null || items.isEmpty()) {
+            return;
+        }
+
+        SectionIndex sections = null;
+        if (mComparator != null) {
+            sections = SectionCreatorUtils.createSections(items, mComparator);
+        }
+        final SectionListContainer<T> container = new SectionListContainer<>(sections, items);
+
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                // skip them if the complete list got here first
+                if (generation == mGeneration && !hasResult()) {
+                    deliverPartialResult(container);
+                }
+            }
+        });
+    }
 }
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2019 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.sectionadapter;
+
+import org.lineageos.eleven.utils.SectionCreatorUtils.Section;
+
+import java.util.Arrays;
+
+/**
+ * The sections of a list, keyed by their position in the list with the sections included.
+ * The positions are kept sorted in an int array, so lookups and the conversions between the
+ * positions with and without the sections are binary searches instead of walks over the
+ * sections.
+ *
+ * Sections are only appended, in increasing position order.
+ */
+public final class SectionIndex {
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] mPositions;
+    private Section[] mSections;
+    private int mSize;
+
+    public SectionIndex() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param capacity the number of sections the index is sized for up front
+     */
+    public SectionIndex(final int capacity) {
+        mPositions = new int[Math.max(MIN_CAPACITY, capacity)];
+        mSections = new Section[mPositions.length];
+    }
+
+    /**
+     * Appends a section
+     *
+     * @param position the position of the section in the list with the sections included, it
+     *                 must be after the position of the last section
+     * @param section the section
+     */
+    public void add(final int position, final Section section) {
+        if (mSize > 0 && position <= mPositions[mSize - 1]) {
+            throw new IllegalArgumentException("Section at " + position
+                    + " is not after the last section at " + mPositions[mSize - 1]);
+        }
+        if (mSize == mPositions.length) {
+            mPositions = Arrays.copyOf(mPositions, mSize * 2);
+            mSections = Arrays.copyOf(mSections, mSize * 2);
+        }
+        mPositions[mSize] = position;
+        mSections[mSize] = section;
+        mSize++;
+    }
+
+    /**
+     * @return the number of sections
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @param position position in the list with the sections included
+     * @return the section at the position, or null if the position isn't a section
+     */
+    public Section get(final int position) {
+        final int index = Arrays.binarySearch(mPositions, 0, mSize, position);
+        return index >= 0 ? mSections[index] : null;
+    }
+
+    /**
+     * @param position position in the list with the sections included
+     * @return true if the position is a section
+     */
+    public boolean contains(final int position) {
+        return Arrays.binarySearch(mPositions, 0, mSize, position) >= 0;
+    }
+
+    /**
+     * @param position position in the list with the sections included
+     * @return the position in the list without the sections, or -1 if the position is a section
+     */
+    public int getInternalPosition(final int position) {
+        final int index = Arrays.binarySearch(mPositions, 0, mSize, position);
+        if (index >= 0) {
+            return -1;
+        }
+
+        // the insertion point is the number of sections before the position
+        return position - (-index - 1);
+    }
+
+    /**
+     * @param internalPosition position in the list without the sections
+     * @return the position in the list with the sections included
+     */
+    public int getExternalPosition(final int internalPosition) {
+        // mPositions[i] - i is the number of items before section i, which never decreases,
+        // so count the sections with at most internalPosition items before them
+        int low = 0;
+        int high = mSize;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (mPositions[mid] - mid <= internalPosition) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return internalPosition + low;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2019 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.service;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+
+import java.util.LinkedHashSet;
+
+/**
+ * Delivers the change events of the playback service (broadcasts, widget and media session
+ * updates) on a background thread. Events that are only a hint that some state changed are
+ * held back for {@link #COALESCE_DELAY} so a burst of them (skipping several tracks in a row,
+ * adding several tracks to the queue) is delivered once. Any other event is delivered right
+ * away, together with the pending ones, so events are never reordered past it.
+ *
+ * The callback is expected to read the current state when an event is delivered rather than
+ * the state at the time the event was posted, so the latest state always wins.
+ */
+public class ChangeDispatcher {
+    /**
+     * Delivers the events
+     */
+    public interface Callback {
+        /**
+         * Called on the dispatcher thread once per distinct pending event
+         *
+         * @param what the event
+         */
+        void onDispatchChange(String what);
+    }
+
+    private static final int DISPATCH = 0;
+
+    /* how long coalescable events are held back, roughly a couple of frames */
+    private static final long COALESCE_DELAY = 50;
+
+    private final Callback mCallback;
+    private final HandlerThread mHandlerThread;
+    private final Handler mHandler;
+
+    /* the events not delivered yet in the order they were first posted, guarded by this */
+    private LinkedHashSet<String> mPending = new LinkedHashSet<>();
+
+    private int mDispatchedCount;
+    private int mCoalescedCount;
+
+    public ChangeDispatcher(final Callback callback) {
+        mCallback = callback;
+
+        mHandlerThread = new HandlerThread("ChangeDispatcher",
+                android.os.Process.THREAD_PRIORITY_BACKGROUND);
+        mHandlerThread.start();
+        mHandler = new Handler(mHandlerThread.getLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                if (msg.what == DISPATCH) {
+                    dispatch();
+                }
+            }
+        };
+    }
+
+    /**
+     * Queues an event. Returns immediately.
+     *
+     * @param what the event
+     * @param coalesce true if the event may be held back and merged with identical events
+     */
+    public synchronized void post(final String what, final boolean coalesce) {
+        if (!mPending.add(what)) {
+            mCoalescedCount++;
+        }
+
+        if (!coalesce) {
+            mHandler.removeMessages(DISPATCH);
+            mHandler.sendEmptyMessage(DISPATCH);
+        } else if (!mHandler.hasMessages(DISPATCH)) {
+            mHandler.sendEmptyMessageDelayed(DISPATCH, COALESCE_DELAY);
+        }
+    }
+
+    /**
+     * Stops the dispatcher thread, dropping the events that are still pending. Waits for an
+     * event being delivered to finish, so the state the callback reads can be released once
+     * this returns.
+     */
+    public void quit() {
+        synchronized (this) {
+            mHandler.removeMessages(DISPATCH);
+            mPending.clear();
+        }
+        mHandlerThread.quitSafely();
+        try {
+            mHandlerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the number of events delivered to the callback
+     */
+    public synchronized int getDispatchedCount() {
+        return mDispatchedCount;
+    }
+
+    /**
+     * @return the number of events that were merged into an identical pending event
+     */
+    public synchronized int getCoalescedCount() {
+        return mCoalescedCount;
+    }
+
+    private void dispatch() {
+        final LinkedHashSet<String> events;
+        synchronized (this) {
+            if (mPending.isEmpty()) {
+                return;
+            }
+            events = mPending;
+            mPending = new LinkedHashSet<>();
+            mDispatchedCount += events.size();
+        }
+
+        for (String what : events) {
+            mCallback.onDispatchChange(what);
+        }
+    }
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright (C) 2019 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.service;
+
+import org.lineageos.eleven.Config.IdType;
+
+import java.util.Arrays;
+
+/**
+ * The play queue of the music playback service. Instead of holding one
+ * {@link MusicPlaybackTrack} per entry, the queue is stored column-wise in parallel primitive
+ * arrays. The arrays are organised as a gap buffer: the free space sits at the last edit
+ * position, so the typical edits (appending, "play next", dragging an item a few rows, removing
+ * a range) only shift the entries between the previous and the current edit position.
+ *
+ * This class is not thread safe, callers are expected to hold the service lock.
+ */
+public class PlaybackQueue {
+    /**
+     * Notified of every edit made to the queue, so the changes can be persisted as deltas
+     */
+    public interface Callback {
+        /**
+         * @param queue the queue the entries can be read back from
+         * @param position the position of the first inserted track
+         * @param count the number of inserted tracks
+         */
+        void onInserted(PlaybackQueue queue, int position, int count);
+
+        void onRemoved(int first, int last);
+
+        void onMoved(int from, int to);
+
+        void onCleared();
+    }
+
+    private static final int MIN_CAPACITY = 16;
+
+    private static final IdType[] ID_TYPES = IdType.values();
+
+    private long[] mIds;
+    private long[] mSourceIds;
+    private int[] mSourcePositions;
+    private byte[] mSourceTypes;
+
+    /* the gap spans [mGapStart, mGapEnd) in the backing arrays */
+    private int mGapStart;
+    private int mGapEnd;
+
+    private Callback mCallback;
+
+    public PlaybackQueue() {
+        this(MIN_CAPACITY);
+    }
+
+    public PlaybackQueue(final int capacity) {
+        allocate(Math.max(MIN_CAPACITY, capacity));
+    }
+
+    /**
+     * Creates a queue backed by the given columns, which must all have the same length. The
+     * arrays are used as is, without copying.
+     */
+    public PlaybackQueue(final long[] ids, final long[] sourceIds, final int[] sourcePositions,
+            final byte[] sourceTypes) {
+        final int size = ids.length;
+        if (sourceIds.length != size || sourcePositions.length != size
+                || sourceTypes.length != size) {
+            throw new IllegalArgumentException("Queue columns have different lengths");
+        }
+        mIds = ids;
+        mSourceIds = sourceIds;
+        mSourcePositions = sourcePositions;
+        mSourceTypes = sourceTypes;
+        mGapStart = size;
+        mGapEnd = size;
+    }
+
+    /**
+     * @return the number of tracks in the queue
+     */
+    public int size() {
+        return mIds.length - (mGapEnd - mGapStart);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @param callback the callback to notify of edits, or null
+     */
+    public void setCallback(final Callback callback) {
+        mCallback = callback;
+    }
+
+    /**
+     * Removes every track from the queue. The backing arrays are shrunk if they grew much
+     * larger than the default so a one-off huge queue doesn't pin its memory forever.
+     */
+    public void clear() {
+        if (mIds.length > MIN_CAPACITY * 64) {
+            allocate(MIN_CAPACITY);
+        } else {
+            mGapStart = 0;
+            mGapEnd = mIds.length;
+        }
+        if (mCallback != null) {
+            mCallback.onCleared();
+        }
+    }
+
+    /**
+     * @param index the position in the queue
+     * @return the audio id of the track at the given position
+     */
+    public long getId(final int index) {
+        return mIds[toPhysical(index)];
+    }
+
+    public long getSourceId(final int index) {
+        return mSourceIds[toPhysical(index)];
+    }
+
+    public IdType getSourceType(final int index) {
+        return toIdType(mSourceTypes[toPhysical(index)]);
+    }
+
+    public int getSourcePosition(final int index) {
+        return mSourcePositions[toPhysical(index)];
+    }
+
+    /**
+     * @param index the position in the queue
+     * @return a new {@link MusicPlaybackTrack} describing the entry at the given position
+     */
+    public MusicPlaybackTrack getTrack(final int index) {
+        final int physical = toPhysical(index);
+        return new MusicPlaybackTrack(mIds[physical], mSourceIds[physical],
+                toIdType(mSourceTypes[physical]), mSourcePositions[physical]);
+    }
+
+    /**
+     * @return a copy of the audio ids in queue order
+     */
+    public long[] getIds() {
+        final int size = size();
+        final long[] ids = new long[size];
+        System.arraycopy(mIds, 0, ids, 0, mGapStart);
+        System.arraycopy(mIds, mGapEnd, ids, mGapStart, size - mGapStart);
+        return ids;
+    }
+
+    /**
+     * @param ids the list to compare against
+     * @return true if the queue holds exactly the given audio ids in the same order
+     */
+    public boolean hasSameIds(final long[] ids) {
+        if (ids.length != size()) {
+            return false;
+        }
+        for (int i = 0; i < mGapStart; i++) {
+            if (mIds[i] != ids[i]) {
+                return false;
+            }
+        }
+        for (int i = mGapEnd, j = mGapStart; i < mIds.length; i++, j++) {
+            if (mIds[i] != ids[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param id the audio id to look for
+     * @param fromIndex the position to start searching from
+     * @return the first position at or after fromIndex holding the id, or -1
+     */
+    public int indexOf(final long id, final int fromIndex) {
+        final int size = size();
+        for (int i = Math.max(0, fromIndex); i < size; i++) {
+            if (mIds[toPhysical(i)] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Appends a single track to the end of the queue
+     */
+    public void add(final long id, final long sourceId, final IdType sourceType,
+            final int sourcePosition) {
+        insert(size(), id, sourceId, sourceType, sourcePosition);
+    }
+
+    /**
+     * Inserts a single track
+     *
+     * @param position the position to insert at, clamped to [0, size()]
+     */
+    public void insert(int position, final long id, final long sourceId,
+            final IdType sourceType, final int sourcePosition) {
+        position = Math.max(0, Math.min(position, size()));
+        moveGapTo(position);
+        ensureGap(1);
+        put(mGapStart++, id, sourceId, (byte) sourceType.mId, sourcePosition);
+        if (mCallback != null) {
+            mCallback.onInserted(this, position, 1);
+        }
+    }
+
+    /**
+     * Inserts a list of tracks coming from the same source. The source position of each
+     * track is its index within the list.
+     *
+     * @param position the position to insert at, clamped to [0, size()]
+     * @param list the audio ids to insert
+     * @param sourceId where the tracks were added from
+     * @param sourceType the type of the source
+     */
+    public void addAll(int position, final long[] list, final long sourceId,
+            final IdType sourceType) {
+        final int addlen = list.length;
+        if (addlen == 0) {
+            return;
+        }
+        position = Math.max(0, Math.min(position, size()));
+        moveGapTo(position);
+        ensureGap(addlen);
+
+        final byte type = (byte) sourceType.mId;
+        System.arraycopy(list, 0, mIds, mGapStart, addlen);
+        Arrays.fill(mSourceIds, mGapStart, mGapStart + addlen, sourceId);
+        Arrays.fill(mSourceTypes, mGapStart, mGapStart + addlen, type);
+        for (int i = 0; i < addlen; i++) {
+            mSourcePositions[mGapStart + i] = i;
+        }
+        mGapStart += addlen;
+        if (mCallback != null) {
+            mCallback.onInserted(this, position, addlen);
+        }
+    }
+
+    /**
+     * Removes the tracks in the inclusive range [first, last]
+     */
+    public void remove(final int first, final int last) {
+        if (first < 0 || last >= size() || last < first) {
+            throw new IndexOutOfBoundsException("Invalid range [" + first + ", " + last
+                    + "] for size " + size());
+        }
+        moveGapTo(first);
+        mGapEnd += last - first + 1;
+        if (mCallback != null) {
+            mCallback.onRemoved(first, last);
+        }
+    }
+
+    /**
+     * Moves the track at position from to position to, shifting the tracks in between
+     */
+    public void move(final int from, final int to) {
+        if (from == to) {
+            return;
+        }
+        final int physical = toPhysical(from);
+        final long id = mIds[physical];
+        final long sourceId = mSourceIds[physical];
+        final byte type = mSourceTypes[physical];
+        final int sourcePosition = mSourcePositions[physical];
+
+        moveGapTo(from);
+        mGapEnd++;
+        moveGapTo(to);
+        put(mGapStart++, id, sourceId, type, sourcePosition);
+        if (mCallback != null) {
+            mCallback.onMoved(from, to);
+        }
+    }
+
+    private void put(final int physical, final long id, final long sourceId, final byte type,
+            final int sourcePosition) {
+        mIds[physical] = id;
+        mSourceIds[physical] = sourceId;
+        mSourceTypes[physical] = type;
+        mSourcePositions[physical] = sourcePosition;
+    }
+
+    private int toPhysical(final int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        return index < mGapStart ? index : index + (mGapEnd - mGapStart);
+    }
+
+    /**
+     * Shifts entries so that the gap starts at the given logical position
+     */
+    private void moveGapTo(final int position) {
+        if (position == mGapStart) {
+            return;
+        }
+        if (position < mGapStart) {
+            // move the entries [position, mGapStart) to the end of the gap
+            final int count = mGapStart - position;
+            shift(position, mGapEnd - count, count);
+            mGapStart -= count;
+            mGapEnd -= count;
+        } else {
+            // move the entries right after the gap to its start
+            final int count = position - mGapStart;
+            shift(mGapEnd, mGapStart, count);
+            mGapStart += count;
+            mGapEnd += count;
+        }
+    }
+
+    private void shift(final int from, final int to, final int count) {
+        System.arraycopy(mIds, from, mIds, to, count);
+        System.arraycopy(mSourceIds, from, mSourceIds, to, count);
+        System.arraycopy(mSourceTypes, from, mSourceTypes, to, count);
+        System.arraycopy(mSourcePositions, from, mSourcePositions, to, count);
+    }
+
+    /**
+     * Makes sure the gap can hold at least the given number of entries, growing the backing
+     * arrays by 50% or to the needed size, whichever is larger
+     */
+    private void ensureGap(final int needed) {
+        final int gap = mGapEnd - mGapStart;
+        if (gap >= needed) {
+            return;
+        }
+        final int oldCapacity = mIds.length;
+        final int size = oldCapacity - gap;
+        final int newCapacity = Math.max(oldCapacity + (oldCapacity >> 1), size + needed);
+        final int tail = oldCapacity - mGapEnd;
+        final int newGapEnd = newCapacity - tail;
+
+        mIds = grow(mIds, newCapacity, tail, newGapEnd);
+        mSourceIds = grow(mSourceIds, newCapacity, tail, newGapEnd);
+        mSourcePositions = grow(mSourcePositions, newCapacity, tail, newGapEnd);
+        mSourceTypes = grow(mSourceTypes, newCapacity, tail, newGapEnd);
+        mGapEnd = newGapEnd;
+    }
+
+    private long[] grow(final long[] src, final int capacity, final int tail, final int gapEnd) {
+        final long[] dst = new long[capacity];
+        System.arraycopy(src, 0, dst, 0, mGapStart);
+        System.arraycopy(src, mGapEnd, dst, gapEnd, tail);
+        return dst;
+    }
+
+    private int[] grow(final int[] src, final int capacity, final int tail, final int gapEnd) {
+        final int[] dst = new int[capacity];
+        System.arraycopy(src, 0, dst, 0, mGapStart);
+        System.arraycopy(src, mGapEnd, dst, gapEnd, tail);
+        return dst;
+    }
+
+    private byte[] grow(final byte[] src, final int capacity, final int tail, final int gapEnd) {
+        final byte[] dst = new byte[capacity];
+        System.arraycopy(src, 0, dst, 0, mGapStart);
+        System.arraycopy(src, mGapEnd, dst, gapEnd, tail);
+        return dst;
+    }
+
+    private void allocate(final int capacity) {
+        mIds = new long[capacity];
+        mSourceIds = new long[capacity];
+        mSourcePositions = new int[capacity];
+        mSourceTypes = new byte[capacity];
+        mGapStart = 0;
+        mGapEnd = capacity;
+    }
+
+    private static IdType toIdType(final byte id) {
+        for (IdType type : ID_TYPES) {
+            if (type.mId == id) {
+                return type;
+            }
+        }
+        return IdType.NA;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2019 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.service;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Picks the next queue position in normal shuffle mode. A track is always chosen uniformly among
+ * the tracks that have been played the least, where the play count of a position is the number
+ * of times it appears in the history plus one if it is the current track.
+ *
+ * Instead of recounting the history on every call, the play counts are kept per position and the
+ * least played positions are kept in a pool that supports O(1) pick, insert and removal. The pool
+ * is only rebuilt from the counts once it drains, so picking the next track is amortized O(1).
+ * Any structural change to the history or queue that isn't reported through
+ * {@link #onHistoryAdded(int)} or {@link #onHistoryRemoved(int)} must call {@link #invalidate()}.
+ *
+ * This class is not thread safe, callers are expected to hold the service lock.
+ */
+public class ShuffleScheduler {
+    private final Random mRandom;
+
+    /* number of times each queue position has been played */
+    private int[] mCounts = new int[0];
+
+    /* the positions with mCounts[pos] == mMinCount, and the slot of each position in it */
+    private int[] mPool = new int[0];
+    private int[] mPoolSlot = new int[0];
+    private int mPoolSize;
+    private int mMinCount;
+
+    /* the current track, which is counted as played once */
+    private int mCurrent = -1;
+
+    private boolean mValid;
+
+    public ShuffleScheduler() {
+        mRandom = new Random();
+    }
+
+    /**
+     * @param seed the seed used for the random picks, for reproducible sequences
+     */
+    public ShuffleScheduler(final long seed) {
+        mRandom = new Random(seed);
+    }
+
+    /**
+     * Forces the counts to be rebuilt from the history on the next {@link #sync} call
+     */
+    public void invalidate() {
+        mValid = false;
+    }
+
+    /**
+     * Must be called when a position is appended to the history
+     */
+    public void onHistoryAdded(final int position) {
+        if (mValid) {
+            increment(position);
+        }
+    }
+
+    /**
+     * Must be called when a position is dropped from either end of the history
+     */
+    public void onHistoryRemoved(final int position) {
+        if (mValid) {
+            decrement(position);
+        }
+    }
+
+    /**
+     * Brings the counts up to date with the queue size and the current position, rebuilding
+     * them from the history only if they have been invalidated
+     *
+     * @param history the positions previously played
+     * @param current the position currently playing
+     * @param numTracks the size of the queue
+     */
+    public void sync(final Iterable<Integer> history, final int current, final int numTracks) {
+        if (!mValid || mCounts.length != numTracks) {
+            rebuild(history, numTracks);
+            mCurrent = -1;
+            mValid = true;
+        }
+        if (current != mCurrent) {
+            decrement(mCurrent);
+            increment(current);
+            mCurrent = current;
+        }
+    }
+
+    /**
+     * @param wrapAround true if a track can still be returned once every track has been played
+     *                   an equal number of times
+     * @return the next position to play, or -1 if there is none
+     */
+    public int next(final boolean wrapAround) {
+        final int numTracks = mCounts.length;
+        if (numTracks == 0) {
+            return -1;
+        }
+        // every track has been played the same, non zero number of times
+        if (!wrapAround && mMinCount > 0 && mPoolSize == numTracks) {
+            return -1;
+        }
+        return mPool[mRandom.nextInt(mPoolSize)];
+    }
+
+    private void rebuild(final Iterable<Integer> history, final int numTracks) {
+        if (mCounts.length != numTracks) {
+            mCounts = new int[numTracks];
+            mPool = new int[numTracks];
+            mPoolSlot = new int[numTracks];
+        } else {
+            Arrays.fill(mCounts, 0);
+        }
+        if (history != null) {
+            for (final Integer position : history) {
+                if (position >= 0 && position < numTracks) {
+                    mCounts[position]++;
+                }
+            }
+        }
+        refillPool();
+    }
+
+    /**
+     * Recomputes the minimum count and collects every position sharing it
+     */
+    private void refillPool() {
+        int min = Integer.MAX_VALUE;
+        for (final int count : mCounts) {
+            if (count < min) {
+                min = count;
+            }
+        }
+        mMinCount = min;
+        mPoolSize = 0;
+        for (int i = 0; i < mCounts.length; i++) {
+            if (mCounts[i] == min) {
+                mPoolSlot[i] = mPoolSize;
+                mPool[mPoolSize++] = i;
+            } else {
+                mPoolSlot[i] = -1;
+            }
+        }
+    }
+
+    private void increment(final int position) {
+        if (position < 0 || position >= mCounts.length) {
+            return;
+        }
+        final int count = mCounts[position]++;
+        if (count == mMinCount) {
+            removeFromPool(position);
+            if (mPoolSize == 0) {
+                refillPool();
+            }
+        }
+    }
+
+    private void decrement(final int position) {
+        if (position < 0 || position >= mCounts.length || mCounts[position] == 0) {
+            return;
+        }
+        final int count = --mCounts[position];
+        if (count < mMinCount) {
+            // nothing else can be below the old minimum, so this position is the new pool
+            for (int i = 0; i < mPoolSize; i++) {
+                mPoolSlot[mPool[i]] = -1;
+            }
+            mMinCount = count;
+            mPoolSize = 0;
+            addToPool(position);
+        } else if (count == mMinCount) {
+            addToPool(position);
+        }
+    }
+
+    private void addToPool(final int position) {
+        mPoolSlot[position] = mPoolSize;
+        mPool[mPoolSize++] = position;
+    }
+
+    private void removeFromPool(final int position) {
+        final int slot = mPoolSlot[position];
+        final int last = mPool[--mPoolSize];
+        mPool[slot] = last;
+        mPoolSlot[last] = slot;
+        mPoolSlot[position] = -1;
+    }
+}
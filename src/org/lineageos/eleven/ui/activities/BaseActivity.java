@@ -41,8 +41,6 @@ import org.lineageos.eleven.IElevenService;
 import org.lineageos.eleven.MusicPlaybackService;
 import org.lineageos.eleven.MusicStateListener;
 import org.lineageos.eleven.R;
-import org.lineageos.eleven.cache.ICacheListener;
-import org.lineageos.eleven.cache.ImageFetcher;
 import org.lineageos.eleven.utils.ElevenUtils;
 import org.lineageos.eleven.utils.Lists;
 import org.lineageos.eleven.utils.MusicUtils;
@@ -62,7 +60,7 @@ import java.util.ArrayList;
  * @author Andrew Neal (andrewdneal@gmail.com)
  */
 public abstract class BaseActivity extends FragmentActivity implements ServiceConnection,
-        MusicStateListener, ICacheListener {
+        MusicStateListener {
 
     /**
      * Playstate and meta change listener
@@ -142,9 +140,6 @@ public abstract class BaseActivity extends FragmentActivity implements ServiceCo
                 getResources().getColor(R.color.background_color));
         // Initialze the bottom action bar
         initBottomActionBar();
-
-        // listen to changes to the cache status
-        ImageFetcher.getInstance(this).addCacheListener(this);
     }
 
     /**
@@ -268,9 +263,6 @@ public abstract class BaseActivity extends FragmentActivity implements ServiceCo
 
         // Remove any music status listeners
         mMusicStateListener.clear();
-
-        // remove cache listeners
-        ImageFetcher.getInstance(this).removeCacheListener(this);
     }
 
     public void setupActionBar(int resId) {
@@ -473,12 +465,6 @@ public abstract class BaseActivity extends FragmentActivity implements ServiceCo
         }
     }
 
-    @Override
-    public void onCacheUnpaused() {
-        // Set the album art
-        ElevenUtils.getImageFetcher(this).loadCurrentArtwork(mAlbumArt);
-    }
-
     /**
      * @return The resource ID to be inflated.
      */
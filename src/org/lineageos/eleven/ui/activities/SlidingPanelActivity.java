@@ -279,14 +279,6 @@ public abstract class SlidingPanelActivity extends BaseActivity {
         mBlurScrimImage.loadBlurImage(ElevenUtils.getImageFetcher(this));
     }
 
-    @Override
-    public void onCacheUnpaused() {
-        super.onCacheUnpaused();
-
-        // load the blurred image
-        mBlurScrimImage.loadBlurImage(ElevenUtils.getImageFetcher(this));
-    }
-
     protected AudioPlayerFragment getAudioPlayerFragment() {
         return (AudioPlayerFragment)getSupportFragmentManager().findFragmentById(R.id.audioPlayerFragment);
     }
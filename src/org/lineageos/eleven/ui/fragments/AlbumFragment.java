@@ -162,12 +162,11 @@ public class AlbumFragment extends MusicBrowserFragment implements
      */
     @Override
     public void onScrollStateChanged(final AbsListView view, final int scrollState) {
-        // Pause disk cache access to ensure smoother scrolling
+        // Defer the artwork loads for the rows flung past
         if (scrollState == AbsListView.OnScrollListener.SCROLL_STATE_FLING) {
-            mAdapter.setPauseDiskCache(true);
+            mAdapter.setFlinging(true);
         } else {
-            mAdapter.setPauseDiskCache(false);
-            mAdapter.notifyDataSetChanged();
+            mAdapter.setFlinging(false);
         }
     }
 
@@ -170,12 +170,11 @@ public class ArtistFragment extends MusicBrowserFragment implements
      */
     @Override
     public void onScrollStateChanged(final AbsListView view, final int scrollState) {
-        // Pause disk cache access to ensure smoother scrolling
+        // Defer the artwork loads for the rows flung past
         if (scrollState == AbsListView.OnScrollListener.SCROLL_STATE_FLING) {
-            mAdapter.getUnderlyingAdapter().setPauseDiskCache(true);
+            mAdapter.getUnderlyingAdapter().setFlinging(true);
         } else {
-            mAdapter.getUnderlyingAdapter().setPauseDiskCache(false);
-            mAdapter.notifyDataSetChanged();
+            mAdapter.getUnderlyingAdapter().setFlinging(false);
         }
     }
 
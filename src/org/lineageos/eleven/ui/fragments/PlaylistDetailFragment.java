@@ -306,10 +306,9 @@ public class PlaylistDetailFragment extends FadingBarFragment implements
         super.onScrollStateChanged(view, scrollState);
 
         if (scrollState == AbsListView.OnScrollListener.SCROLL_STATE_FLING) {
-            mAdapter.setPauseDiskCache(true);
+            mAdapter.setFlinging(true);
         } else {
-            mAdapter.setPauseDiskCache(false);
-            mAdapter.notifyDataSetChanged();
+            mAdapter.setFlinging(false);
         }
     }
 
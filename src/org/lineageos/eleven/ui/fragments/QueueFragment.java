@@ -36,6 +36,7 @@ import android.widget.AdapterView.OnItemClickListener;
 import org.lineageos.eleven.Config;
 import org.lineageos.eleven.MusicPlaybackService;
 import org.lineageos.eleven.R;
+import org.lineageos.eleven.adapters.QueueAdapter;
 import org.lineageos.eleven.adapters.SongAdapter;
 import org.lineageos.eleven.dragdrop.DragSortListView;
 import org.lineageos.eleven.dragdrop.DragSortListView.DragScrollProfile;
@@ -57,7 +58,6 @@ import org.lineageos.eleven.widgets.NoResultsContainer;
 import org.lineageos.eleven.widgets.PlayPauseProgressButton;
 
 import java.lang.ref.WeakReference;
-import java.util.List;
 import java.util.TreeSet;
 
 /**
@@ -65,7 +65,7 @@ import java.util.TreeSet;
  *
  * @author Andrew Neal (andrewdneal@gmail.com)
  */
-public class QueueFragment extends Fragment implements LoaderCallbacks<List<Song>>,
+public class QueueFragment extends Fragment implements LoaderCallbacks<NowPlayingCursor>,
         OnItemClickListener, DropListener, RemoveListener, DragScrollProfile, ServiceConnection {
 
     /**
@@ -86,7 +86,7 @@ public class QueueFragment extends Fragment implements LoaderCallbacks<List<Song
     /**
      * The adapter for the list
      */
-    private SongAdapter mAdapter;
+    private QueueAdapter mAdapter;
 
     /**
      * The list view
@@ -197,8 +197,7 @@ public class QueueFragment extends Fragment implements LoaderCallbacks<List<Song
         };
 
         // Create the adapter
-        mAdapter = new SongAdapter(getActivity(), R.layout.edit_queue_list_item,
-                -1, Config.IdType.NA);
+        mAdapter = new QueueAdapter(getActivity(), R.layout.edit_queue_list_item);
         mAdapter.setPopupMenuClickedListener(new IPopupMenuCallback.IListener() {
             @Override
             public void onPopupMenuClicked(View v, int position) {
@@ -350,7 +349,7 @@ public class QueueFragment extends Fragment implements LoaderCallbacks<List<Song
      * {@inheritDoc}
      */
     @Override
-    public Loader<List<Song>> onCreateLoader(final int id, final Bundle args) {
+    public Loader<NowPlayingCursor> onCreateLoader(final int id, final Bundle args) {
         mLoadingEmptyContainer.showLoading();
         return new QueueLoader(getActivity());
     }
@@ -359,25 +358,20 @@ public class QueueFragment extends Fragment implements LoaderCallbacks<List<Song
      * {@inheritDoc}
      */
     @Override
-    public void onLoadFinished(final Loader<List<Song>> loader, final List<Song> data) {
-        // pause notifying the adapter and make changes before re-enabling it so that the list
-        // view doesn't reset to the top of the list
-        mAdapter.setNotifyOnChange(false);
-        mAdapter.unload(); // Start fresh
+    public void onLoadFinished(final Loader<NowPlayingCursor> loader,
+            final NowPlayingCursor data) {
+        // swap the queue in place so that the list view doesn't reset to the top of the list,
+        // the rows are only loaded once they are shown
+        mAdapter.setQueue(data);
 
-        if (data.isEmpty()) {
+        if (data.getCount() == 0) {
             mLoadingEmptyContainer.showNoResults();
             mAdapter.setCurrentQueuePosition(SongAdapter.NOTHING_PLAYING);
             ((SlidingPanelActivity)getActivity()).clearMetaInfo();
         } else {
-            // Add the songs found to the adapter
-            for (final Song song : data) { mAdapter.add(song); }
-            // Build the cache
-            mAdapter.buildCache();
             // Set the currently playing audio
             mAdapter.setCurrentQueuePosition(MusicUtils.getQueuePosition());
         }
-        // re-enable the notify by calling notify dataset changes
         mAdapter.notifyDataSetChanged();
     }
 
@@ -385,7 +379,7 @@ public class QueueFragment extends Fragment implements LoaderCallbacks<List<Song
      * {@inheritDoc}
      */
     @Override
-    public void onLoaderReset(final Loader<List<Song>> loader) {
+    public void onLoaderReset(final Loader<NowPlayingCursor> loader) {
         // Clear the data in the adapter
         mAdapter.unload();
     }
@@ -407,12 +401,9 @@ public class QueueFragment extends Fragment implements LoaderCallbacks<List<Song
      */
     @Override
     public void remove(final int which) {
-        Song song = mAdapter.getItem(which);
-        mAdapter.remove(song);
-        mAdapter.notifyDataSetChanged();
-        MusicUtils.removeTrackAtPosition(song.mSongId, which);
-        // Build the cache
-        mAdapter.buildCache();
+        final long songId = mAdapter.getItem(which).mSongId;
+        mAdapter.removeItem(which);
+        MusicUtils.removeTrackAtPosition(songId, which);
     }
 
     /**
@@ -420,13 +411,8 @@ public class QueueFragment extends Fragment implements LoaderCallbacks<List<Song
      */
     @Override
     public void drop(final int from, final int to) {
-        Song song = mAdapter.getItem(from);
-        mAdapter.remove(song);
-        mAdapter.insert(song, to);
-        mAdapter.notifyDataSetChanged();
+        mAdapter.moveItem(from, to);
         MusicUtils.moveQueueItem(from, to);
-        // Build the cache
-        mAdapter.buildCache();
     }
 
     /**
@@ -63,8 +63,8 @@ public class SongFragment extends BasicSongFragment {
         // get the song comparison method to create the headers with
         SectionCreatorUtils.IItemCompare<Song> songComparison = SectionCreatorUtils.createSongComparison(context);
 
-        // return the wrapped section creator
-        return new SectionCreator<>(context, songLoader, songComparison);
+        // return the wrapped section creator, showing the first songs while the rest are read
+        return new SectionCreator<>(context, songLoader, songComparison, true);
     }
 
 
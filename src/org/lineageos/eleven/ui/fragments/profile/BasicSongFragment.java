@@ -158,12 +158,11 @@ public abstract class BasicSongFragment extends Fragment implements
         mListView.setOnScrollListener(new AbsListView.OnScrollListener() {
             @Override
             public void onScrollStateChanged(AbsListView view, int scrollState) {
-                // Pause disk cache access to ensure smoother scrolling
+                // Defer the artwork loads for the rows flung past
                 if (scrollState == AbsListView.OnScrollListener.SCROLL_STATE_FLING) {
-                    mAdapter.getUnderlyingAdapter().setPauseDiskCache(true);
+                    mAdapter.getUnderlyingAdapter().setFlinging(true);
                 } else {
-                    mAdapter.getUnderlyingAdapter().setPauseDiskCache(false);
-                    mAdapter.notifyDataSetChanged();
+                    mAdapter.getUnderlyingAdapter().setFlinging(false);
                 }
             }
 
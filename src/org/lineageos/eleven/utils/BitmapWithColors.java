@@ -18,21 +18,29 @@ package org.lineageos.eleven.utils;
 import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.os.Looper;
+import android.os.SystemClock;
 import androidx.palette.graphics.Palette;
-import android.util.LruCache;
+
+import org.lineageos.eleven.cache.LruCache;
 
 public class BitmapWithColors {
-    private static final class BitmapColors {
+    /**
+     * The palette colors of an image, {@link Color#TRANSPARENT} for the missing swatches
+     */
+    public static final class BitmapColors {
         public final int mVibrantColor;
         public final int mVibrantDarkColor;
         public final int mVibrantLightColor;
         public final int mDominantColor;
+        /* whether the colors come from the fast extraction of a thumbnail */
+        public final boolean mFast;
 
-        public BitmapColors(Palette palette) {
+        public BitmapColors(Palette palette, boolean fast) {
             mVibrantColor = determineColor(palette.getVibrantSwatch());
             mVibrantDarkColor = determineColor(palette.getDarkVibrantSwatch());
             mVibrantLightColor = determineColor(palette.getLightVibrantSwatch());
             mDominantColor = determineColor(getDominantSwatch(palette));
+            mFast = fast;
         }
 
         public BitmapColors(int vibrantColor, int vibrantDarkColor) {
@@ -40,6 +48,16 @@ public class BitmapWithColors {
             mVibrantDarkColor = vibrantDarkColor;
             mVibrantLightColor = Color.TRANSPARENT;
             mDominantColor = vibrantColor;
+            mFast = false;
+        }
+
+        public BitmapColors(int vibrantColor, int vibrantDarkColor, int vibrantLightColor,
+                int dominantColor, boolean fast) {
+            mVibrantColor = vibrantColor;
+            mVibrantDarkColor = vibrantDarkColor;
+            mVibrantLightColor = vibrantLightColor;
+            mDominantColor = dominantColor;
+            mFast = fast;
         }
 
         private int determineColor(Palette.Swatch swatch) {
@@ -61,7 +79,8 @@ public class BitmapWithColors {
             return "BitmapColors[vibrant=" + Integer.toHexString(mVibrantColor)
                     + ", vibrantDark=" + Integer.toHexString(mVibrantDarkColor)
                     + ", vibrantLight=" + Integer.toHexString(mVibrantLightColor)
-                    + ", dominant=" + Integer.toHexString(mDominantColor) + "]";
+                    + ", dominant=" + Integer.toHexString(mDominantColor)
+                    + ", fast=" + mFast + "]";
         }
     }
 
@@ -69,6 +88,15 @@ public class BitmapWithColors {
     private static final LruCache<Integer, BitmapColors> sCachedColors =
             new LruCache<>(CACHE_SIZE_MAX);
 
+    /* the fast extraction quantizes fewer colors from a smaller copy of the image */
+    private static final int FAST_MAX_COLORS = 8;
+    private static final int FAST_BITMAP_AREA = 48 * 48;
+
+    /* extraction timing, guarded by the class */
+    private static int sExtractionCount;
+    private static int sFastExtractionCount;
+    private static long sTotalExtractionTime;
+
     private Bitmap mBitmap;
     private int mBitmapKey;
     private BitmapColors mColors;
@@ -90,6 +118,61 @@ public class BitmapWithColors {
         mColors = new BitmapColors(vibrantColor, vibrantDarkColor);
     }
 
+    public BitmapWithColors(Bitmap bitmap, int bitmapKey, BitmapColors colors) {
+        mBitmap = bitmap;
+        mBitmapKey = bitmapKey;
+        mColors = colors;
+        if (mColors == null && Thread.currentThread() != Looper.getMainLooper().getThread()) {
+            loadColorsIfNeeded();
+        }
+    }
+
+    /**
+     * Runs the palette extraction on an image
+     *
+     * @param bitmap the image
+     * @param fast true to trade some accuracy for speed, good enough for thumbnails
+     * @return the colors of the image
+     */
+    public static BitmapColors extractColors(Bitmap bitmap, boolean fast) {
+        final long start = SystemClock.uptimeMillis();
+        final Palette.Builder builder = Palette.from(bitmap);
+        if (fast) {
+            builder.maximumColorCount(FAST_MAX_COLORS).resizeBitmapArea(FAST_BITMAP_AREA);
+        }
+        final BitmapColors colors = new BitmapColors(builder.generate(), fast);
+
+        synchronized (BitmapWithColors.class) {
+            sExtractionCount++;
+            if (fast) {
+                sFastExtractionCount++;
+            }
+            sTotalExtractionTime += SystemClock.uptimeMillis() - start;
+        }
+        return colors;
+    }
+
+    /**
+     * @return the number of palette extractions run
+     */
+    public static synchronized int getExtractionCount() {
+        return sExtractionCount;
+    }
+
+    /**
+     * @return the number of palette extractions that ran in fast mode
+     */
+    public static synchronized int getFastExtractionCount() {
+        return sFastExtractionCount;
+    }
+
+    /**
+     * @return the average time in ms a palette extraction took
+     */
+    public static synchronized long getAverageExtractionTime() {
+        return sExtractionCount == 0 ? 0 : sTotalExtractionTime / sExtractionCount;
+    }
+
     public Bitmap getBitmap() {
         return mBitmap;
     }
@@ -168,22 +251,13 @@ public class BitmapWithColors {
             return;
         }
 
-        synchronized (sCachedColors) {
-            mColors = sCachedColors.get(mBitmapKey);
-        }
+        mColors = sCachedColors.get(mBitmapKey);
         if (mColors != null) {
             return;
         }
 
-        final Palette p = Palette.from(mBitmap).generate();
-        if (p == null) {
-            return;
-        }
-
-        mColors = new BitmapColors(p);
-        synchronized (sCachedColors) {
-            sCachedColors.put(mBitmapKey, mColors);
-        }
+        mColors = extractColors(mBitmap, false);
+        sCachedColors.put(mBitmapKey, mColors);
     }
 
     @Override
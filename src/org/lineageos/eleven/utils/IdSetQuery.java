@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2019 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.utils;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.database.MergeCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Runs queries and deletes restricted to a set of ids. Instead of one statement with every id in
+ * a single "IN (...)" clause, the ids are de-duplicated, sorted and split into chunks of at most
+ * {@link #CHUNK_SIZE} ids, so no statement grows with the size of the library or the queue.
+ *
+ * Chunks hold increasing ranges of ids, so if every chunk is ordered by the id column the merged
+ * cursor is ordered by the id column as well. Callers that need another order wrap the result
+ * in a {@link org.lineageos.eleven.loaders.SortedCursor}.
+ */
+public final class IdSetQuery {
+    /* the maximum number of ids in a single statement */
+    public static final int CHUNK_SIZE = 500;
+
+    /**
+     * Runs the query for one chunk of ids
+     */
+    public interface ChunkQuery {
+        /**
+         * @param selection the selection matching the ids of the chunk
+         * @return the cursor for the chunk, or null
+         */
+        Cursor query(String selection);
+    }
+
+    private IdSetQuery() {
+    }
+
+    /**
+     * @param idColumn the column to match the ids against
+     * @param ids the ids, in any order and possibly with duplicates
+     * @return one selection per chunk, empty if there are no ids
+     */
+    public static List<String> buildSelections(final String idColumn, final long[] ids) {
+        final long[] uniqueIds = getSortedUniqueIds(ids);
+        final List<String> selections = new ArrayList<>(
+                (uniqueIds.length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        final StringBuilder selection = new StringBuilder();
+        for (int start = 0; start < uniqueIds.length; start += CHUNK_SIZE) {
+            final int end = Math.min(start + CHUNK_SIZE, uniqueIds.length);
+            selection.setLength(0);
+            selection.append(idColumn).append(" IN (");
+            for (int i = start; i < end; i++) {
+                if (i != start) {
+                    selection.append(',');
+                }
+                selection.append(uniqueIds[i]);
+            }
+            selection.append(')');
+            selections.add(selection.toString());
+        }
+        return selections;
+    }
+
+    public static List<String> buildSelections(final String idColumn,
+            final Collection<Long> ids) {
+        return buildSelections(idColumn, toArray(ids));
+    }
+
+    /**
+     * Runs the query once per chunk and merges the results
+     *
+     * @param idColumn the column to match the ids against
+     * @param ids the ids to query
+     * @param query runs the query for a single chunk
+     * @return the merged cursor, or null if there are no ids or every chunk returned null
+     */
+    public static Cursor query(final String idColumn, final long[] ids, final ChunkQuery query) {
+        final List<String> selections = buildSelections(idColumn, ids);
+        final List<Cursor> cursors = new ArrayList<>(selections.size());
+        try {
+            for (String selection : selections) {
+                final Cursor cursor = query.query(selection);
+                if (cursor != null) {
+                    cursors.add(cursor);
+                }
+            }
+        } catch (RuntimeException e) {
+            for (Cursor cursor : cursors) {
+                cursor.close();
+            }
+            throw e;
+        }
+
+        if (cursors.isEmpty()) {
+            return null;
+        } else if (cursors.size() == 1) {
+            return cursors.get(0);
+        }
+        return new MergeCursor(cursors.toArray(new Cursor[cursors.size()]));
+    }
+
+    /**
+     * Queries a content provider for the rows matching the ids, ordered by the id column
+     *
+     * @param resolver the resolver to use
+     * @param uri the uri to query
+     * @param projection the columns to return
+     * @param idColumn the column to match the ids against
+     * @param ids the ids to query
+     * @return the merged cursor, or null
+     */
+    public static Cursor query(final ContentResolver resolver, final Uri uri,
+            final String[] projection, final String idColumn, final long[] ids) {
+        return query(idColumn, ids, new ChunkQuery() {
+            @Override
+            public Cursor query(String selection) {
+                return resolver.query(uri, projection, selection, null, idColumn);
+            }
+        });
+    }
+
+    /**
+     * Deletes the rows matching the ids in a single transaction
+     *
+     * @param database the database to delete from
+     * @param table the table to delete from
+     * @param idColumn the column to match the ids against
+     * @param ids the ids to delete
+     * @return the number of rows deleted
+     */
+    public static int delete(final SQLiteDatabase database, final String table,
+            final String idColumn, final Collection<Long> ids) {
+        int deleted = 0;
+        database.beginTransaction();
+        try {
+            for (String selection : buildSelections(idColumn, ids)) {
+                deleted += database.delete(table, selection, null);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        return deleted;
+    }
+
+    private static long[] getSortedUniqueIds(final long[] ids) {
+        if (ids == null || ids.length == 0) {
+            return new long[0];
+        }
+        final long[] sorted = Arrays.copyOf(ids, ids.length);
+        Arrays.sort(sorted);
+        int count = 1;
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i] != sorted[count - 1]) {
+                sorted[count++] = sorted[i];
+            }
+        }
+        return count == sorted.length ? sorted : Arrays.copyOf(sorted, count);
+    }
+
+    private static long[] toArray(final Collection<Long> ids) {
+        if (ids == null) {
+            return null;
+        }
+        final long[] array = new long[ids.size()];
+        int i = 0;
+        for (Long id : ids) {
+            array[i++] = id;
+        }
+        return array;
+    }
+}
@@ -20,6 +20,7 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.widget.ImageView;
 
+import org.lineageos.eleven.cache.BitmapPool;
 import org.lineageos.eleven.cache.ImageCache;
 import org.lineageos.eleven.cache.ImageWorker;
 import org.lineageos.eleven.lastfm.ImageSize;
@@ -137,7 +138,16 @@ public class ImageUtils {
 
         // Decode bitmap with inSampleSize set
         options.inJustDecodeBounds = false;
-        return BitmapFactory.decodeFile(filename, options);
+        try {
+            return BitmapPool.getInstance().decode(options, new BitmapPool.Decoder() {
+                @Override
+                public Bitmap decode(BitmapFactory.Options options) {
+                    return BitmapFactory.decodeFile(filename, options);
+                }
+            });
+        } catch (IOException e) {
+            return null;
+        }
     }
 
     /**
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2019 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.utils;
+
+/**
+ * Maps long keys to int values without boxing either. The entries are kept in flat arrays
+ * with open addressing and linear probing, so after the arrays are sized a put never allocates.
+ * Entries can't be removed. Not thread safe.
+ */
+public final class LongIntMap {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] mKeys;
+    private int[] mValues;
+    private boolean[] mUsed;
+    private int mMask;
+    private int mSize;
+
+    /**
+     * @param expectedSize the number of entries the map is sized for up front
+     */
+    public LongIntMap(final int expectedSize) {
+        allocate(getCapacity(expectedSize));
+    }
+
+    /**
+     * Maps the key to the value, replacing the previous value of the key
+     */
+    public void put(final long key, final int value) {
+        int slot = find(key);
+        if (mUsed[slot]) {
+            mValues[slot] = value;
+            return;
+        }
+
+        // the arrays are kept at most half full, so probe sequences stay short
+        if ((mSize + 1) * 2 > mKeys.length) {
+            grow();
+            slot = find(key);
+        }
+        mKeys[slot] = key;
+        mValues[slot] = value;
+        mUsed[slot] = true;
+        mSize++;
+    }
+
+    /**
+     * @return the value of the key, or defaultValue if the key isn't mapped
+     */
+    public int get(final long key, final int defaultValue) {
+        final int slot = find(key);
+        return mUsed[slot] ? mValues[slot] : defaultValue;
+    }
+
+    /**
+     * @return the number of keys mapped
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the slot holding the key, or the empty slot where it would go
+     */
+    private int find(final long key) {
+        int slot = hash(key) & mMask;
+        while (mUsed[slot] && mKeys[slot] != key) {
+            slot = (slot + 1) & mMask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        final long[] keys = mKeys;
+        final int[] values = mValues;
+        final boolean[] used = mUsed;
+        allocate(keys.length * 2);
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) {
+                final int slot = find(keys[i]);
+                mKeys[slot] = keys[i];
+                mValues[slot] = values[i];
+                mUsed[slot] = true;
+            }
+        }
+    }
+
+    private void allocate(final int capacity) {
+        mKeys = new long[capacity];
+        mValues = new int[capacity];
+        mUsed = new boolean[capacity];
+        mMask = capacity - 1;
+    }
+
+    private static int getCapacity(final int expectedSize) {
+        final int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, expectedSize * 2 - 1));
+        return capacity < expectedSize * 2 ? capacity * 2 : capacity;
+    }
+
+    private static int hash(final long key) {
+        // spread the sequential media store ids over the whole table
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -24,9 +24,9 @@ import org.lineageos.eleven.model.Album;
 import org.lineageos.eleven.model.Artist;
 import org.lineageos.eleven.model.SearchResult;
 import org.lineageos.eleven.model.Song;
+import org.lineageos.eleven.sectionadapter.SectionIndex;
 
 import java.util.List;
-import java.util.TreeMap;
 
 /**
  * This Utils class contains code that compares two different items and determines whether
@@ -339,14 +339,15 @@ public class SectionCreatorUtils {
      * @param list The list of items to analyze
      * @param comparator The comparison function to use
      * @param <T> the type of item to compare
-     * @return Creates a TreeMap of indices (if the headers were part of the list) to section labels
+     * @return Creates an index of positions (if the headers were part of the list) to sections
      */
-    public static <T> TreeMap<Integer, Section> createSections(final List<T> list,
-                                                              final IItemCompare<T> comparator) {
+    public static <T> SectionIndex createSections(final List<T> list,
+                                                  final IItemCompare<T> comparator) {
         if (list != null && list.size() > 0) {
-            TreeMap<Integer, Section> sections = new TreeMap<>();
+            SectionIndex sections = new SectionIndex();
+            // each item is read once, and kept as the first item of the next comparison
+            T first = null;
             for (int i = 0; i < list.size() + 1; i++) {
-                T first = (i == 0 ? null : list.get(i - 1));
                 T second = (i == list.size() ? null : list.get(i));
 
                 // create the footer first because if we need both it should be footer,header,item
@@ -354,22 +355,24 @@ public class SectionCreatorUtils {
                 if (first != null) {
                     String footer = comparator.createSectionFooter(first, second, list, i - 1);
                     if (footer != null) {
-                        // add sectionHeaders.size() to store the indices of the combined list
-                        sections.put(sections.size() + i, new Section(SectionType.Footer, footer));
+                        // add sections.size() to store the indices of the combined list
+                        sections.add(sections.size() + i, new Section(SectionType.Footer, footer));
                     }
                 }
 
                 if (second != null) {
                     String header = comparator.createSectionHeader(first, second, list, i - 1);
                     if (header != null) {
-                        // add sectionHeaders.size() to store the indices of the combined list
-                        sections.put(sections.size() + i, new Section(SectionType.Header, header));
+                        // add sections.size() to store the indices of the combined list
+                        sections.add(sections.size() + i, new Section(SectionType.Header, header));
                         // stop section creation
                         if (comparator.shouldStopSectionCreation()) {
                             break;
                         }
                     }
                 }
+
+                first = second;
             }
 
             return sections;
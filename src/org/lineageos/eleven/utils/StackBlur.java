@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2019 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.utils;
+
+/**
+ * Blurs opaque ARGB pixels on the CPU. The buffers are kept between calls, so blurring images
+ * of the same size again doesn't allocate. Not thread safe.
+ *
+ * Stack Blur Algorithm by Mario Klingemann <mario@quasimondo.com>
+ * http://www.quasimondo.com/StackBlurForCanvas/StackBlurDemo.html
+ *
+ * This is a compromise between Gaussian Blur and Box blur: it looks much better than a box blur
+ * and is about 7x faster than a Gaussian blur.
+ */
+public final class StackBlur {
+    private int[] mRed = new int[0];
+    private int[] mGreen = new int[0];
+    private int[] mBlue = new int[0];
+    private int[] mMin = new int[0];
+
+    /* the lookup tables for the radius of the last call */
+    private int mRadius = -1;
+    private int[] mDivide;
+    private int[][] mStack;
+
+    /**
+     * Blurs the pixels in place. The alpha channel is dropped.
+     *
+     * @param pixels the pixels, row by row
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param radius the blur radius, at least 1
+     */
+    public void blur(final int[] pixels, final int width, final int height, final int radius) {
+        if (width <= 0 || height <= 0 || radius < 1) {
+            return;
+        }
+        prepare(width, height, radius);
+
+        final int[] r = mRed;
+        final int[] g = mGreen;
+        final int[] b = mBlue;
+        final int[] vmin = mMin;
+        final int[] dv = mDivide;
+        final int[][] stack = mStack;
+
+        final int w = width;
+        final int h = height;
+        final int wm = w - 1;
+        final int hm = h - 1;
+        final int div = radius + radius + 1;
+        final int r1 = radius + 1;
+
+        int rsum, gsum, bsum, x, y, i, p, yp, yi, yw;
+        int stackpointer;
+        int stackstart;
+        int[] sir;
+        int rbs;
+        int routsum, goutsum, boutsum;
+        int rinsum, ginsum, binsum;
+
+        yw = yi = 0;
+
+        for (y = 0; y < h; y++) {
+            rinsum = ginsum = binsum = routsum = goutsum = boutsum = rsum = gsum = bsum = 0;
+            for (i = -radius; i <= radius; i++) {
+                p = pixels[yi + Math.min(wm, Math.max(i, 0))];
+                sir = stack[i + radius];
+                sir[0] = (p & 0xff0000) >> 16;
+                sir[1] = (p & 0x00ff00) >> 8;
+                sir[2] = p & 0x0000ff;
+                rbs = r1 - Math.abs(i);
+                rsum += sir[0] * rbs;
+                gsum += sir[1] * rbs;
+                bsum += sir[2] * rbs;
+                if (i > 0) {
+                    rinsum += sir[0];
+                    ginsum += sir[1];
+                    binsum += sir[2];
+                } else {
+                    routsum += sir[0];
+                    goutsum += sir[1];
+                    boutsum += sir[2];
+                }
+            }
+            stackpointer = radius;
+
+            for (x = 0; x < w; x++) {
+                r[yi] = dv[rsum];
+                g[yi] = dv[gsum];
+                b[yi] = dv[bsum];
+
+                rsum -= routsum;
+                gsum -= goutsum;
+                bsum -= boutsum;
+
+                stackstart = stackpointer - radius + div;
+                sir = stack[stackstart % div];
+
+                routsum -= sir[0];
+                goutsum -= sir[1];
+                boutsum -= sir[2];
+
+                if (y == 0) {
+                    vmin[x] = Math.min(x + radius + 1, wm);
+                }
+                p = pixels[yw + vmin[x]];
+
+                sir[0] = (p & 0xff0000) >> 16;
+                sir[1] = (p & 0x00ff00) >> 8;
+                sir[2] = p & 0x0000ff;
+
+                rinsum += sir[0];
+                ginsum += sir[1];
+                binsum += sir[2];
+
+                rsum += rinsum;
+                gsum += ginsum;
+                bsum += binsum;
+
+                stackpointer = (stackpointer + 1) % div;
+                sir = stack[stackpointer];
+
+                routsum += sir[0];
+                goutsum += sir[1];
+                boutsum += sir[2];
+
+                rinsum -= sir[0];
+                ginsum -= sir[1];
+                binsum -= sir[2];
+
+                yi++;
+            }
+            yw += w;
+        }
+
+        for (x = 0; x < w; x++) {
+            rinsum = ginsum = binsum = routsum = goutsum = boutsum = rsum = gsum = bsum = 0;
+            yp = -radius * w;
+            for (i = -radius; i <= radius; i++) {
+                yi = Math.max(0, yp) + x;
+
+                sir = stack[i + radius];
+
+                sir[0] = r[yi];
+                sir[1] = g[yi];
+                sir[2] = b[yi];
+
+                rbs = r1 - Math.abs(i);
+
+                rsum += r[yi] * rbs;
+                gsum += g[yi] * rbs;
+                bsum += b[yi] * rbs;
+
+                if (i > 0) {
+                    rinsum += sir[0];
+                    ginsum += sir[1];
+                    binsum += sir[2];
+                } else {
+                    routsum += sir[0];
+                    goutsum += sir[1];
+                    boutsum += sir[2];
+                }
+
+                if (i < hm) {
+                    yp += w;
+                }
+            }
+            yi = x;
+            stackpointer = radius;
+            for (y = 0; y < h; y++) {
+                pixels[yi] = 0xff000000 | dv[rsum] << 16 | dv[gsum] << 8 | dv[bsum];
+
+                rsum -= routsum;
+                gsum -= goutsum;
+                bsum -= boutsum;
+
+                stackstart = stackpointer - radius + div;
+                sir = stack[stackstart % div];
+
+                routsum -= sir[0];
+                goutsum -= sir[1];
+                boutsum -= sir[2];
+
+                if (x == 0) {
+                    vmin[y] = Math.min(y + r1, hm) * w;
+                }
+                p = x + vmin[y];
+
+                sir[0] = r[p];
+                sir[1] = g[p];
+                sir[2] = b[p];
+
+                rinsum += sir[0];
+                ginsum += sir[1];
+                binsum += sir[2];
+
+                rsum += rinsum;
+                gsum += ginsum;
+                bsum += binsum;
+
+                stackpointer = (stackpointer + 1) % div;
+                sir = stack[stackpointer];
+
+                routsum += sir[0];
+                goutsum += sir[1];
+                boutsum += sir[2];
+
+                rinsum -= sir[0];
+                ginsum -= sir[1];
+                binsum -= sir[2];
+
+                yi += w;
+            }
+        }
+    }
+
+    /**
+     * Grows the buffers to fit the image and builds the tables of the radius
+     */
+    private void prepare(final int width, final int height, final int radius) {
+        final int size = width * height;
+        if (mRed.length < size) {
+            mRed = new int[size];
+            mGreen = new int[size];
+            mBlue = new int[size];
+        }
+        if (mMin.length < Math.max(width, height)) {
+            mMin = new int[Math.max(width, height)];
+        }
+
+        if (mRadius != radius) {
+            final int div = radius + radius + 1;
+            int divsum = div + 1 >> 1;
+            divsum *= divsum;
+            mDivide = new int[256 * divsum];
+            for (int i = 0; i < 256 * divsum; i++) {
+                mDivide[i] = i / divsum;
+            }
+            mStack = new int[div][3];
+            mRadius = radius;
+        }
+    }
+}